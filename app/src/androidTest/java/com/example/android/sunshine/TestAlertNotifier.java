@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.test.AndroidTestCase;
+
+public class TestAlertNotifier extends AndroidTestCase {
+
+    private static final String DATABASE_NAME = "test_notifications.db";
+    private static final long NOW = 1450612800000L;
+
+    private AlertNotifier mNotifier;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mNotifier = new AlertNotifier(mContext, DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mNotifier.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testHash() {
+        assertEquals(AlertNotifier.hash("Storm"), AlertNotifier.hash(" Storm\n"));
+        assertFalse(AlertNotifier.hash("Storm") == AlertNotifier.hash("storm"));
+        assertEquals(AlertNotifier.hash(""), AlertNotifier.hash(null));
+    }
+
+    public void testDeduplicates() {
+        assertNotNull(mNotifier.recordAlert("94043", "Storm", NOW));
+        assertNull("Error: a repeated alert was posted",
+                mNotifier.recordAlert("94043", " Storm", NOW + 1));
+        assertNotNull("Error: the same alert for another location was dropped",
+                mNotifier.recordAlert("London", "Storm", NOW + 2));
+        assertNotNull("Error: another alert for the location was dropped",
+                mNotifier.recordAlert("94043", "Hail", NOW + 3));
+        assertNull(mNotifier.recordAlert("94043", "Storm",
+                NOW + AlertNotifier.DEDUP_WINDOW_MS - 1));
+        assertNotNull("Error: an alert was dropped after its window",
+                mNotifier.recordAlert("94043", "Storm", NOW + AlertNotifier.DEDUP_WINDOW_MS));
+    }
+
+    public void testAggregatesBursts() {
+        AlertNotifier.Burst burst = null;
+        int alerts = AlertNotifier.MAX_LINES + 2;
+        for (int i = 0; i < alerts; i++) {
+            burst = mNotifier.recordAlert("94043", "Alert " + i, NOW + i);
+        }
+        assertNotNull(burst);
+        assertEquals(alerts, burst.count);
+        assertEquals(AlertNotifier.MAX_LINES, burst.lines.size());
+        assertEquals("Error: the newest alert should come first",
+                "Alert " + (alerts - 1), burst.lines.get(0));
+
+        // A repeat doesn't grow the burst, a later alert starts a new one
+        assertNull(mNotifier.recordAlert("94043", "Alert 0", NOW + alerts));
+        burst = mNotifier.recordAlert("94043", "Later",
+                NOW + AlertNotifier.BURST_WINDOW_MS + alerts);
+        assertNotNull(burst);
+        assertEquals(1, burst.count);
+        assertEquals("Later", burst.lines.get(0));
+    }
+
+    public void testForecastNotification() {
+        assertTrue(mNotifier.claimForecastNotification("94043", NOW));
+        assertFalse("Error: two forecast notifications on a day",
+                mNotifier.claimForecastNotification("94043", NOW + 1000));
+        assertTrue(mNotifier.claimForecastNotification("London", NOW + 1000));
+
+        // Alerts and forecasts don't hold each other back
+        assertNotNull(mNotifier.recordAlert("94043", "", NOW + 2000));
+
+        assertTrue(mNotifier.claimForecastNotification("94043",
+                NOW + AlertNotifier.FORECAST_WINDOW_MS));
+    }
+}
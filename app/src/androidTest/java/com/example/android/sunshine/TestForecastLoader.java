@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.support.v4.content.Loader;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.ForecastStream;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TestForecastLoader extends AndroidTestCase {
+
+    // Far longer than the coalescing window, so slow devices don't make the test flaky
+    private static final long SETTLE_MS = 1000;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LinkedBlockingQueue<ForecastRepository.Forecast> mDelivered =
+            new LinkedBlockingQueue<>();
+
+    private String mLocationSetting;
+    private String mUnits;
+    private ForecastLoader mLoader;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLocationSetting = Utility.getPreferredLocation(mContext);
+        mUnits = getPreferences().getString(mContext.getString(R.string.pref_units_key), null);
+        setUnits(mContext.getString(R.string.pref_units_metric));
+        deleteForecast();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (null != mLoader) {
+            runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    mLoader.reset();
+                }
+            });
+        }
+        deleteForecast();
+        setUnits(mUnits);
+        super.tearDown();
+    }
+
+    private SharedPreferences getPreferences() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    private void setUnits(String units) {
+        String key = mContext.getString(R.string.pref_units_key);
+        if (null == units) {
+            getPreferences().edit().remove(key).commit();
+        } else {
+            getPreferences().edit().putString(key, units).commit();
+        }
+    }
+
+    private void deleteForecast() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        new File(mContext.getFilesDir(), ForecastSnapshot.FILE_NAME).delete();
+    }
+
+    // Loaders live on the main thread
+    private void runOnMain(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(SETTLE_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private void insertToday() {
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, mLocationSetting);
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 37.3861);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -122.0839);
+        long locationId = ContentUris.parseId(mContext.getContentResolver()
+                .insert(WeatherContract.LocationEntry.CONTENT_URI, location));
+
+        ContentValues weather = new ContentValues();
+        weather.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+        weather.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                DateEngine.getStartOfJulianDay(DateEngine.getCurrentJulianDay()));
+        weather.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+        weather.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        weather.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+        weather.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 20);
+        weather.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 10);
+        weather.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        weather.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weather.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800);
+        mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI, weather);
+    }
+
+    private void startLoader() throws InterruptedException {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                if (null == mLoader) {
+                    mLoader = new ForecastLoader(mContext, mLocationSetting,
+                            ForecastStream.FIELD_ALL);
+                    mLoader.registerListener(0,
+                            new Loader.OnLoadCompleteListener<ForecastRepository.Forecast>() {
+                                @Override
+                                public void onLoadComplete(
+                                        Loader<ForecastRepository.Forecast> loader,
+                                        ForecastRepository.Forecast data) {
+                                    mDelivered.add(data);
+                                }
+                            });
+                }
+                mLoader.startLoading();
+            }
+        });
+    }
+
+    private void stopLoader() throws InterruptedException {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.stopLoading();
+            }
+        });
+    }
+
+    /*
+        Flips the units the way the settings screen does, and waits for the snapshot to be
+        formatted in the new ones.
+     */
+    private void flipUnits(String units) throws Exception {
+        setUnits(units);
+        SettingsActivity.reformatForecast(mContext);
+        new PollingCheck(SETTLE_MS) {
+            @Override
+            protected boolean check() {
+                ForecastSnapshot snapshot = ForecastSnapshot.read(mContext);
+                return null != snapshot
+                        && snapshot.mHighs[0].equals(Utility.formatTemperature(mContext, 20));
+            }
+        }.run();
+    }
+
+    public void testUnitsChangeRebinds() throws Exception {
+        insertToday();
+        ForecastSnapshot.update(mContext);
+        String metricHigh = ForecastSnapshot.read(mContext).mHighs[0];
+
+        startLoader();
+        ForecastRepository.Forecast first = mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("Error: starting the loader should deliver the forecast", first);
+        assertEquals(1, first.days.size());
+        assertNull("Error: the stream delivered the same forecast again",
+                mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS));
+
+        // Settings changed while the list shows
+        flipUnits(mContext.getString(R.string.pref_units_imperial));
+        assertFalse("Error: the snapshot kept the old units",
+                metricHigh.equals(ForecastSnapshot.read(mContext).mHighs[0]));
+        ForecastRepository.Forecast reformatted =
+                mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("Error: a units change didn't rebind the list", reformatted);
+        assertNotSame(first, reformatted);
+        assertEquals(first.days.get(0).high, reformatted.days.get(0).high);
+
+        // Settings changed while the list was stopped behind them
+        stopLoader();
+        flipUnits(mContext.getString(R.string.pref_units_metric));
+        assertNull(mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS));
+        startLoader();
+        ForecastRepository.Forecast restarted = mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("Error: the list didn't rebind when it came back", restarted);
+        assertNotSame(reformatted, restarted);
+        assertEquals(metricHigh, ForecastSnapshot.read(mContext).mHighs[0]);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.core.CityForecast;
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.core.ForecastParseException;
+import com.example.android.sunshine.core.OwmForecastParser;
+import com.example.android.sunshine.core.WeatherConditions;
+
+/*
+    The core library as the app uses it: the parser on Android's org.json and the condition
+    tables behind the drawables.
+ */
+public class TestForecastParser extends AndroidTestCase {
+
+    private static final String TWO_DAYS = "{\"city\":{\"id\":2643743,\"name\":\"London\"," +
+            "\"coord\":{\"lon\":-0.12574,\"lat\":51.50853},\"country\":\"GB\"},\"cod\":\"200\"," +
+            "\"cnt\":2,\"list\":[" +
+            "{\"dt\":1450612800,\"temp\":{\"min\":8.5,\"max\":14.25},\"pressure\":1012.5," +
+            "\"humidity\":81,\"weather\":[{\"id\":803,\"main\":\"Clouds\"}],\"speed\":4.2,\"deg\":225}," +
+            "{\"dt\":1450699200,\"temp\":{\"min\":6,\"max\":11},\"pressure\":1020," +
+            "\"humidity\":70,\"weather\":[{\"id\":500,\"main\":\"Rain\"}],\"speed\":7,\"deg\":270}]}";
+
+    public void testParse() throws ForecastParseException {
+        int today = DateEngine.getCurrentJulianDay();
+        CityForecast forecast = OwmForecastParser.getInstance().parse(TWO_DAYS, today);
+
+        assertEquals(CityForecast.STATUS_OK, forecast.status);
+        assertEquals("London", forecast.cityName);
+        assertEquals(51.50853, forecast.latitude, 1e-9);
+        assertEquals(-0.12574, forecast.longitude, 1e-9);
+        assertEquals(2, forecast.days.size());
+
+        CityForecast.Day day = forecast.days.get(0);
+        assertEquals("Error: the first day should be today",
+                DateEngine.getStartOfJulianDay(today), day.date);
+        assertEquals(803, day.weatherId);
+        assertEquals("Clouds", day.description);
+        assertEquals(14.25, day.high);
+        assertEquals(8.5, day.low);
+        assertEquals(81, day.humidity);
+        assertEquals(1012.5, day.pressure);
+        assertEquals(4.2, day.windSpeed);
+        assertEquals(225.0, day.windDirection);
+        assertEquals(DateEngine.getStartOfJulianDay(today + 1), forecast.days.get(1).date);
+    }
+
+    public void testErrors() throws ForecastParseException {
+        assertEquals(CityForecast.STATUS_NOT_FOUND, OwmForecastParser.getInstance()
+                .parse("{\"cod\":\"404\",\"message\":\"Error: Not found city\"}", 0).status);
+        assertEquals(CityForecast.STATUS_SERVER_ERROR, OwmForecastParser.getInstance()
+                .parse("{\"cod\":\"500\"}", 0).status);
+        try {
+            OwmForecastParser.getInstance().parse("{\"list\":[", 0);
+            fail("Error: a truncated response should not parse");
+        } catch (ForecastParseException e) {
+            // expected
+        }
+    }
+
+    public void testConditionDrawables() {
+        assertEquals(R.drawable.ic_storm, Utility.getIconResourceForWeatherCondition(781));
+        assertEquals(R.drawable.ic_snow, Utility.getIconResourceForWeatherCondition(601));
+        assertEquals(R.drawable.art_light_clouds, Utility.getArtResourceForWeatherCondition(801));
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(900));
+        assertEquals(-1, Utility.getArtResourceForWeatherCondition(900));
+        assertNull(WeatherConditions.getArtName(900));
+        assertEquals("fog", WeatherConditions.getArtName(761));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.data.WeatherContract;
+
+import java.io.File;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    private static final int DAYS = 5;
+
+    private String mLocationSetting;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLocationSetting = Utility.getPreferredLocation(mContext);
+        deleteForecast();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteForecast();
+        super.tearDown();
+    }
+
+    private void deleteForecast() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        new File(mContext.getFilesDir(), ForecastSnapshot.FILE_NAME).delete();
+    }
+
+    public void testSnapshotRoundTrip() {
+        assertNull("Error: there shouldn't be a snapshot yet", ForecastSnapshot.read(mContext));
+
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, mLocationSetting);
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 37.3861);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -122.0839);
+        long locationId = ContentUris.parseId(mContext.getContentResolver()
+                .insert(WeatherContract.LocationEntry.CONTENT_URI, location));
+
+        int today = DateEngine.getCurrentJulianDay();
+        ContentValues[] weather = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            weather[i] = new ContentValues();
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    DateEngine.getStartOfJulianDay(today + i));
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 10 - i);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, weather);
+
+        ForecastSnapshot.update(mContext);
+        ForecastSnapshot snapshot = ForecastSnapshot.read(mContext);
+        assertNotNull("Error: the snapshot wasn't written", snapshot);
+        assertEquals(DAYS, snapshot.getCount());
+        assertEquals(mLocationSetting, snapshot.mLocationSetting);
+        assertEquals(37.3861, snapshot.mLatitude, 1e-6);
+        for (int i = 0; i < DAYS; i++) {
+            long date = DateEngine.getStartOfJulianDay(today + i);
+            assertEquals(date, snapshot.mDates[i]);
+            assertEquals(800, snapshot.mWeatherIds[i]);
+            assertEquals(Utility.getFriendlyDayString(mContext, date), snapshot.mDateTexts[i]);
+            assertEquals(Utility.getStringForWeatherCondition(mContext, 800),
+                    snapshot.mDescriptions[i]);
+            assertEquals(Utility.formatTemperature(mContext, 20 + i), snapshot.mHighs[i]);
+            assertEquals(Utility.formatTemperature(mContext, 10 - i), snapshot.mLows[i]);
+        }
+
+        // Without a forecast there is nothing worth showing before the loader
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        ForecastSnapshot.update(mContext);
+        assertNull(ForecastSnapshot.read(mContext));
+    }
+}
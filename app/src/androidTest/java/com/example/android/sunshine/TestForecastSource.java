@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.core.CityForecast;
+import com.example.android.sunshine.core.CompactForecastSource;
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.core.ForecastBatch;
+import com.example.android.sunshine.core.ForecastParseException;
+import com.example.android.sunshine.core.OwmForecastSource;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/*
+    The forecast sources the sync can be built with, and that they agree on the same forecast.
+ */
+public class TestForecastSource extends AndroidTestCase {
+
+    private static final String TWO_DAYS = "{\"city\":{\"id\":2643743,\"name\":\"London\"," +
+            "\"coord\":{\"lon\":-0.12574,\"lat\":51.50853},\"country\":\"GB\"},\"cod\":\"200\"," +
+            "\"cnt\":2,\"list\":[" +
+            "{\"dt\":1450612800,\"temp\":{\"min\":8.5,\"max\":14.25},\"pressure\":1012.5," +
+            "\"humidity\":81,\"weather\":[{\"id\":803,\"main\":\"Clouds\"}],\"speed\":4.2,\"deg\":225}," +
+            "{\"dt\":1450699200,\"temp\":{\"min\":-6,\"max\":1},\"pressure\":1020," +
+            "\"humidity\":70,\"weather\":[{\"id\":500,\"main\":\"Rain\"}],\"speed\":7,\"deg\":270}]}";
+
+    private static byte[] utf8(String value) throws UnsupportedEncodingException {
+        return value.getBytes("UTF-8");
+    }
+
+    public void testOwmRequest() {
+        OwmForecastSource source = new OwmForecastSource("key");
+        assertEquals("forecast/daily?q=Mountain+View%2C+CA&mode=json&units=metric&cnt=14" +
+                "&APPID=key", source.buildRequest("Mountain View, CA", 0, 14));
+        assertEquals("forecast/daily?id=2643743&mode=json&units=metric&cnt=7&APPID=key",
+                source.buildRequest("London", 2643743, 7));
+    }
+
+    public void testOwmDecode() throws Exception {
+        int today = DateEngine.getCurrentJulianDay();
+        ForecastBatch batch = new OwmForecastSource("key").decode(utf8(TWO_DAYS), today);
+
+        assertEquals(CityForecast.STATUS_OK, batch.status);
+        assertEquals("London", batch.cityName);
+        assertEquals(51.50853, batch.latitude, 1e-9);
+        assertEquals(2, batch.size);
+        assertEquals(DateEngine.getStartOfJulianDay(today), batch.dates[0]);
+        assertEquals(DateEngine.getStartOfJulianDay(today + 1), batch.dates[1]);
+        assertEquals(803, batch.weatherIds[0]);
+        assertEquals("Clouds", batch.descriptions[0]);
+        assertEquals(14.25, batch.highs[0], 0);
+        assertEquals(8.5, batch.lows[0], 0);
+        assertEquals(81, batch.humidities[0]);
+        assertEquals(1012.5, batch.pressures[0], 0);
+        assertEquals(4.2, batch.windSpeeds[0], 0);
+        assertEquals(225, batch.windDirections[0], 0);
+
+        assertEquals(CityForecast.STATUS_NOT_FOUND, new OwmForecastSource("key")
+                .decode(utf8("{\"cod\":\"404\"}"), today).status);
+    }
+
+    public void testCompactMatchesOwm() throws Exception {
+        int today = DateEngine.getCurrentJulianDay();
+        ForecastBatch owm = new OwmForecastSource("key").decode(utf8(TWO_DAYS), today);
+        byte[] compact = CompactForecastSource.encode(owm);
+        assertTrue("Error: the compact forecast isn't smaller",
+                compact.length * 4 < utf8(TWO_DAYS).length);
+
+        ForecastBatch batch = new CompactForecastSource().decode(compact, today);
+        assertEquals(CityForecast.STATUS_OK, batch.status);
+        assertEquals(owm.cityName, batch.cityName);
+        assertEquals(owm.latitude, batch.latitude, 1e-6);
+        assertEquals(owm.longitude, batch.longitude, 1e-6);
+        assertEquals(owm.size, batch.size);
+        assertTrue(Arrays.equals(owm.dates, batch.dates));
+        assertTrue(Arrays.equals(owm.weatherIds, batch.weatherIds));
+        assertTrue(Arrays.equals(owm.descriptions, batch.descriptions));
+        assertTrue(Arrays.equals(owm.humidities, batch.humidities));
+        for (int i = 0; i < batch.size; i++) {
+            assertEquals(owm.highs[i], batch.highs[i], 0.005);
+            assertEquals(owm.lows[i], batch.lows[i], 0.005);
+            assertEquals(owm.pressures[i], batch.pressures[i], 0.05);
+            assertEquals(owm.windSpeeds[i], batch.windSpeeds[i], 0.005);
+            assertEquals(owm.windDirections[i], batch.windDirections[i], 0.05);
+        }
+    }
+
+    public void testCompactErrors() throws ForecastParseException {
+        CompactForecastSource source = new CompactForecastSource();
+        assertEquals(CityForecast.STATUS_NOT_FOUND, source.decode(CompactForecastSource.encode(
+                ForecastBatch.error(CityForecast.STATUS_NOT_FOUND)), 0).status);
+
+        ForecastBatch batch = new ForecastBatch("Nowhere", 0, 0, 1);
+        batch.descriptions[0] = "Clear";
+        batch.weatherIds[0] = 800;
+        byte[] compact = CompactForecastSource.encode(batch);
+        try {
+            source.decode(Arrays.copyOf(compact, compact.length - 1), 0);
+            fail("Error: a truncated compact forecast was read");
+        } catch (ForecastParseException e) {
+            // expected
+        }
+        try {
+            source.decode(new byte[]{'{', '}'}, 0);
+            fail("Error: JSON was read as a compact forecast");
+        } catch (ForecastParseException e) {
+            // expected
+        }
+
+        batch.humidities[0] = 101;
+        try {
+            CompactForecastSource.encode(batch);
+            fail("Error: a humidity over 100% was encoded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Intent;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/*
+    Launches MainActivity with deferred and with eager initialization and logs how long each
+    takes to draw its first frame.  The numbers are for comparing on a device, the test only
+    checks that both modes get there.
+ */
+public class TestStartup extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    private static final int ITERATIONS = 5;
+    private static final long FIRST_FRAME_TIMEOUT_MS = 10000;
+
+    public TestStartup() {
+        super(MainActivity.class);
+    }
+
+    public void testFirstFrameDeferredVsEager() throws InterruptedException {
+        long deferred = medianFirstFrameMicros(false);
+        long eager = medianFirstFrameMicros(true);
+        Log.i(StartupTracer.LOG_TAG, "First frame median, deferred: " + deferred + "us, eager: "
+                + eager + "us, saved: " + (eager - deferred) + "us");
+    }
+
+    private long medianFirstFrameMicros(boolean eager) throws InterruptedException {
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            Intent intent = new Intent(Intent.ACTION_MAIN);
+            intent.putExtra(MainActivity.EXTRA_EAGER_INIT, eager);
+            setActivityIntent(intent);
+            MainActivity activity = getActivity();
+
+            long deadline = SystemClock.uptimeMillis() + FIRST_FRAME_TIMEOUT_MS;
+            long firstFrame;
+            while ((firstFrame = StartupTracer.getEndMicros(StartupTracer.FIRST_FRAME)) < 0) {
+                assertTrue("No first frame drawn with eager=" + eager,
+                        SystemClock.uptimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+            times[i] = firstFrame;
+
+            activity.finish();
+            setActivity(null);
+            getInstrumentation().waitForIdleSync();
+        }
+        Arrays.sort(times);
+        return times[ITERATIONS / 2];
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.core.WeatherFormatter;
+
+import java.util.Locale;
+
+/*
+    The formatter builds its strings without String.format, so check it against the resource
+    formats both inside and outside its tables.
+ */
+public class TestWeatherFormatter extends AndroidTestCase {
+
+    public void testTemperature() {
+        WeatherFormatter formatter = WeatherFormatter.getInstance();
+        WeatherFormatter.Formats formats = ResourceFormats.get(mContext);
+        String format = mContext.getString(R.string.format_temperature);
+        for (double celsius = -80.25; celsius < 80; celsius += 1.5) {
+            assertEquals("Error: wrong metric temperature for " + celsius,
+                    String.format(format, celsius),
+                    formatter.formatTemperature(formats, celsius, true));
+            assertEquals("Error: wrong imperial temperature for " + celsius,
+                    String.format(format, celsius * 1.8 + 32),
+                    formatter.formatTemperature(formats, celsius, false));
+        }
+        // outside the table
+        assertEquals(String.format(format, 1000.0),
+                formatter.formatTemperature(formats, 1000, true));
+        // the same string is handed out again
+        assertSame(formatter.formatTemperature(formats, 21.2, true),
+                formatter.formatTemperature(formats, 20.9, true));
+    }
+
+    public void testWind() {
+        WeatherFormatter formatter = WeatherFormatter.getInstance();
+        WeatherFormatter.Formats formats = ResourceFormats.get(mContext);
+        String format = mContext.getString(R.string.format_wind_kmh);
+        assertEquals(String.format(format, 12.2f, "NW"),
+                formatter.formatWind(formats, 12.2f, 300, true));
+        assertEquals(String.format(format, 0f, "N"),
+                formatter.formatWind(formats, 0, 350, true));
+        assertEquals(String.format(format, 5f, "E"),
+                formatter.formatWind(formats, 5, 90, true));
+        assertEquals(String.format(format, 400f, "S"),
+                formatter.formatWind(formats, 400, 180, true));
+        assertEquals("Error: negative degrees aren't north",
+                String.format(format, 7f, "N"), formatter.formatWind(formats, 7, -10, true));
+
+        format = mContext.getString(R.string.format_wind_mph);
+        assertEquals(String.format(format, .621371192237334f * 30, "SW"),
+                formatter.formatWind(formats, 30, 225, false));
+    }
+
+    public void testLocaleDigits() {
+        WeatherFormatter formatter = WeatherFormatter.getInstance();
+        WeatherFormatter.Formats formats = ResourceFormats.get(mContext);
+        String format = mContext.getString(R.string.format_temperature);
+        Locale locale = Locale.getDefault();
+        try {
+            // Arabic-Indic digits
+            Locale.setDefault(new Locale("ar", "EG"));
+            assertEquals(String.format(format, -12.0),
+                    formatter.formatTemperature(formats, -12, true));
+            assertEquals(String.format(format, 1000.0),
+                    formatter.formatTemperature(formats, 1000, true));
+        } finally {
+            Locale.setDefault(locale);
+        }
+        assertEquals(String.format(format, -12.0), formatter.formatTemperature(formats, -12, true));
+    }
+
+    public void testPressureAndHumidity() {
+        WeatherFormatter formatter = WeatherFormatter.getInstance();
+        WeatherFormatter.Formats formats = ResourceFormats.get(mContext);
+        assertEquals(mContext.getString(R.string.format_pressure, 1013.4f),
+                formatter.formatPressure(formats, 1013.4f));
+        assertEquals(mContext.getString(R.string.format_pressure, 500f),
+                formatter.formatPressure(formats, 500));
+        assertEquals(mContext.getString(R.string.format_humidity, 85f),
+                formatter.formatHumidity(formats, 85));
+    }
+
+    public void testNotification() {
+        assertEquals(mContext.getString(R.string.format_notification, "Clear", "21°", "12°"),
+                WeatherFormatter.getInstance()
+                        .formatNotification(ResourceFormats.get(mContext), "Clear", "21°", "12°"));
+    }
+}
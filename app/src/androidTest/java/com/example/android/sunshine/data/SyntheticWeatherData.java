@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.core.WeatherSchema;
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import java.util.Random;
+
+/*
+    Generates databases of any size for the provider tests: locations spread over the globe and
+    a plausible forecast for every day of each.  The data only depends on the seed, so two runs
+    build the same database.  Where TestUtilities makes one fixed row, this makes a million.
+ */
+class SyntheticWeatherData {
+
+    static final String LOCATION_PREFIX = "synthetic-";
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static final int[] WEATHER_IDS = {200, 301, 500, 502, 601, 741, 800, 801, 803, 804};
+    private static final String[] DESCRIPTIONS = {"Thunderstorm", "Drizzle", "Rain", "Rain",
+            "Snow", "Fog", "Clear", "Clouds", "Clouds", "Clouds"};
+
+    private final long mSeed;
+
+    SyntheticWeatherData(long seed) {
+        mSeed = seed;
+    }
+
+    static String getLocationSetting(int index) {
+        return LOCATION_PREFIX + index;
+    }
+
+    static double getLatitude(int index) {
+        return -60 + (index * 37 % 120) + (index % 7) / 7.0;
+    }
+
+    static double getLongitude(int index) {
+        return -180 + (index * 73 % 360) + (index % 11) / 11.0;
+    }
+
+    ContentValues createLocationValues(int index) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, getLocationSetting(index));
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Synthetic City " + index);
+        values.put(LocationEntry.COLUMN_COORD_LAT, getLatitude(index));
+        values.put(LocationEntry.COLUMN_COORD_LONG, getLongitude(index));
+        return values;
+    }
+
+    /*
+        The forecast of location index for days days from startDate, a normalized date.
+     */
+    ContentValues[] createWeatherValues(long locationId, int index, long startDate, int days) {
+        Random random = new Random(mSeed * 31 + index);
+        // Colder away from the equator
+        double baseTemperature = 28 - Math.abs(getLatitude(index)) * 0.45;
+        ContentValues[] rows = new ContentValues[days];
+        for (int day = 0; day < days; day++) {
+            double min = baseTemperature - 4 + random.nextDouble() * 6;
+            int condition = random.nextInt(WEATHER_IDS.length);
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            values.put(WeatherEntry.COLUMN_DATE, startDate + day * DAY_IN_MILLIS);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, min);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, min + 3 + random.nextDouble() * 9);
+            values.put(WeatherEntry.COLUMN_HUMIDITY, 30 + random.nextInt(70));
+            values.put(WeatherEntry.COLUMN_PRESSURE, 990 + random.nextDouble() * 40);
+            values.put(WeatherEntry.COLUMN_WIND_SPEED, random.nextDouble() * 12);
+            values.put(WeatherEntry.COLUMN_DEGREES, random.nextInt(360));
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, WEATHER_IDS[condition]);
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, DESCRIPTIONS[condition]);
+            rows[day] = values;
+        }
+        return rows;
+    }
+
+    /*
+        Inserts locations 0 to count - 1 in one transaction, straight into db.  Returns their
+        row ids by index.  Callers going around the provider have to invalidate its caches.
+     */
+    long[] insertLocations(SQLiteDatabase db, int count) {
+        long[] ids = new long[count];
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                ids[i] = db.insertOrThrow(LocationEntry.TABLE_NAME, null, createLocationValues(i));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return ids;
+    }
+
+    /*
+        Builds a whole database straight into the one of helper: locations locations with days
+        days each from startDate.  Rows are generated one location at a time, so memory stays
+        flat however big the database gets.
+     */
+    void populate(WeatherDbHelper helper, int locations, int days, long startDate) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        boolean clustered = helper.isClustered();
+        long[] ids = insertLocations(db, locations);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < locations; i++) {
+                for (ContentValues values : createWeatherValues(ids[i], i, startDate, days)) {
+                    if (clustered) {
+                        values.put(WeatherEntry._ID, WeatherSchema.clusteredWeatherId(ids[i],
+                                values.getAsLong(WeatherEntry.COLUMN_DATE)));
+                    }
+                    db.insertOrThrow(WeatherEntry.TABLE_NAME, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class TestCityIndex extends AndroidTestCase {
+
+    private static final String CITIES =
+            "london\t2643743\tLondon\tGB\t51.5085\t-0.1257\n" +
+            "london\t6058560\tLondon\tCA\t42.9834\t-81.233\n" +
+            "los angeles\t5368361\tLos Angeles\tUS\t34.0522\t-118.2437\n" +
+            "montreal\t6077243\tMontréal\tCA\t45.5088\t-73.5878\n" +
+            "mountain view\t5375480\tMountain View\tUS\t37.3861\t-122.0839\n" +
+            "paris\t2988507\tParis\tFR\t48.8534\t2.3488\n" +
+            "paris\t4717560\tParis\tUS\t33.6609\t-95.5555\n";
+
+    // About the number of cities OpenWeatherMap knows
+    private static final int FULL_SIZE = 200000;
+    private static final long MAX_SUGGEST_NANOS = 1000000;
+
+    private CityIndex createIndex() throws Exception {
+        return new CityIndex(ByteBuffer.wrap(CITIES.getBytes("UTF-8")));
+    }
+
+    public void testPrefixSuggestions() throws Exception {
+        CityIndex index = createIndex();
+        assertEquals(7, index.size());
+
+        List<CityIndex.City> cities = index.suggest("Lon", 5);
+        assertEquals("Error: expected both Londons, then Los Angeles", 3, cities.size());
+        assertEquals(2643743, cities.get(0).id);
+        assertEquals("London,GB", cities.get(0).getLocationSetting());
+        assertEquals(6058560, cities.get(1).id);
+        assertEquals(42.9834, cities.get(1).lat, 1e-6);
+        // "los" is one typo away from "lon", it comes after the exact prefix matches
+        assertEquals(5368361, cities.get(2).id);
+
+        assertEquals("Error: the limit wasn't applied", 1, index.suggest("paris", 1).size());
+        assertEquals("Error: expected a match for the whole name",
+                "Mountain View", index.suggest("mountain view", 5).get(0).name);
+        assertTrue(index.suggest("x", 5).isEmpty());
+        assertTrue(index.suggest("  ", 5).isEmpty());
+    }
+
+    public void testAccentsAreFolded() throws Exception {
+        List<CityIndex.City> cities = createIndex().suggest("Montré", 5);
+        assertEquals(1, cities.size());
+        assertEquals("Montréal", cities.get(0).name);
+    }
+
+    public void testTypos() throws Exception {
+        CityIndex index = createIndex();
+        // transposition
+        assertEquals(2988507, index.suggest("pairs", 5).get(0).id);
+        // substitution
+        assertEquals(5375480, index.suggest("mountaim v", 5).get(0).id);
+        // two typos are too many
+        assertTrue(index.suggest("lsoa ang", 5).isEmpty());
+    }
+
+    public void testFoldingIgnoresLocale() throws Exception {
+        Locale locale = Locale.getDefault();
+        try {
+            // Turkish lower cases I to a dotless i
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertTrue("Error: Istanbul wasn't folded like the keys", Arrays.equals(
+                    "istanbul".getBytes("UTF-8"), CityIndex.normalize("Istanbul")));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    public void testBundledIndex() throws Exception {
+        CityIndex index = CityIndex.getInstance(mContext);
+        assertTrue("Error: the bundled city list is empty", index.size() > 0);
+        assertFalse(index.suggest("London", 5).isEmpty());
+    }
+
+    public void testFullSizeLatency() throws Exception {
+        // Random names with the spaces and lengths of real ones, sorted like the asset
+        Random random = new Random(42);
+        String letters = "abcdefghijklmnopqrstuvwxyz    ";
+        String[] keys = new String[FULL_SIZE];
+        for (int i = 0; i < keys.length; i++) {
+            StringBuilder key = new StringBuilder();
+            key.append(letters.charAt(random.nextInt(26)));
+            int length = 3 + random.nextInt(12);
+            for (int j = 1; j < length; j++) {
+                key.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            keys[i] = key.toString().trim();
+        }
+        Arrays.sort(keys);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(keys.length * 32);
+        for (int i = 0; i < keys.length; i++) {
+            out.write((keys[i] + "\t" + i + "\tCity\tXX\t0\t0\n").getBytes("UTF-8"));
+        }
+        CityIndex index = new CityIndex(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(FULL_SIZE, index.size());
+
+        // Prefixes of known names, half of them with a typo so the fuzzy walk runs
+        String[] queries = new String[1000];
+        for (int i = 0; i < queries.length; i++) {
+            String key = keys[random.nextInt(keys.length)];
+            String prefix = key.substring(0, Math.min(key.length(), 3 + random.nextInt(6)));
+            queries[i] = i % 2 == 0 ? prefix : prefix + "q";
+        }
+        for (String query : queries) {
+            index.suggest(query, 5);
+        }
+
+        long start = System.nanoTime();
+        for (String query : queries) {
+            assertFalse("Error: no suggestion for " + query, index.suggest(query, 5).isEmpty());
+        }
+        long average = (System.nanoTime() - start) / queries.length;
+        assertTrue("Error: a suggestion took " + average + "ns on average",
+                average < MAX_SUGGEST_NANOS);
+    }
+}
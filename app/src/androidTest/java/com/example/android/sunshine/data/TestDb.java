@@ -17,9 +17,12 @@ package com.example.android.sunshine.data;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
+import com.example.android.sunshine.core.WeatherSchema;
+
 import java.util.HashSet;
 
 public class TestDb extends AndroidTestCase {
@@ -55,6 +58,8 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.RollupEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherSchema.IssuedTable.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -102,6 +107,20 @@ public class TestDb extends AndroidTestCase {
         // entry columns
         assertTrue("Error: The database doesn't contain all of the required location entry columns",
                 locationColumnHashSet.isEmpty());
+
+        // the forecast of a location is read by location, then date
+        c = db.rawQuery("EXPLAIN QUERY PLAN SELECT COUNT(*) FROM " +
+                WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " +
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = 1 AND " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + " >= 0", null);
+        StringBuilder plan = new StringBuilder();
+        while (c.moveToNext()) {
+            plan.append(c.getString(c.getColumnCount() - 1)).append('\n');
+        }
+        c.close();
+        assertTrue("Error: the weather of a location isn't looked up by index: " + plan,
+                plan.indexOf(WeatherSchema.WeatherTable.LOCATION_INDEX) >= 0
+                        || plan.indexOf("PRIMARY KEY") >= 0);
         db.close();
     }
 
@@ -224,4 +243,57 @@ public class TestDb extends AndroidTestCase {
 
         return locationRowId;
     }
+
+    /*
+        A version 3 database, with a stored day and a rollup, keeps both through the upgrade
+        and gains what came after it.
+     */
+    public void testUpgradeKeepsHistory() {
+        SQLiteDatabase old = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME, 0,
+                null);
+        old.execSQL(WeatherSchema.CREATE_LOCATION_TABLE);
+        old.execSQL(WeatherSchema.CREATE_WEATHER_TABLE);
+        old.execSQL(WeatherSchema.CREATE_ROLLUP_TABLE);
+        long locationId = old.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        old.execSQL("INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", " +
+                WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", " +
+                WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                WeatherContract.WeatherEntry.COLUMN_DEGREES + ") VALUES (" +
+                locationId + ", " + TestUtilities.TEST_DATE + ", 'Clear', 800, 4, 26, 50, " +
+                "1013, 5, 90)");
+        old.execSQL("INSERT INTO " + WeatherContract.RollupEntry.TABLE_NAME + " (" +
+                WeatherContract.RollupEntry.COLUMN_LOC_KEY + ", " +
+                WeatherContract.RollupEntry.COLUMN_WEEK_START + ", " +
+                WeatherContract.RollupEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherContract.RollupEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherContract.RollupEntry.COLUMN_MEAN_TEMP + ", " +
+                WeatherContract.RollupEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherContract.RollupEntry.COLUMN_DAY_COUNT + ") VALUES (" +
+                locationId + ", 0, 4, 26, 15, 800, 7)");
+        old.setVersion(3);
+        old.close();
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals("Error: the upgrade dropped the stored days", 1, DatabaseUtils.longForQuery(
+                db, "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME, null));
+        assertEquals("Error: the upgrade dropped the rollups", 1, DatabaseUtils.longForQuery(
+                db, "SELECT COUNT(*) FROM " + WeatherContract.RollupEntry.TABLE_NAME, null));
+        assertEquals("Error: the upgrade didn't add the issued table", 0,
+                DatabaseUtils.longForQuery(db,
+                        "SELECT COUNT(*) FROM " + WeatherSchema.IssuedTable.TABLE_NAME, null));
+        assertEquals("Error: the upgrade didn't add the location index", 1,
+                DatabaseUtils.longForQuery(db,
+                        "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?",
+                        new String[]{WeatherSchema.WeatherTable.LOCATION_INDEX}));
+        db.close();
+    }
 }
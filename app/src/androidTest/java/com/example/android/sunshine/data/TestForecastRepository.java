@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.core.DateEngine;
+
+public class TestForecastRepository extends AndroidTestCase {
+
+    private static final int DAYS = 4;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private long insertForecast(int firstDay) {
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues()));
+        ContentValues[] weather = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            weather[i] = TestUtilities.createWeatherValues(locationId);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    DateEngine.getStartOfJulianDay(firstDay + i));
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 70 + i);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, weather);
+        return locationId;
+    }
+
+    public void testLoadAndInvalidate() {
+        ForecastRepository repository = ForecastRepository.getInstance();
+        int today = DateEngine.getCurrentJulianDay();
+        // yesterday isn't part of the forecast
+        insertForecast(today - 1);
+
+        ForecastRepository.Forecast forecast =
+                repository.loadForecast(mContext, TestUtilities.TEST_LOCATION);
+        assertEquals(DAYS - 1, forecast.days.size());
+        assertEquals(64.7488, forecast.latitude, 1e-6);
+        assertSame("Error: a loaded forecast should be read from memory",
+                forecast, repository.getForecast(TestUtilities.TEST_LOCATION));
+        assertNull(repository.getForecast("some other location"));
+
+        // any time of the day finds its row
+        ForecastRepository.Day day = forecast.getDay(DateEngine.getStartOfJulianDay(today + 1) + 1000);
+        assertNotNull(day);
+        assertEquals(DateEngine.getStartOfJulianDay(today + 1), day.date);
+        assertEquals(72.0, day.high);
+        assertEquals("Asteroids", day.shortDesc);
+        assertNull(forecast.getDay(DateEngine.getStartOfJulianDay(today - 1)));
+
+        // a write through the provider drops it
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        assertNull(repository.getForecast(TestUtilities.TEST_LOCATION));
+        forecast = repository.loadForecast(mContext, TestUtilities.TEST_LOCATION);
+        assertTrue(forecast.days.isEmpty());
+        assertTrue(Double.isNaN(forecast.latitude));
+    }
+}
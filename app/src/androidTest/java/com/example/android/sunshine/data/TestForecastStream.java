@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.core.DateEngine;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TestForecastStream extends AndroidTestCase {
+
+    // Far longer than the coalescing window, so slow devices don't make the test flaky
+    private static final long SETTLE_MS = 1000;
+
+    private final LinkedBlockingQueue<ForecastRepository.Forecast> mDelivered =
+            new LinkedBlockingQueue<>();
+
+    private final ForecastStream.Subscriber mSubscriber = new ForecastStream.Subscriber() {
+        @Override
+        public void onForecast(ForecastRepository.Forecast forecast) {
+            mDelivered.add(forecast);
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private ContentValues createTodayValues(long locationId) {
+        ContentValues values = TestUtilities.createWeatherValues(locationId);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                DateEngine.getStartOfJulianDay(DateEngine.getCurrentJulianDay()));
+        return values;
+    }
+
+    public void testBurstIsDeliveredOnce() throws InterruptedException {
+        ForecastStream.Subscription subscription = ForecastStream.getInstance(mContext)
+                .subscribe(TestUtilities.TEST_LOCATION, ForecastStream.FIELD_ALL, mSubscriber);
+        try {
+            ForecastRepository.Forecast initial = mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("Error: subscribing should deliver the current forecast", initial);
+            assertTrue(initial.days.isEmpty());
+
+            // Three writes in a row, to two tables, like a sync
+            long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                    WeatherContract.LocationEntry.CONTENT_URI,
+                    TestUtilities.createNorthPoleLocationValues()));
+            mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI,
+                    createTodayValues(locationId));
+            ContentValues update = new ContentValues();
+            update.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 80);
+            mContext.getContentResolver().update(WeatherContract.WeatherEntry.CONTENT_URI,
+                    update, null, null);
+
+            ForecastRepository.Forecast forecast = mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("Error: the writes weren't delivered", forecast);
+            assertEquals(1, forecast.days.size());
+            assertEquals(80.0, forecast.days.get(0).high);
+            assertNull("Error: the burst should have been delivered once",
+                    mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS));
+        } finally {
+            subscription.unsubscribe();
+        }
+    }
+
+    public void testOnlyRequestedFieldsWake() throws InterruptedException {
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI,
+                createTodayValues(locationId));
+
+        ForecastStream.Subscription subscription = ForecastStream.getInstance(mContext)
+                .subscribe(TestUtilities.TEST_LOCATION, ForecastStream.FIELD_TEMPERATURE,
+                        mSubscriber);
+        try {
+            assertNotNull(mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS));
+
+            ContentValues update = new ContentValues();
+            update.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 50);
+            mContext.getContentResolver().update(WeatherContract.WeatherEntry.CONTENT_URI,
+                    update, null, null);
+            assertNull("Error: a humidity change shouldn't reach a temperature subscriber",
+                    mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS));
+
+            update = new ContentValues();
+            update.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 10);
+            mContext.getContentResolver().update(WeatherContract.WeatherEntry.CONTENT_URI,
+                    update, null, null);
+            ForecastRepository.Forecast forecast = mDelivered.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(forecast);
+            assertEquals(10.0, forecast.days.get(0).low);
+        } finally {
+            subscription.unsubscribe();
+        }
+    }
+}
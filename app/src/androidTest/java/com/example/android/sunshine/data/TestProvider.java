@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 package com.example.android.sunshine.data;
+import android.annotation.TargetApi;
 import android.content.ComponentName;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -23,12 +24,15 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
+import java.util.Arrays;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -53,6 +57,11 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                WeatherContract.RollupEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 LocationEntry.CONTENT_URI,
                 null,
@@ -509,4 +518,294 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // The sync commit should upsert the location, write the weather, prune old rows and
+    // notify observers of the location's weather uri.
+    @TargetApi(11)
+    public void testCommitSync() {
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+        for (ContentValues value : weatherValues) {
+            value.remove(WeatherEntry.COLUMN_LOC_KEY);
+        }
+
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_LOCATION, locationValues);
+        extras.putParcelableArray(WeatherContract.EXTRA_WEATHER, weatherValues);
+        // prune the first day of the batch
+        extras.putLong(WeatherContract.EXTRA_PRUNE_BEFORE, TestUtilities.TEST_DATE);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true, weatherObserver);
+
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMMIT_SYNC, null, extras);
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        long locationRowId = result.getLong(WeatherContract.EXTRA_LOCATION_ID);
+        assertTrue(locationRowId > 0);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.EXTRA_INSERTED));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, cursor.getCount());
+        cursor.close();
+
+        // committing again for the same location must reuse its row, and refresh its name
+        // and coordinates
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Workshop");
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, 64.75);
+        extras.putParcelable(WeatherContract.EXTRA_LOCATION, locationValues);
+        extras.putParcelableArray(WeatherContract.EXTRA_WEATHER, new ContentValues[0]);
+        result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMMIT_SYNC, null, extras);
+        assertEquals(locationRowId, result.getLong(WeatherContract.EXTRA_LOCATION_ID));
+
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI, null,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(locationRowId)}, null);
+        TestUtilities.validateCursor("Error: the sync didn't refresh the location",
+                cursor, locationValues);
+    }
+
+    // Inserting a location that already exists should hand back the existing row rather than
+    // fail, and the id should be cached until the location is deleted.
+    public void testInsertLocationTwice() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri firstUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        Uri secondUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(firstUri);
+
+        assertEquals("Error: inserting a location again should return the same ID",
+                locationRowId, ContentUris.parseId(secondUri));
+        assertEquals(locationRowId,
+                LocationIdCache.getInstance().get(TestUtilities.TEST_LOCATION));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: there should be only one location row", 1, cursor.getCount());
+        cursor.close();
+
+        deleteAllRecordsFromProvider();
+        assertEquals(LocationIdCache.UNKNOWN_ID,
+                LocationIdCache.getInstance().get(TestUtilities.TEST_LOCATION));
+    }
+
+    private long insertLocation(String setting, String city, double lat, double lon) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, city);
+        values.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        values.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        return ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values));
+    }
+
+    public void testSpatialQueries() {
+        long london = insertLocation("London,GB", "London", 51.5085, -0.1257);
+        long paris = insertLocation("Paris,FR", "Paris", 48.8534, 2.3488);
+        insertLocation("Tokyo,JP", "Tokyo", 35.6895, 139.6917);
+        long fiji = insertLocation("Suva,FJ", "Suva", -18.1416, 178.4419);
+
+        // Reading, close to London
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(51.4543, -0.9781, 2),
+                new String[]{LocationEntry._ID, LocationEntry.COLUMN_DISTANCE}, null, null, null);
+        assertEquals("Error: expected the two nearest locations", 2, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(london, cursor.getLong(0));
+        assertEquals("Error: wrong distance to London", 59, cursor.getDouble(1), 2);
+        cursor.moveToNext();
+        assertEquals(paris, cursor.getLong(0));
+        cursor.close();
+
+        // Samoa is across the antimeridian from Fiji
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(-13.8333, -171.75, 1), null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(fiji, cursor.getLong(cursor.getColumnIndex(LocationEntry._ID)));
+        cursor.close();
+
+        // Western Europe
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildBoundingBoxUri(40, -10, 60, 20),
+                new String[]{LocationEntry._ID}, null, null, null);
+        assertEquals(2, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: expected bounding box results by latitude", paris, cursor.getLong(0));
+        cursor.close();
+
+        // A box crossing the antimeridian
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildBoundingBoxUri(-30, 170, 40, -170),
+                new String[]{LocationEntry._ID}, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(fiji, cursor.getLong(0));
+        cursor.close();
+
+        // The index follows deletes
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(london)});
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(51.4543, -0.9781, 1),
+                new String[]{LocationEntry._ID}, null, null, null);
+        cursor.moveToFirst();
+        assertEquals(paris, cursor.getLong(0));
+        cursor.close();
+    }
+
+    // One query reads the forecasts of several cities, and the summary has a row for every city.
+    public void testBatchAndSummaryQueries() {
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        long london = insertLocation("London,GB", "London", 51.5085, -0.1257);
+        long paris = insertLocation("Paris,FR", "Paris", 48.8534, 2.3488);
+        long tokyo = insertLocation("Tokyo,JP", "Tokyo", 35.6895, 139.6917);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(paris));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(london));
+
+        // Three days of Paris and London, Tokyo left out
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherBatchUri(Arrays.asList("Paris,FR", "London,GB"),
+                        TestUtilities.TEST_DATE, TestUtilities.TEST_DATE + 2 * millisecondsInADay),
+                new String[]{WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE},
+                null, null, null);
+        assertEquals("Error: expected three days of two locations", 6, cursor.getCount());
+        long previousDate = Long.MIN_VALUE;
+        for (int i = 0; cursor.moveToNext(); i++) {
+            // London sorts before Paris
+            assertEquals("Error: batch rows should be grouped by location",
+                    i < 3 ? london : paris, cursor.getLong(0));
+            if (i != 3) {
+                assertTrue("Error: batch rows should be ordered by date", cursor.getLong(1) > previousDate);
+            }
+            previousDate = cursor.getLong(1);
+        }
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.TodaySummaryEntry.buildTodaySummaryUri(
+                        TestUtilities.TEST_DATE + millisecondsInADay),
+                new String[]{
+                        WeatherContract.TodaySummaryEntry._ID,
+                        WeatherContract.TodaySummaryEntry.COLUMN_WEATHER_ID,
+                        WeatherContract.TodaySummaryEntry.COLUMN_FORECAST_DAYS
+                },
+                null, null, null);
+        assertEquals("Error: expected one summary row per location", 3, cursor.getCount());
+        // By city name
+        cursor.moveToFirst();
+        assertEquals(london, cursor.getLong(0));
+        assertEquals(321, cursor.getInt(1));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, cursor.getInt(2));
+        cursor.moveToNext();
+        assertEquals(paris, cursor.getLong(0));
+        cursor.moveToNext();
+        assertEquals(tokyo, cursor.getLong(0));
+        assertTrue("Error: a location without weather should have null weather columns",
+                cursor.isNull(1));
+        assertEquals(0, cursor.getInt(2));
+        cursor.close();
+    }
+
+    // Whole weeks before the cutoff are folded into one rollup row, partial weeks are kept.
+    @TargetApi(11)
+    public void testCompactHistory() {
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        long monday = 1418601600000L; // December 15th, 2014, 00:00 UTC
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        for (int i = 0; i < 10; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, monday + i * millisecondsInADay);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 10 - i);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, i < 5 ? 800 : 500);
+            assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+        }
+        db.close();
+
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.EXTRA_CUTOFF, monday + 9 * millisecondsInADay);
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMPACT_HISTORY, null, extras);
+        assertEquals(1, result.getInt(WeatherContract.EXTRA_COMPACTED));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.RollupEntry.CONTENT_URI, null, null, null, null);
+        ContentValues expected = new ContentValues();
+        expected.put(WeatherContract.RollupEntry.COLUMN_WEEK_START, monday);
+        expected.put(WeatherContract.RollupEntry.COLUMN_DAY_COUNT, 7);
+        expected.put(WeatherContract.RollupEntry.COLUMN_WEATHER_ID, 800);
+        expected.put(WeatherContract.RollupEntry.COLUMN_MIN_TEMP, 4.0);
+        expected.put(WeatherContract.RollupEntry.COLUMN_MAX_TEMP, 26.0);
+        expected.put(WeatherContract.RollupEntry.COLUMN_MEAN_TEMP, 15.0);
+        TestUtilities.validateCursor("testCompactHistory. Error validating rollup.", cursor, expected);
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: the partial week should not be compacted", 3, cursor.getCount());
+        cursor.close();
+
+        // nothing left to do for this cutoff
+        result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMPACT_HISTORY, null, extras);
+        assertEquals(0, result.getInt(WeatherContract.EXTRA_COMPACTED));
+    }
+
+    // A paged query must return the same rows as the plain one, across page boundaries, and
+    // keep them through a write.
+    public void testPagedWeatherQuery() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        String sortOrder = WeatherEntry.COLUMN_DATE + " ASC";
+        Cursor expected = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, 0),
+                null, null, null, sortOrder);
+        Cursor paged = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, 0, 3),
+                null, null, null, sortOrder);
+        assertPagedRows(expected, paged);
+
+        // The rows were read with the count, a write changes neither
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        assertPagedRows(expected, paged);
+        Cursor after = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, 0, 3),
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null, sortOrder);
+        assertEquals("Error: a paged query after the write saw the old rows",
+                0, after.getCount());
+        assertEquals(1, after.getColumnCount());
+        expected.close();
+        paged.close();
+        after.close();
+    }
+
+    private void assertPagedRows(Cursor expected, Cursor paged) {
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, paged.getCount());
+        assertEquals(expected.getColumnCount(), paged.getColumnCount());
+        // walk backwards so the pages are read out of order
+        for (int i = BULK_INSERT_RECORDS_TO_INSERT - 1; i >= 0; i--) {
+            assertTrue(expected.moveToPosition(i));
+            assertTrue(paged.moveToPosition(i));
+            for (int column = 0; column < expected.getColumnCount(); column++) {
+                assertEquals("Error: paged row " + i + " differs in column " + column,
+                        expected.getString(column), paged.getString(column));
+            }
+        }
+    }
 }
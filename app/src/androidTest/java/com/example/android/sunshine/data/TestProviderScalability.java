@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/*
+    Measures the provider on databases of 1, 100 and 10,000 locations with 14 to 365 days each:
+    bulkInsert throughput, the latency of every query route, the cost of pruning half the
+    forecast and the size of the database.  Results are written to the log under the
+    ProviderScalability tag, and a test fails when one of them exceeds its ceiling in
+    provider_baselines.properties.
+
+    The ceilings are set to catch regressions of several times, not device noise; lower them
+    when the provider gets faster.  10,000 locations with 365 days is 3.65 million rows and
+    half a gigabyte, it is a large test and is skipped on devices without the space.
+ */
+public class TestProviderScalability extends AndroidTestCase {
+
+    private static final String LOG_TAG = "ProviderScalability";
+    private static final String BASELINES = "provider_baselines.properties";
+
+    private static final long START_DATE = 1418601600000L; // December 15th, 2014
+    private static final long SEED = 42;
+
+    // Rows per bulkInsert call, whole locations at a time
+    private static final int INSERT_BATCH_ROWS = 1000;
+    // Queries per route, the median is reported
+    private static final int QUERY_ROUNDS = 21;
+    private static final int BATCH_LOCATIONS = 10;
+
+    private ContentResolver mResolver;
+    private SyntheticWeatherData mData;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = mContext.getContentResolver();
+        mData = new SyntheticWeatherData(SEED);
+        clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clear();
+        super.tearDown();
+    }
+
+    @MediumTest
+    public void testOneLocationTwoWeeks() {
+        run(1, 14);
+    }
+
+    @MediumTest
+    public void testOneLocationOneYear() {
+        run(1, 365);
+    }
+
+    @MediumTest
+    public void testHundredLocationsTwoWeeks() {
+        run(100, 14);
+    }
+
+    @MediumTest
+    public void testHundredLocationsOneYear() {
+        run(100, 365);
+    }
+
+    @LargeTest
+    public void testTenThousandLocationsTwoWeeks() {
+        run(10000, 14);
+    }
+
+    @LargeTest
+    public void testTenThousandLocationsOneYear() {
+        // About 150 bytes a row with the index, and room for the journal
+        long needed = 2L * 10000 * 365 * 150;
+        long usable = mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME).getParentFile()
+                .getUsableSpace();
+        if (usable < needed) {
+            Log.i(LOG_TAG, "Only " + usable + "B free, skipping 10000x365");
+            return;
+        }
+        run(10000, 365);
+    }
+
+    @TargetApi(11)
+    private void run(int locations, int days) {
+        String scale = locations + "x" + days;
+        Map<String, Long> results = new LinkedHashMap<>();
+        long rows = (long) locations * days;
+
+        // Locations go straight in, the provider writes them one by one and that isn't
+        // what is measured here
+        SQLiteDatabase db = WeatherStore.getInstance(mContext).getOpenHelper()
+                .getWritableDatabase();
+        long[] ids = mData.insertLocations(db, locations);
+        LocationIdCache.getInstance().invalidate();
+        LocationSpatialIndex.getInstance().invalidate();
+
+        long insertNanos = 0;
+        ArrayList<ContentValues> batch = new ArrayList<>(INSERT_BATCH_ROWS + days);
+        for (int i = 0; i < locations; i++) {
+            batch.addAll(Arrays.asList(mData.createWeatherValues(ids[i], i, START_DATE, days)));
+            if (batch.size() >= INSERT_BATCH_ROWS || i == locations - 1) {
+                ContentValues[] values = batch.toArray(new ContentValues[batch.size()]);
+                long start = System.nanoTime();
+                assertEquals(values.length,
+                        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, values));
+                insertNanos += System.nanoTime() - start;
+                batch.clear();
+            }
+        }
+        results.put("insertMicrosPerRow", insertNanos / 1000 / rows);
+        results.put("dbBytes", getUsedBytes(db));
+
+        measureQueries(ids, days, results);
+
+        // One sync's prune, which drops the first half of every location's forecast
+        long pruneBefore = START_DATE + (days / 2 - 1) * SyntheticWeatherData.DAY_IN_MILLIS;
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_LOCATION, mData.createLocationValues(0));
+        extras.putLong(WeatherContract.EXTRA_PRUNE_BEFORE, pruneBefore);
+        long start = System.nanoTime();
+        mResolver.call(WeatherContract.BASE_CONTENT_URI, WeatherContract.METHOD_COMMIT_SYNC,
+                null, extras);
+        results.put("pruneMillis", (System.nanoTime() - start) / 1000000);
+        assertEquals(locations * (days - days / 2), count(WeatherEntry.CONTENT_URI));
+
+        StringBuilder report = new StringBuilder(scale).append(':');
+        for (Map.Entry<String, Long> result : results.entrySet()) {
+            report.append(' ').append(result.getKey()).append('=').append(result.getValue());
+        }
+        Log.i(LOG_TAG, report.toString());
+        checkBaselines(scale, results);
+    }
+
+    /*
+        Times QUERY_ROUNDS queries of every route for random locations and days, reading every
+        row of the result, and records the median of each in microseconds.
+     */
+    private void measureQueries(long[] ids, int days, Map<String, Long> results) {
+        int locations = ids.length;
+        Random random = new Random(SEED);
+        long[][] nanos = new long[8][QUERY_ROUNDS];
+        for (int round = 0; round < QUERY_ROUNDS; round++) {
+            int index = random.nextInt(locations);
+            String locationSetting = SyntheticWeatherData.getLocationSetting(index);
+            long date = START_DATE + random.nextInt(days) * SyntheticWeatherData.DAY_IN_MILLIS;
+            double lat = SyntheticWeatherData.getLatitude(index);
+            double lon = SyntheticWeatherData.getLongitude(index);
+            List<String> batch = new ArrayList<>(BATCH_LOCATIONS);
+            for (int i = 0; i < Math.min(BATCH_LOCATIONS, locations); i++) {
+                batch.add(SyntheticWeatherData.getLocationSetting((index + i) % locations));
+            }
+
+            nanos[0][round] = time(WeatherEntry.buildWeatherLocationWithStartDate(
+                    locationSetting, date), null, null);
+            nanos[1][round] = time(WeatherEntry.buildWeatherLocationWithDate(
+                    locationSetting, date), null, null);
+            nanos[2][round] = time(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ?",
+                    new String[]{Long.toString(ids[index]), Long.toString(date)});
+            nanos[3][round] = time(WeatherEntry.buildWeatherBatchUri(batch, date,
+                    date + 6 * SyntheticWeatherData.DAY_IN_MILLIS), null, null);
+            nanos[4][round] = time(WeatherContract.TodaySummaryEntry.buildTodaySummaryUri(date),
+                    null, null);
+            nanos[5][round] = time(LocationEntry.CONTENT_URI,
+                    LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{locationSetting});
+            nanos[6][round] = time(LocationEntry.buildNearestUri(lat, lon, 10), null, null);
+            nanos[7][round] = time(LocationEntry.buildBoundingBoxUri(lat - 5, lon - 5,
+                    lat + 5, lon + 5), null, null);
+        }
+        String[] routes = {"weatherWithLocation", "weatherWithLocationAndDate", "weather",
+                "weatherBatch", "todaySummary", "location", "locationNearest",
+                "locationBoundingBox"};
+        for (int i = 0; i < routes.length; i++) {
+            Arrays.sort(nanos[i]);
+            results.put("query." + routes[i] + ".micros", nanos[i][QUERY_ROUNDS / 2] / 1000);
+        }
+    }
+
+    private long time(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        Cursor cursor = mResolver.query(uri, null, selection, selectionArgs, null);
+        assertNotNull("Error: null cursor for " + uri, cursor);
+        while (cursor.moveToNext()) {
+            cursor.getLong(0);
+        }
+        cursor.close();
+        return System.nanoTime() - start;
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[]{WeatherEntry._ID}, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    /*
+        The pages in use, which unlike the file length doesn't include what earlier scales
+        freed.
+     */
+    private static long getUsedBytes(SQLiteDatabase db) {
+        return (queryPragma(db, "page_count") - queryPragma(db, "freelist_count"))
+                * queryPragma(db, "page_size");
+    }
+
+    private static long queryPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void checkBaselines(String scale, Map<String, Long> results) {
+        Properties baselines = new Properties();
+        InputStream in = getClass().getClassLoader().getResourceAsStream(BASELINES);
+        assertNotNull("Error: " + BASELINES + " is missing from the test apk", in);
+        try {
+            baselines.load(in);
+            in.close();
+        } catch (IOException e) {
+            fail("Error: could not read " + BASELINES + ": " + e);
+        }
+
+        StringBuilder failures = new StringBuilder();
+        for (Map.Entry<String, Long> result : results.entrySet()) {
+            String key = scale + "." + result.getKey();
+            String ceiling = baselines.getProperty(key);
+            if (null == ceiling) {
+                Log.w(LOG_TAG, "No baseline for " + key);
+            } else if (result.getValue() > Long.parseLong(ceiling.trim())) {
+                failures.append(' ').append(key).append('=').append(result.getValue())
+                        .append(" > ").append(ceiling.trim());
+            }
+        }
+        assertTrue("Error: over the baselines:" + failures, failures.length() == 0);
+    }
+
+    /*
+        DELETE without a WHERE clause, which SQLite runs as a truncate instead of row by row.
+        The provider always adds one, so this goes around it.
+     */
+    private void clear() {
+        WeatherStore store = WeatherStore.getInstance(mContext);
+        SQLiteDatabase db = store.getOpenHelper().getWritableDatabase();
+        db.delete(WeatherEntry.TABLE_NAME, null, null);
+        db.delete(WeatherContract.RollupEntry.TABLE_NAME, null, null);
+        db.delete(LocationEntry.TABLE_NAME, null, null);
+        LocationIdCache.getInstance().invalidate();
+        LocationSpatialIndex.getInstance().invalidate();
+        store.notifyChange(WeatherContract.BASE_CONTENT_URI);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.core.WeatherSchema;
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares the default weather table with the clustered WITHOUT ROWID layout: database file
+    size, insert throughput and the latency of the per-location range query the forecast list
+    runs.  Results are written to the log under the StorageLayout tag, and the test fails when
+    the clustered layout loses what it is there for.
+ */
+public class TestStorageLayout extends AndroidTestCase {
+
+    private static final String LOG_TAG = "StorageLayout";
+
+    private static final String DEFAULT_DB_NAME = "weather_layout_default.db";
+    private static final String CLUSTERED_DB_NAME = "weather_layout_clustered.db";
+
+    private static final int LOCATIONS = 100;
+    private static final int DAYS = 90;
+    private static final long START_DATE = 1418601600000L; // December 15th, 2014
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Timings vary from run to run, only a clear loss fails the test
+    private static final int TIME_TOLERANCE = 3;
+
+    private static final int SIZE = 0;
+    private static final int INSERT_MS = 1;
+    private static final int SCAN_US = 2;
+
+    // location.location_setting = ? AND date >= ?, as used by the forecast list
+    private static final String RANGE_QUERY = "SELECT " +
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID +
+            " FROM " + WeatherEntry.TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME +
+            " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " = " +
+            LocationEntry.TABLE_NAME + "." + LocationEntry._ID +
+            " WHERE " + LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING +
+            " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ? ORDER BY " + WeatherEntry.COLUMN_DATE;
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(DEFAULT_DB_NAME);
+        mContext.deleteDatabase(CLUSTERED_DB_NAME);
+        super.tearDown();
+    }
+
+    public void testCompareLayouts() {
+        if (!WeatherDbHelper.CLUSTERED_LAYOUT_SUPPORTED) {
+            Log.i(LOG_TAG, "WITHOUT ROWID is not supported on this device, skipping");
+            return;
+        }
+        long[] defaultResults = run(DEFAULT_DB_NAME, false);
+        long[] clusteredResults = run(CLUSTERED_DB_NAME, true);
+
+        String report = "rows=" + (LOCATIONS * DAYS) +
+                " default: size=" + defaultResults[SIZE] + "B insert=" +
+                defaultResults[INSERT_MS] + "ms scan=" + defaultResults[SCAN_US] + "us/query" +
+                " clustered: size=" + clusteredResults[SIZE] + "B insert=" +
+                clusteredResults[INSERT_MS] + "ms scan=" + clusteredResults[SCAN_US] +
+                "us/query";
+        Log.i(LOG_TAG, report);
+
+        // Without the separate unique index the file has to shrink
+        assertTrue("Error: the clustered table isn't smaller, " + report,
+                clusteredResults[SIZE] < defaultResults[SIZE]);
+        assertTrue("Error: the clustered table inserts much slower, " + report,
+                clusteredResults[INSERT_MS]
+                        <= TIME_TOLERANCE * Math.max(1, defaultResults[INSERT_MS]));
+        assertTrue("Error: the clustered table scans much slower, " + report,
+                clusteredResults[SCAN_US]
+                        <= TIME_TOLERANCE * Math.max(1, defaultResults[SCAN_US]));
+    }
+
+    // Moving a clustered row to another day has to move its derived _id along
+    public void testClusteredIdFollowsKeyUpdate() {
+        if (!WeatherDbHelper.CLUSTERED_LAYOUT_SUPPORTED) {
+            return;
+        }
+        mContext.deleteDatabase(CLUSTERED_DB_NAME);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, CLUSTERED_DB_NAME, true);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            long locationId = db.insert(LocationEntry.TABLE_NAME, null,
+                    TestUtilities.createNorthPoleLocationValues());
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, START_DATE);
+            weatherValues.put(WeatherEntry._ID,
+                    WeatherSchema.clusteredWeatherId(locationId, START_DATE));
+            assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+
+            ContentValues moved = new ContentValues();
+            moved.put(WeatherEntry.COLUMN_DATE, START_DATE + DAY_IN_MILLIS);
+            assertEquals(1, db.update(WeatherEntry.TABLE_NAME, moved, null, null));
+            WeatherStore.rederiveClusteredIds(db);
+
+            Cursor cursor = db.query(WeatherEntry.TABLE_NAME, new String[]{WeatherEntry._ID},
+                    null, null, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals(WeatherSchema.clusteredWeatherId(locationId, START_DATE + DAY_IN_MILLIS),
+                    cursor.getLong(0));
+            cursor.close();
+        } finally {
+            helper.close();
+        }
+    }
+
+    /*
+        Returns { file size in bytes, insert time in ms, mean range query time in us }
+     */
+    private long[] run(String name, boolean clustered) {
+        mContext.deleteDatabase(name);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, name, clustered);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals(clustered, helper.isClustered());
+
+        long start = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+        try {
+            for (int location = 0; location < LOCATIONS; location++) {
+                ContentValues locationValues = new ContentValues();
+                locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "city" + location);
+                locationValues.put(LocationEntry.COLUMN_CITY_NAME, "City " + location);
+                locationValues.put(LocationEntry.COLUMN_COORD_LAT, location % 90);
+                locationValues.put(LocationEntry.COLUMN_COORD_LONG, location % 180);
+                long locationId = db.insert(LocationEntry.TABLE_NAME, null, locationValues);
+
+                for (int day = 0; day < DAYS; day++) {
+                    long date = START_DATE + day * DAY_IN_MILLIS;
+                    ContentValues weatherValues = TestUtilities.createWeatherValues(locationId);
+                    weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+                    if (clustered) {
+                        weatherValues.put(WeatherEntry._ID,
+                                WeatherSchema.clusteredWeatherId(locationId, date));
+                    }
+                    assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long insertMillis = SystemClock.elapsedRealtime() - start;
+
+        String startDate = Long.toString(START_DATE + (DAYS / 2) * DAY_IN_MILLIS);
+        long scanStart = SystemClock.elapsedRealtimeNanos();
+        for (int location = 0; location < LOCATIONS; location++) {
+            Cursor cursor = db.rawQuery(RANGE_QUERY, new String[]{"city" + location, startDate});
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                cursor.getLong(1);
+                rows++;
+            }
+            cursor.close();
+            assertEquals(DAYS - DAYS / 2, rows);
+        }
+        long scanMicros = (SystemClock.elapsedRealtimeNanos() - scanStart) / 1000 / LOCATIONS;
+
+        helper.close();
+        long size = mContext.getDatabasePath(name).length();
+        return new long[]{size, insertMillis, scanMicros};
+    }
+}
@@ -19,6 +19,8 @@ import android.content.UriMatcher;
 import android.net.Uri;
 import android.test.AndroidTestCase;
 
+import java.util.Arrays;
+
 /*
     Uncomment this class when you are ready to test your UriMatcher.  Note that this class utilizes
     constants that are declared with package protection inside of the UriMatcher, which is why
@@ -36,6 +38,19 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/location/nearest?lat=..&lon=..&limit=.."
+    private static final Uri TEST_LOCATION_NEAREST_DIR =
+            WeatherContract.LocationEntry.buildNearestUri(51.5, -0.12, 3);
+    // content://com.example.android.sunshine.app/location/bbox?south=..&west=..&north=..&east=.."
+    private static final Uri TEST_LOCATION_BOUNDING_BOX_DIR =
+            WeatherContract.LocationEntry.buildBoundingBoxUri(40, -10, 60, 20);
+    // content://com.example.android.sunshine.app/rollup"
+    private static final Uri TEST_ROLLUP_DIR = WeatherContract.RollupEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/weather_batch?location=..&location=..&start=..&end=.."
+    private static final Uri TEST_WEATHER_BATCH_DIR = WeatherContract.WeatherEntry.buildWeatherBatchUri(
+            Arrays.asList(LOCATION_QUERY, "Paris, FR"), TEST_DATE);
+    // content://com.example.android.sunshine.app/today_summary"
+    private static final Uri TEST_TODAY_SUMMARY_DIR = WeatherContract.TodaySummaryEntry.CONTENT_URI;
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +68,15 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION NEAREST URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAREST_DIR), WeatherProvider.LOCATION_NEAREST);
+        assertEquals("Error: The LOCATION BOUNDING BOX URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_BOUNDING_BOX_DIR), WeatherProvider.LOCATION_BOUNDING_BOX);
+        assertEquals("Error: The ROLLUP URI was matched incorrectly.",
+                testMatcher.match(TEST_ROLLUP_DIR), WeatherProvider.ROLLUP);
+        assertEquals("Error: The WEATHER BATCH URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_BATCH_DIR), WeatherProvider.WEATHER_BATCH);
+        assertEquals("Error: The TODAY SUMMARY URI was matched incorrectly.",
+                testMatcher.match(TEST_TODAY_SUMMARY_DIR), WeatherProvider.TODAY_SUMMARY);
     }
 }
@@ -17,6 +17,9 @@ package com.example.android.sunshine.data;
 
 import android.net.Uri;
 import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import com.example.android.sunshine.core.DateEngine;
 
 /*
     Students: This is NOT a complete test for the WeatherContract --- just for the functions
@@ -42,4 +45,26 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    /*
+        DateEngine replaced android.text.format.Time for the date math, so check it still lands
+        on the same julian days and local midnights.
+     */
+    public void testDateEngineMatchesTime() {
+        long now = System.currentTimeMillis();
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(now, time.gmtoff);
+        assertEquals("Error: DateEngine returned the wrong julian day for now",
+                julianDay, DateEngine.getCurrentJulianDay());
+
+        for (int i = -400; i <= 400; i += 7) {
+            time = new Time();
+            long expected = time.setJulianDay(julianDay + i);
+            assertEquals("Error: DateEngine returned the wrong start for julian day " + (julianDay + i),
+                    expected, DateEngine.getStartOfJulianDay(julianDay + i));
+            assertEquals("Error: normalizeDate didn't return the start of the day",
+                    expected, WeatherContract.normalizeDate(expected + 13 * 60 * 60 * 1000));
+        }
+    }
 }
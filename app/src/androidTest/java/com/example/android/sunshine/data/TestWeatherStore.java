@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.core.DateEngine;
+
+/*
+    Checks that the store and the provider agree, and logs what the ContentResolver costs per
+    call on top of the same work.
+ */
+public class TestWeatherStore extends AndroidTestCase {
+
+    private static final String LOG_TAG = TestWeatherStore.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int QUERY_ITERATIONS = 200;
+    private static final int COMMIT_ITERATIONS = 20;
+
+    private static final String[] COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    private WeatherStore mStore;
+    private long mStartDate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mStore = WeatherStore.getInstance(mContext);
+        mStartDate = DateEngine.getStartOfJulianDay(DateEngine.getCurrentJulianDay());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private ContentValues[] createForecast() {
+        ContentValues[] weather = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            weather[i] = TestUtilities.createWeatherValues(0);
+            weather[i].remove(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            weather[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    mStartDate + i * 24L * 60 * 60 * 1000);
+        }
+        return weather;
+    }
+
+    public void testStoreMatchesProvider() {
+        WeatherStore.CommitResult commit = mStore.commitSync(
+                TestUtilities.createNorthPoleLocationValues(), createForecast(), 0);
+        assertEquals(DAYS, commit.inserted);
+        assertTrue(commit.locationId > 0);
+
+        Cursor direct = mStore.queryWeather(TestUtilities.TEST_LOCATION, mStartDate, COLUMNS,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        Cursor resolved = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, mStartDate),
+                COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            assertEquals(DAYS, direct.getCount());
+            assertEquals(resolved.getCount(), direct.getCount());
+            while (direct.moveToNext() && resolved.moveToNext()) {
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    assertEquals(resolved.getString(i), direct.getString(i));
+                }
+            }
+        } finally {
+            direct.close();
+            resolved.close();
+        }
+
+        Cursor day = mStore.queryWeatherOnDate(TestUtilities.TEST_LOCATION, mStartDate + 1000,
+                COLUMNS);
+        try {
+            assertEquals(1, day.getCount());
+        } finally {
+            day.close();
+        }
+    }
+
+    public void testQueryOverhead() {
+        mStore.commitSync(TestUtilities.createNorthPoleLocationValues(), createForecast(), 0);
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERY_ITERATIONS; i++) {
+            Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                    TestUtilities.TEST_LOCATION, mStartDate);
+            Cursor cursor = mContext.getContentResolver().query(uri, COLUMNS, null, null, sortOrder);
+            assertEquals(DAYS, cursor.getCount());
+            cursor.close();
+        }
+        long resolverNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERY_ITERATIONS; i++) {
+            Cursor cursor = mStore.queryWeather(TestUtilities.TEST_LOCATION, mStartDate, COLUMNS,
+                    sortOrder);
+            assertEquals(DAYS, cursor.getCount());
+            cursor.close();
+        }
+        long storeNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "Query of " + DAYS + " rows, ContentResolver: "
+                + resolverNanos / QUERY_ITERATIONS / 1000 + "us, store: "
+                + storeNanos / QUERY_ITERATIONS / 1000 + "us");
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void testCommitOverhead() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // no ContentResolver.call() to compare with
+            return;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < COMMIT_ITERATIONS; i++) {
+            Bundle extras = new Bundle();
+            extras.putParcelable(WeatherContract.EXTRA_LOCATION,
+                    TestUtilities.createNorthPoleLocationValues());
+            extras.putParcelableArray(WeatherContract.EXTRA_WEATHER, createForecast());
+            mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_COMMIT_SYNC, null, extras);
+            mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        }
+        long resolverNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < COMMIT_ITERATIONS; i++) {
+            mStore.commitSync(TestUtilities.createNorthPoleLocationValues(), createForecast(), 0);
+            mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        }
+        long storeNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "Commit of " + DAYS + " rows, ContentResolver: "
+                + resolverNanos / COMMIT_ITERATIONS / 1000 + "us, store: "
+                + storeNanos / COMMIT_ITERATIONS / 1000 + "us");
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Answers every request on every connection with the same canned response, optionally after
+    a delay or one byte at a time, and counts the connections it accepted.
+ */
+class CannedServer extends Thread {
+
+    static final String BODY = "{\"cod\":\"200\",\"list\":[]}";
+
+    final ServerSocket mSocket;
+    final AtomicInteger mConnections = new AtomicInteger();
+    volatile String mStatus = "200 OK";
+    volatile String mBody = BODY;
+    volatile int mResponseDelayMs;
+    volatile int mByteDelayMs;
+
+    CannedServer() throws IOException {
+        mSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        setDaemon(true);
+    }
+
+    String getBaseUrl() {
+        return "http://localhost:" + mSocket.getLocalPort() + "/data/2.5/";
+    }
+
+    String getUrl() {
+        return getBaseUrl() + "forecast/daily";
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                final Socket socket = mSocket.accept();
+                mConnections.incrementAndGet();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }).start();
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            while (readRequest(in)) {
+                if (mResponseDelayMs > 0) {
+                    Thread.sleep(mResponseDelayMs);
+                }
+                byte[] body = mBody.getBytes("UTF-8");
+                byte[] response = ("HTTP/1.1 " + mStatus + "\r\nContent-Type: application/json"
+                        + "\r\nContent-Length: " + body.length + "\r\n\r\n" + mBody)
+                        .getBytes("UTF-8");
+                if (mByteDelayMs == 0) {
+                    out.write(response);
+                } else {
+                    for (byte b : response) {
+                        out.write(b);
+                        out.flush();
+                        Thread.sleep(mByteDelayMs);
+                    }
+                }
+                out.flush();
+            }
+            socket.close();
+        } catch (IOException | InterruptedException e) {
+            // the client went away
+        }
+    }
+
+    /*
+        Skips a request up to the blank line after its headers.  GETs have no body.
+     */
+    private static boolean readRequest(InputStream in) throws IOException {
+        int matched = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            matched = (c == '\r' && matched % 2 == 0) || (c == '\n' && matched % 2 == 1)
+                    ? matched + 1 : 0;
+            if (matched == 4) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void close() throws IOException {
+        mSocket.close();
+    }
+}
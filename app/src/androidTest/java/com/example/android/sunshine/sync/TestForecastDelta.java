@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Base64;
+
+import com.example.android.sunshine.core.CompactForecastSource;
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.core.ForecastBatch;
+import com.example.android.sunshine.core.ForecastParseException;
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.data.WeatherStore;
+
+public class TestForecastDelta extends AndroidTestCase {
+
+    private static final String LOCATION = "delta-test";
+
+    private int mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mToday = DateEngine.getCurrentJulianDay();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private ForecastBatch createForecast(int days, double high) {
+        ForecastBatch batch = new ForecastBatch("Delta City", 10, 20, days);
+        for (int i = 0; i < days; i++) {
+            batch.dates[i] = DateEngine.getStartOfJulianDay(mToday + i);
+            batch.weatherIds[i] = 500;
+            batch.descriptions[i] = "Rain";
+            batch.highs[i] = high;
+            batch.lows[i] = high - 5;
+            batch.humidities[i] = 90;
+            batch.pressures[i] = 1000;
+            batch.windSpeeds[i] = 3;
+            batch.windDirections[i] = 180;
+        }
+        return batch;
+    }
+
+    private static Bundle createMessage(ForecastBatch forecast, int startDay, long issued) {
+        Bundle extras = new Bundle();
+        extras.putString(ForecastDelta.EXTRA_TYPE, ForecastDelta.TYPE_FORECAST_DELTA);
+        extras.putString(ForecastDelta.EXTRA_LOCATION, LOCATION);
+        extras.putString(ForecastDelta.EXTRA_START_DAY, Integer.toString(startDay));
+        extras.putString(ForecastDelta.EXTRA_ISSUED, Long.toString(issued));
+        extras.putString(ForecastDelta.EXTRA_FORECAST, Base64.encodeToString(
+                CompactForecastSource.encode(forecast), Base64.URL_SAFE | Base64.NO_WRAP));
+        return extras;
+    }
+
+    private void assertRejected(String message, Bundle extras) {
+        try {
+            ForecastDelta.parse(extras, mToday);
+            fail("Error: " + message);
+        } catch (ForecastParseException e) {
+            // expected
+        }
+    }
+
+    public void testParse() throws ForecastParseException {
+        Bundle extras = createMessage(createForecast(3, 20), mToday + 1, 1000);
+        assertTrue(ForecastDeltaApplier.isForecastDelta(extras));
+
+        ForecastDelta delta = ForecastDelta.parse(extras, mToday);
+        assertEquals(LOCATION, delta.locationSetting);
+        assertEquals(1000, delta.issued);
+        assertEquals(3, delta.forecast.size);
+        assertEquals("Error: the days should start on start_day",
+                DateEngine.getStartOfJulianDay(mToday + 1), delta.forecast.dates[0]);
+        assertEquals(20, delta.forecast.highs[2], 0.005);
+    }
+
+    public void testRejects() {
+        Bundle extras = createMessage(createForecast(3, 20), mToday, 1000);
+        extras.putString(ForecastDelta.EXTRA_FORECAST, "not*base64");
+        assertRejected("a forecast that isn't base64 was read", extras);
+
+        extras = createMessage(createForecast(3, 20), mToday, 1000);
+        extras.remove(ForecastDelta.EXTRA_LOCATION);
+        assertRejected("a delta without a location was read", extras);
+
+        assertRejected("a delta from last week was read",
+                createMessage(createForecast(3, 20), mToday - 7, 1000));
+        assertRejected("a delta running past the forecast was read",
+                createMessage(createForecast(ForecastDelta.MAX_DAYS, 20), mToday + 1, 1000));
+
+        ForecastBatch inverted = createForecast(1, 20);
+        inverted.lows[0] = 25;
+        assertRejected("a low above the high was read", createMessage(inverted, mToday, 1000));
+    }
+
+    public void testApply() throws ForecastParseException {
+        // Not stored yet, a push doesn't add locations
+        ForecastDelta delta = ForecastDelta.parse(
+                createMessage(createForecast(2, 20), mToday, System.currentTimeMillis()), mToday);
+        assertFalse(ForecastDeltaApplier.apply(mContext, delta));
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Delta City");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 10.0);
+        location.put(LocationEntry.COLUMN_COORD_LONG, 20.0);
+        // The server clock is a minute ahead of the device, it decides what is newer
+        long synced = System.currentTimeMillis() + 60 * 1000;
+        WeatherStore.getInstance(mContext).commitSync(location,
+                SunshineSyncAdapter.toWeatherValues(createForecast(5, 10)), 0, synced);
+
+        // Issued before the sync, which has it already
+        assertFalse("Error: a delta older than the sync was applied",
+                ForecastDeltaApplier.apply(mContext, delta));
+        delta = ForecastDelta.parse(createMessage(createForecast(2, 20), mToday,
+                System.currentTimeMillis() + 1000), mToday);
+        assertFalse("Error: the device clock decided which forecast is newer",
+                ForecastDeltaApplier.apply(mContext, delta));
+        assertHigh(mToday, 10);
+
+        long issued = synced + 1000;
+        delta = ForecastDelta.parse(createMessage(createForecast(2, 20), mToday, issued), mToday);
+        assertTrue(ForecastDeltaApplier.apply(mContext, delta));
+        assertHigh(mToday, 20);
+        assertHigh(mToday + 1, 20);
+        assertHigh(mToday + 2, 10);
+        assertEquals("Error: the delta should update days, not add them", 5, countDays());
+
+        // An older forecast arriving late changes nothing
+        ForecastDelta stale = ForecastDelta.parse(
+                createMessage(createForecast(1, 30), mToday, issued - 1), mToday);
+        assertFalse(ForecastDeltaApplier.apply(mContext, stale));
+        assertHigh(mToday, 20);
+    }
+
+    private void assertHigh(int julianDay, double high) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(LOCATION,
+                        DateEngine.getStartOfJulianDay(julianDay)),
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue("Error: no row for day " + julianDay, cursor.moveToFirst());
+            assertEquals(high, cursor.getDouble(0), 0.005);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countDays() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(LOCATION), null, null, null, null);
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+}
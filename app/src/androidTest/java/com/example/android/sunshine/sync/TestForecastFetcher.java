@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+public class TestForecastFetcher extends AndroidTestCase {
+
+    private static final String PATH = "forecast/daily?q=94043";
+    private static final String SLOW_BODY = "{\"cod\":\"200\",\"from\":\"slow\"}";
+    private static final String FAST_BODY = "{\"cod\":\"200\",\"from\":\"fast\"}";
+
+    private CannedServer mSlow;
+    private CannedServer mFast;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSlow = new CannedServer();
+        mSlow.mBody = SLOW_BODY;
+        mSlow.start();
+        mFast = new CannedServer();
+        mFast.mBody = FAST_BODY;
+        mFast.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSlow.close();
+        mFast.close();
+        super.tearDown();
+    }
+
+    private ForecastFetcher createFetcher(long deadlineMs, CannedServer... servers) {
+        String[] baseUrls = new String[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            baseUrls[i] = servers[i].getBaseUrl();
+        }
+        WeatherHttpClient client = new WeatherHttpClient(new DnsCache(DnsCache.DEFAULT_TTL_MS),
+                5000, 5000, (int) deadlineMs, 1024);
+        return new ForecastFetcher(client, baseUrls, deadlineMs);
+    }
+
+    public void testHedgesSlowPrimary() throws IOException {
+        mSlow.mResponseDelayMs = 4000;
+        ForecastFetcher fetcher = createFetcher(10000, mSlow, mFast);
+
+        long start = System.currentTimeMillis();
+        WeatherHttpClient.Response response = fetcher.fetch(PATH, true);
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals("Error: the hedged request didn't win", FAST_BODY, response.getText());
+        assertTrue("Error: the hedge waited too long: " + elapsed + "ms",
+                elapsed < ForecastFetcher.DEFAULT_HEDGE_DELAY_MS + 1500);
+        assertEquals(1, mFast.mConnections.get());
+
+        // The cancelled request still cost the slow endpoint its place
+        assertEquals("Error: the faster endpoint isn't first now",
+                mFast.getBaseUrl(), fetcher.rank().get(0).mBaseUrl);
+        assertEquals(FAST_BODY, fetcher.fetch(PATH, false).getText());
+    }
+
+    public void testLoserCancelledEarlyDoesntWinItsPlace() throws IOException {
+        // Teach the fetcher the primary answers in 200ms, so it hedges after about that long
+        mSlow.mResponseDelayMs = 200;
+        ForecastFetcher fetcher = createFetcher(10000, mSlow, mFast);
+        for (int i = 0; i < ForecastFetcher.MIN_PERCENTILE_SAMPLES; i++) {
+            fetcher.fetch(PATH, false);
+        }
+
+        // The primary answers about 100ms after the hedge went out
+        mSlow.mResponseDelayMs = 300;
+        mFast.mResponseDelayMs = 3000;
+        assertEquals(SLOW_BODY, fetcher.fetch(PATH, true).getText());
+        assertEquals("Error: the request wasn't hedged", 1, mFast.mConnections.get());
+        assertEquals("Error: the mirror cancelled after 100ms is first now",
+                mSlow.getBaseUrl(), fetcher.rank().get(0).mBaseUrl);
+    }
+
+    public void testNoHedgeInTheBackground() throws IOException {
+        mSlow.mResponseDelayMs = (int) ForecastFetcher.DEFAULT_HEDGE_DELAY_MS + 500;
+        ForecastFetcher fetcher = createFetcher(10000, mSlow, mFast);
+        assertEquals(SLOW_BODY, fetcher.fetch(PATH, false).getText());
+        assertEquals("Error: a background fetch was hedged", 0, mFast.mConnections.get());
+    }
+
+    public void testFailsOver() throws IOException {
+        mSlow.mStatus = "503 Service Unavailable";
+        ForecastFetcher fetcher = createFetcher(10000, mSlow, mFast);
+        assertEquals(FAST_BODY, fetcher.fetch(PATH, false).getText());
+        assertEquals(mFast.getBaseUrl(), fetcher.rank().get(0).mBaseUrl);
+    }
+
+    public void testNotFoundIsAnAnswer() throws IOException {
+        mSlow.mStatus = "404 Not Found";
+        ForecastFetcher fetcher = createFetcher(10000, mSlow, mFast);
+        WeatherHttpClient.Response response = fetcher.fetch(PATH, true);
+        assertEquals(404, response.code);
+        assertEquals(0, mFast.mConnections.get());
+    }
+
+    public void testAllFail() {
+        mSlow.mStatus = "503 Service Unavailable";
+        mFast.mStatus = "502 Bad Gateway";
+        try {
+            createFetcher(10000, mSlow, mFast).fetch(PATH, true);
+            fail("Error: a fetch without a working endpoint succeeded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testDeadline() throws IOException {
+        mSlow.mResponseDelayMs = 3000;
+        mFast.mResponseDelayMs = 3000;
+        long start = System.currentTimeMillis();
+        try {
+            createFetcher(800, mSlow, mFast).fetch(PATH, true);
+            fail("Error: the fetch outlived its deadline");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+        assertTrue("Error: the deadline was overshot",
+                System.currentTimeMillis() - start < 2500);
+    }
+
+    public void testEndpointStatistics() {
+        ForecastFetcher.Endpoint endpoint = new ForecastFetcher.Endpoint("http://a/", 0);
+        assertEquals(ForecastFetcher.INITIAL_ESTIMATE_MS, endpoint.getEstimateMs(), 0);
+        assertEquals(ForecastFetcher.DEFAULT_HEDGE_DELAY_MS, endpoint.getHedgeDelayMs());
+
+        endpoint.record(100);
+        assertEquals(100, endpoint.getEstimateMs(), 0);
+        endpoint.record(200);
+        assertEquals(100 + ForecastFetcher.EWMA_WEIGHT * 100, endpoint.getEstimateMs(), 1e-9);
+
+        // Only the last LATENCY_WINDOW samples count, 10 to 320ms once each
+        for (int i = 1; i <= 2 * ForecastFetcher.LATENCY_WINDOW; i++) {
+            endpoint.record((i % ForecastFetcher.LATENCY_WINDOW + 1) * 10);
+        }
+        assertEquals((long) Math.ceil(ForecastFetcher.HEDGE_PERCENTILE
+                * ForecastFetcher.LATENCY_WINDOW) * 10, endpoint.getHedgeDelayMs());
+    }
+
+    public void testFailuresRankButDontDelayHedging() {
+        ForecastFetcher.Endpoint endpoint = new ForecastFetcher.Endpoint("http://a/", 0);
+        for (int i = 0; i < ForecastFetcher.LATENCY_WINDOW; i++) {
+            endpoint.record(100);
+        }
+        long hedgeDelayMs = endpoint.getHedgeDelayMs();
+        assertEquals(100, hedgeDelayMs);
+
+        for (int i = 0; i < ForecastFetcher.LATENCY_WINDOW / 4; i++) {
+            endpoint.recordFailure(30 * 1000);
+        }
+        assertTrue("Error: failures didn't lower the ranking", endpoint.getEstimateMs() > 1000);
+        assertEquals("Error: failures moved the hedge delay",
+                hedgeDelayMs, endpoint.getHedgeDelayMs());
+    }
+
+    public void testLosersRankButDontDelayHedging() {
+        ForecastFetcher.Endpoint endpoint = new ForecastFetcher.Endpoint("http://a/", 0);
+        endpoint.recordLoser(10);
+        assertEquals("Error: a loser counted as faster than expected",
+                ForecastFetcher.INITIAL_ESTIMATE_MS, endpoint.getEstimateMs(), 0);
+        endpoint.recordLoser(5000);
+        assertTrue(endpoint.getEstimateMs() > ForecastFetcher.INITIAL_ESTIMATE_MS);
+        assertEquals("Error: losers moved the hedge delay",
+                ForecastFetcher.DEFAULT_HEDGE_DELAY_MS, endpoint.getHedgeDelayMs());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import java.util.Random;
+
+public class TestPushSyncScheduler extends AndroidTestCase {
+
+    // Not stored, so the syncs the alarms start end right away
+    private static final String LOCATION = "push-test";
+    private static final long NOW = 1450612800000L;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearPreferences();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearPreferences();
+        super.tearDown();
+    }
+
+    private void clearPreferences() {
+        mContext.getSharedPreferences(PushSyncScheduler.class.getSimpleName(),
+                Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    public void testIsSyncRequest() {
+        Bundle extras = new Bundle();
+        extras.putString(PushSyncScheduler.EXTRA_TYPE, PushSyncScheduler.TYPE_SYNC);
+        assertTrue(PushSyncScheduler.isSyncRequest(extras));
+        assertFalse(ForecastDeltaApplier.isForecastDelta(extras));
+
+        extras.putString(PushSyncScheduler.EXTRA_TYPE, ForecastDelta.TYPE_FORECAST_DELTA);
+        assertFalse(PushSyncScheduler.isSyncRequest(extras));
+    }
+
+    public void testTokenBucket() {
+        long refill = 1000;
+        PushSyncScheduler.TokenBucket bucket = new PushSyncScheduler.TokenBucket(2, refill, 2, 0);
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse("Error: a burst went past the capacity", bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(refill / 2));
+        assertTrue("Error: the bucket didn't refill", bucket.tryAcquire(refill));
+
+        // A long quiet spell refills up to the capacity only
+        assertTrue(bucket.tryAcquire(100 * refill));
+        assertTrue(bucket.tryAcquire(100 * refill));
+        assertFalse(bucket.tryAcquire(100 * refill));
+
+        // Setting the clock back neither refills nor locks the bucket up
+        assertFalse(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(refill));
+    }
+
+    public void testJitter() {
+        Random random = new Random(42);
+        long spread = 60 * 1000;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = PushSyncScheduler.jitter(random, spread);
+            assertTrue(delay >= 0 && delay < spread);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue("Error: the delays aren't spread", min < spread / 10 && max > spread * 9 / 10);
+
+        assertTrue(PushSyncScheduler.jitter(random, Long.MAX_VALUE)
+                < PushSyncScheduler.MAX_SPREAD_MS);
+        assertEquals(0, PushSyncScheduler.jitter(random, -1));
+    }
+
+    public void testSchedule() {
+        long spread = 60 * 1000;
+        assertEquals(PushSyncScheduler.RESULT_INVALID,
+                PushSyncScheduler.schedule(mContext, null, null, spread, NOW));
+
+        // Spread out, so the first sync is still waiting when the second message comes
+        assertEquals(PushSyncScheduler.RESULT_SCHEDULED,
+                PushSyncScheduler.schedule(mContext, LOCATION, "storm", 2 * spread, NOW));
+        assertEquals("Error: the same collapse key scheduled a second sync",
+                PushSyncScheduler.RESULT_COLLAPSED,
+                PushSyncScheduler.schedule(mContext, LOCATION, "storm", spread, NOW - 1));
+
+        // Other keys take tokens until the bucket is empty.  GCM's placeholder for no
+        // collapse key is the same on every message, it doesn't collapse other locations.
+        for (int i = 1; i < PushSyncScheduler.BUCKET_CAPACITY; i++) {
+            assertEquals("Error: locations without a collapse key collapsed",
+                    PushSyncScheduler.RESULT_SCHEDULED, PushSyncScheduler.schedule(mContext,
+                            LOCATION + i, PushSyncScheduler.NO_COLLAPSE_KEY, spread, NOW));
+        }
+        assertEquals(PushSyncScheduler.RESULT_RATE_LIMITED,
+                PushSyncScheduler.schedule(mContext, "flood", null, spread, NOW));
+        assertEquals("Error: the bucket didn't refill", PushSyncScheduler.RESULT_SCHEDULED,
+                PushSyncScheduler.schedule(mContext, "flood", null, spread,
+                        NOW + PushSyncScheduler.REFILL_INTERVAL_MS));
+    }
+}
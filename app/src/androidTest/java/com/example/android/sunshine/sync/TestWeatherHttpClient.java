@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+public class TestWeatherHttpClient extends AndroidTestCase {
+
+    private static final String BODY = CannedServer.BODY;
+
+    private CannedServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new CannedServer();
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.close();
+        super.tearDown();
+    }
+
+    private static WeatherHttpClient createClient(int deadlineMs, int maxResponseBytes) {
+        return new WeatherHttpClient(new DnsCache(DnsCache.DEFAULT_TTL_MS), 5000, 5000,
+                deadlineMs, maxResponseBytes);
+    }
+
+    public void testReusesConnections() throws IOException {
+        WeatherHttpClient client = createClient(10000, 1024);
+        for (int i = 0; i < 3; i++) {
+            WeatherHttpClient.Response response = client.get(mServer.getUrl() + "?q=" + i);
+            assertEquals(200, response.code);
+            assertEquals(BODY, response.getText());
+        }
+        assertEquals("Error: the requests didn't share one connection",
+                1, mServer.mConnections.get());
+    }
+
+    public void testErrorBody() throws IOException {
+        mServer.mStatus = "404 Not Found";
+        mServer.mBody = "{\"cod\":\"404\"}";
+        WeatherHttpClient.Response response = createClient(10000, 1024).get(mServer.getUrl());
+        assertEquals(404, response.code);
+        assertEquals("{\"cod\":\"404\"}", response.getText());
+    }
+
+    public void testSizeCap() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append(BODY);
+        }
+        mServer.mBody = body.toString();
+        try {
+            createClient(10000, 1024).get(mServer.getUrl());
+            fail("Error: a body over the cap was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testDeadline() throws IOException {
+        // Every byte comes well within the read timeout, the whole response doesn't
+        mServer.mByteDelayMs = 20;
+        long start = System.currentTimeMillis();
+        try {
+            createClient(500, 1024).get(mServer.getUrl());
+            fail("Error: a trickling response outlived the deadline");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+        assertTrue("Error: the deadline was overshot",
+                System.currentTimeMillis() - start < 2500);
+    }
+
+    public void testDnsCache() throws IOException {
+        DnsCache cache = new DnsCache(DnsCache.DEFAULT_TTL_MS);
+        InetAddress address = cache.lookup("localhost", 5000);
+        assertSame(address, cache.lookup("localhost", 5000));
+        cache.evict("localhost");
+        assertEquals(address, cache.lookup("localhost", 5000));
+    }
+
+    public void testDeadlineCoversLookup() throws IOException {
+        // A resolver that hangs far longer than the deadline
+        DnsCache dns = new DnsCache(DnsCache.DEFAULT_TTL_MS) {
+            @Override
+            InetAddress resolve(String host) throws UnknownHostException {
+                SystemClock.sleep(5000);
+                return super.resolve(host);
+            }
+        };
+        WeatherHttpClient client = new WeatherHttpClient(dns, 5000, 5000, 500, 1024);
+        long start = System.currentTimeMillis();
+        try {
+            client.get(mServer.getUrl());
+            fail("Error: a hung lookup outlived the deadline");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+        assertTrue("Error: the deadline was overshot",
+                System.currentTimeMillis() - start < 2500);
+    }
+}
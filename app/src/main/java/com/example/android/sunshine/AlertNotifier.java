@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decides which notifications are worth posting, and posts the weather alerts.
+ * <p>
+ * What was notified lives in a small database of its own, indexed by kind, location and
+ * content hash.  A repeated alert is then a single indexed read, without a write or a
+ * notification:
+ * <ul>
+ * <li>An alert with the same text for the same location as one in the last
+ * {@link #DEDUP_WINDOW_MS} is dropped.</li>
+ * <li>Alerts within {@link #BURST_WINDOW_MS} of each other are shown as one inbox style
+ * notification.  Only the first alert of a burst makes a sound.</li>
+ * <li>The daily forecast notification of a location is due {@link #FORECAST_WINDOW_MS} after
+ * the last one.</li>
+ * </ul>
+ */
+public final class AlertNotifier {
+
+    private static final String LOG_TAG = AlertNotifier.class.getSimpleName();
+
+    static final long DEDUP_WINDOW_MS = 6 * 60 * 60 * 1000;
+    static final long BURST_WINDOW_MS = 15 * 60 * 1000;
+    static final long FORECAST_WINDOW_MS = 24 * 60 * 60 * 1000;
+    // Rows older than every window are deleted
+    static final long RETENTION_MS = FORECAST_WINDOW_MS;
+
+    // Lines of an aggregated notification, the rest is summarized
+    static final int MAX_LINES = 5;
+
+    static final String DATABASE_NAME = "notifications.db";
+
+    private static final int KIND_ALERT = 0;
+    private static final int KIND_FORECAST = 1;
+
+    private static AlertNotifier sInstance;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "alert-notifier");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private final Context mContext;
+    private final DbHelper mDbHelper;
+
+    /**
+     * The alerts of the current burst, newest first.
+     */
+    static final class Burst {
+        // All alerts in the burst, lines holds at most MAX_LINES of them
+        final int count;
+        final List<String> lines;
+
+        Burst(int count, List<String> lines) {
+            this.count = count;
+            this.lines = lines;
+        }
+    }
+
+    /*
+        Nothing in here is worth migrating, upgrades start over.
+     */
+    private static final class DbHelper extends SQLiteOpenHelper {
+        private static final int DATABASE_VERSION = 1;
+
+        static final String TABLE_NAME = "notified";
+        static final String COLUMN_KIND = "kind";
+        static final String COLUMN_LOCATION = "location";
+        static final String COLUMN_HASH = "hash";
+        static final String COLUMN_TEXT = "text";
+        static final String COLUMN_POSTED = "posted";
+
+        DbHelper(Context context, String name) {
+            super(context, name, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_NAME + " (" +
+                    "_id INTEGER PRIMARY KEY," +
+                    COLUMN_KIND + " INTEGER NOT NULL, " +
+                    COLUMN_LOCATION + " TEXT NOT NULL, " +
+                    COLUMN_HASH + " INTEGER NOT NULL, " +
+                    COLUMN_TEXT + " TEXT NOT NULL, " +
+                    COLUMN_POSTED + " INTEGER NOT NULL);");
+            // The duplicate check, and the bursts and pruning by time
+            db.execSQL("CREATE INDEX " + TABLE_NAME + "_key ON " + TABLE_NAME + " (" +
+                    COLUMN_KIND + ", " + COLUMN_LOCATION + ", " + COLUMN_HASH + ", " +
+                    COLUMN_POSTED + ");");
+            db.execSQL("CREATE INDEX " + TABLE_NAME + "_posted ON " + TABLE_NAME + " (" +
+                    COLUMN_POSTED + ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+            onCreate(db);
+        }
+    }
+
+    public static synchronized AlertNotifier getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new AlertNotifier(context.getApplicationContext(), DATABASE_NAME);
+        }
+        return sInstance;
+    }
+
+    AlertNotifier(Context context, String databaseName) {
+        mContext = context;
+        mDbHelper = new DbHelper(context, databaseName);
+    }
+
+    void close() {
+        mDbHelper.close();
+    }
+
+    /**
+     * Posts an alert in the background, unless it repeats a recent one.
+     *
+     * @param onDone run on the background thread once the alert was handled, may be null
+     */
+    public void postAlert(final String locationSetting, final String message,
+                          final Runnable onDone) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Burst burst = recordAlert(locationSetting, message,
+                            System.currentTimeMillis());
+                    if (null == burst) {
+                        Log.d(LOG_TAG, "Dropped a repeated alert for " + locationSetting);
+                    } else {
+                        notifyBurst(burst);
+                    }
+                } finally {
+                    if (null != onDone) {
+                        onDone.run();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Records an alert.
+     *
+     * @return the burst the alert is now part of, null if it repeats a recent one.
+     */
+    Burst recordAlert(String locationSetting, String message, long nowMs) {
+        String location = null != locationSetting ? locationSetting : "";
+        long hash = hash(message);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (isRecent(db, KIND_ALERT, location, hash, nowMs - DEDUP_WINDOW_MS)) {
+                return null;
+            }
+            insert(db, KIND_ALERT, location, hash, message, nowMs);
+            prune(db, nowMs);
+            Burst burst = loadBurst(db, nowMs);
+            db.setTransactionSuccessful();
+            return burst;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Records the daily forecast notification of a location, if one is due.  Does disk I/O.
+     *
+     * @return whether it was due, and is to be posted now.
+     */
+    public boolean claimForecastNotification(String locationSetting, long nowMs) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (isRecent(db, KIND_FORECAST, locationSetting, 0,
+                    nowMs - FORECAST_WINDOW_MS)) {
+                return false;
+            }
+            insert(db, KIND_FORECAST, locationSetting, 0, "", nowMs);
+            prune(db, nowMs);
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * FNV-1a over the characters of the text, with surrounding blanks ignored.
+     */
+    static long hash(String text) {
+        String trimmed = null != text ? text.trim() : "";
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < trimmed.length(); i++) {
+            hash ^= trimmed.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static boolean isRecent(SQLiteDatabase db, int kind, String location, long hash,
+                                    long since) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + DbHelper.TABLE_NAME +
+                        " WHERE " + DbHelper.COLUMN_KIND + " = ? AND " +
+                        DbHelper.COLUMN_LOCATION + " = ? AND " + DbHelper.COLUMN_HASH +
+                        " = ? AND " + DbHelper.COLUMN_POSTED + " > ?",
+                new String[]{Integer.toString(kind), location, Long.toString(hash),
+                        Long.toString(since)}) > 0;
+    }
+
+    private static void insert(SQLiteDatabase db, int kind, String location, long hash,
+                               String text, long nowMs) {
+        ContentValues values = new ContentValues();
+        values.put(DbHelper.COLUMN_KIND, kind);
+        values.put(DbHelper.COLUMN_LOCATION, location);
+        values.put(DbHelper.COLUMN_HASH, hash);
+        values.put(DbHelper.COLUMN_TEXT, null != text ? text : "");
+        values.put(DbHelper.COLUMN_POSTED, nowMs);
+        db.insert(DbHelper.TABLE_NAME, null, values);
+    }
+
+    private static void prune(SQLiteDatabase db, long nowMs) {
+        db.delete(DbHelper.TABLE_NAME, DbHelper.COLUMN_POSTED + " <= ?",
+                new String[]{Long.toString(nowMs - RETENTION_MS)});
+    }
+
+    private static Burst loadBurst(SQLiteDatabase db, long nowMs) {
+        String selection = DbHelper.COLUMN_POSTED + " > ? AND " + DbHelper.COLUMN_KIND + " = ?";
+        String[] selectionArgs = {Long.toString(nowMs - BURST_WINDOW_MS),
+                Integer.toString(KIND_ALERT)};
+        int count = (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " +
+                DbHelper.TABLE_NAME + " WHERE " + selection, selectionArgs);
+        List<String> lines = new ArrayList<>(Math.min(count, MAX_LINES));
+        Cursor cursor = db.query(DbHelper.TABLE_NAME, new String[]{DbHelper.COLUMN_TEXT},
+                selection, selectionArgs, null, null,
+                DbHelper.COLUMN_POSTED + " DESC, _id DESC", Integer.toString(MAX_LINES));
+        try {
+            while (cursor.moveToNext()) {
+                lines.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new Burst(count, lines);
+    }
+
+    /*
+        One notification for the whole burst, updated in place.  The first alert of a burst
+        makes a sound and lights the screen, the ones that join it don't.
+     */
+    private void notifyBurst(Burst burst) {
+        NotificationManager notificationManager = (NotificationManager)
+                mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        PendingIntent contentIntent = PendingIntent.getActivity(mContext, 0,
+                new Intent(mContext, MainActivity.class), 0);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext)
+                .setSmallIcon(R.drawable.art_storm)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setOnlyAlertOnce(burst.count > 1)
+                .setContentIntent(contentIntent);
+
+        String latest = burst.lines.get(0);
+        if (burst.count == 1) {
+            builder.setContentTitle("Weather Alert!")
+                    .setContentText(latest)
+                    .setStyle(new NotificationCompat.BigTextStyle().bigText(latest));
+        } else {
+            String title = burst.count + " Weather Alerts!";
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                    .setBigContentTitle(title);
+            for (String line : burst.lines) {
+                style.addLine(line);
+            }
+            if (burst.count > burst.lines.size()) {
+                style.setSummaryText("+" + (burst.count - burst.lines.size()) + " more");
+            }
+            builder.setContentTitle(title)
+                    .setContentText(latest)
+                    .setNumber(burst.count)
+                    .setStyle(style);
+        }
+        notificationManager.notify(GcmBroadcastReceiver.NOTIFICATION_ID, builder.build());
+    }
+}
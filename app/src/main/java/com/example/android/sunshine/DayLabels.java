@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+
+import com.example.android.sunshine.core.DateEngine;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Day labels for forecast dates ("Today, June 24", "Wednesday", ...).
+ * <p>
+ * The labels are formatted once for a window of days around today and then looked up by
+ * julian day.  They are rebuilt when the day or the locale changes, and dropped by
+ * {@link DateChangeReceiver} when the time zone or the clock changes.
+ */
+public final class DayLabels {
+
+    // Days before and after today that get precomputed labels
+    private static final int LABEL_DAYS_BEFORE = 7;
+    private static final int LABEL_DAYS_AFTER = 14;
+
+    private static volatile Labels sLabels;
+
+    private DayLabels() {
+    }
+
+    /**
+     * Drops the cached labels, to be called when the time zone, the locale or the clock
+     * changes.
+     */
+    public static void invalidate() {
+        sLabels = null;
+    }
+
+    /**
+     * @return the day string for the forecast list: "Today, June 24", "Tomorrow", the day
+     * name within the next week and "Mon Jun 3" after that.
+     */
+    public static String getFriendlyDayString(Context context, long dateInMillis) {
+        int julianDay = DateEngine.getJulianDay(dateInMillis);
+        Labels labels = getLabels(context);
+        int index = labels.indexOf(julianDay);
+        if (index >= 0) {
+            return labels.mFriendly[index];
+        }
+        if (julianDay < labels.mToday + 7) {
+            return getDayName(context, dateInMillis);
+        }
+        return labels.format(labels.mShortDateFormat, dateInMillis);
+    }
+
+    /**
+     * @return the day string for the detail view, e.g "Wednesday, June 24".
+     */
+    public static String getFullFriendlyDayString(Context context, long dateInMillis) {
+        int julianDay = DateEngine.getJulianDay(dateInMillis);
+        Labels labels = getLabels(context);
+        int index = labels.indexOf(julianDay);
+        if (index >= 0) {
+            return labels.mFullFriendly[index];
+        }
+        return context.getString(R.string.format_full_friendly_date,
+                getDayName(context, dateInMillis),
+                getFormattedMonthDay(context, dateInMillis));
+    }
+
+    /**
+     * @return "Today", "Tomorrow" or the name of the day of the week.
+     */
+    public static String getDayName(Context context, long dateInMillis) {
+        int julianDay = DateEngine.getJulianDay(dateInMillis);
+        Labels labels = getLabels(context);
+        int index = labels.indexOf(julianDay);
+        if (index >= 0) {
+            return labels.mDayName[index];
+        }
+        return labels.format(labels.mDayFormat, dateInMillis);
+    }
+
+    /**
+     * @return the day in the form "June 24".
+     */
+    public static String getFormattedMonthDay(Context context, long dateInMillis) {
+        int julianDay = DateEngine.getJulianDay(dateInMillis);
+        Labels labels = getLabels(context);
+        int index = labels.indexOf(julianDay);
+        if (index >= 0) {
+            return labels.mMonthDay[index];
+        }
+        return labels.format(labels.mMonthDayFormat, dateInMillis);
+    }
+
+    private static Labels getLabels(Context context) {
+        Labels labels = sLabels;
+        if (null == labels || System.currentTimeMillis() >= labels.mValidUntil
+                || labels.mLocale != Locale.getDefault()) {
+            labels = new Labels(context.getApplicationContext());
+            sLabels = labels;
+        }
+        return labels;
+    }
+
+    /*
+        The labels of the days around today, for one locale.  Valid until the next midnight.
+     */
+    private static final class Labels {
+        final Locale mLocale;
+        final int mToday;
+        final int mFirstDay;
+        final long mValidUntil;
+
+        final String[] mFriendly;
+        final String[] mFullFriendly;
+        final String[] mDayName;
+        final String[] mMonthDay;
+
+        // For days outside the table.  SimpleDateFormat isn't thread safe, see format().
+        final SimpleDateFormat mShortDateFormat;
+        final SimpleDateFormat mDayFormat;
+        final SimpleDateFormat mMonthDayFormat;
+
+        Labels(Context context) {
+            mLocale = Locale.getDefault();
+            mToday = DateEngine.getCurrentJulianDay();
+            mFirstDay = mToday - LABEL_DAYS_BEFORE;
+            mValidUntil = DateEngine.getStartOfJulianDay(mToday + 1);
+
+            mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+            mDayFormat = new SimpleDateFormat("EEEE");
+            mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+
+            int days = LABEL_DAYS_BEFORE + 1 + LABEL_DAYS_AFTER;
+            mFriendly = new String[days];
+            mFullFriendly = new String[days];
+            mDayName = new String[days];
+            mMonthDay = new String[days];
+
+            String today = context.getString(R.string.today);
+            String tomorrow = context.getString(R.string.tomorrow);
+            for (int i = 0; i < days; i++) {
+                int julianDay = mFirstDay + i;
+                // format at noon so a daylight saving transition can't move us to another day
+                long noon = DateEngine.getStartOfJulianDay(julianDay) + DateEngine.DAY_IN_MILLIS / 2;
+
+                mMonthDay[i] = mMonthDayFormat.format(noon);
+                if (julianDay == mToday) {
+                    mDayName[i] = today;
+                } else if (julianDay == mToday + 1) {
+                    mDayName[i] = tomorrow;
+                } else {
+                    mDayName[i] = mDayFormat.format(noon);
+                }
+                mFullFriendly[i] = context.getString(R.string.format_full_friendly_date,
+                        mDayName[i], mMonthDay[i]);
+
+                if (julianDay == mToday) {
+                    mFriendly[i] = mFullFriendly[i];
+                } else if (julianDay < mToday + 7) {
+                    mFriendly[i] = mDayName[i];
+                } else {
+                    mFriendly[i] = mShortDateFormat.format(noon);
+                }
+            }
+        }
+
+        int indexOf(int julianDay) {
+            int index = julianDay - mFirstDay;
+            return index >= 0 && index < mDayName.length ? index : -1;
+        }
+
+        String format(SimpleDateFormat format, long dateInMillis) {
+            synchronized (format) {
+                return format.format(dateInMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.app.Activity;
+import android.os.Process;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs startup work once the first frame of an activity has been drawn.
+ * <p>
+ * Tasks added with {@link #onMainThread} run on the main thread right after that frame, in the
+ * order they were added; use it for work that shows UI.  Tasks added with {@link #inBackground}
+ * run one after the other on a background thread.  Every task is recorded by
+ * {@link StartupTracer} under its name.
+ */
+public class DeferredInitializer {
+
+    private static final String THREAD_NAME = "deferred-init";
+
+    // One thread for every activity, so background tasks never race each other
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, THREAD_NAME);
+                }
+            });
+
+    private final Activity mActivity;
+    private final ArrayList<NamedTask> mMainThreadTasks = new ArrayList<>();
+    private final ArrayList<NamedTask> mBackgroundTasks = new ArrayList<>();
+
+    private static final class NamedTask implements Runnable {
+        final String mName;
+        final Runnable mTask;
+
+        NamedTask(String name, Runnable task) {
+            mName = name;
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            StartupTracer.begin(mName);
+            try {
+                mTask.run();
+            } finally {
+                StartupTracer.end(mName);
+            }
+        }
+    }
+
+    public DeferredInitializer(Activity activity) {
+        mActivity = activity;
+    }
+
+    public DeferredInitializer onMainThread(String name, Runnable task) {
+        mMainThreadTasks.add(new NamedTask(name, task));
+        return this;
+    }
+
+    public DeferredInitializer inBackground(String name, Runnable task) {
+        mBackgroundTasks.add(new NamedTask(name, task));
+        return this;
+    }
+
+    /**
+     * Waits for the first frame, then runs the tasks.  Call it from onCreate, after
+     * setContentView.
+     */
+    public void start() {
+        whenFirstFrameDrawn(new Runnable() {
+            @Override
+            public void run() {
+                runTasks();
+            }
+        });
+    }
+
+    /**
+     * Runs the tasks straight away, on the calling thread, the way startup worked before
+     * initialization was deferred.  Used to measure what deferring saves.
+     */
+    public void runNow() {
+        for (NamedTask task : mBackgroundTasks) {
+            task.run();
+        }
+        for (NamedTask task : mMainThreadTasks) {
+            task.run();
+        }
+        whenFirstFrameDrawn(new Runnable() {
+            @Override
+            public void run() {
+                StartupTracer.dump();
+            }
+        });
+    }
+
+    private void whenFirstFrameDrawn(final Runnable action) {
+        final View decorView = mActivity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Posted from the pre-draw pass, so this runs once the frame is drawn
+                        decorView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                StartupTracer.mark(StartupTracer.FIRST_FRAME);
+                                action.run();
+                            }
+                        });
+                        return true;
+                    }
+                });
+    }
+
+    private void runTasks() {
+        if (!mActivity.isFinishing()) {
+            for (NamedTask task : mMainThreadTasks) {
+                task.run();
+            }
+        }
+        for (NamedTask task : mBackgroundTasks) {
+            sExecutor.execute(task);
+        }
+        // Dump once the background tasks are done too
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupTracer.dump();
+            }
+        });
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.android.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
@@ -12,11 +11,11 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.ForecastRepository;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.widget.ListView}.
+ * from a {@link ForecastRepository.Forecast} to a {@link RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -26,7 +25,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private ForecastRepository.Forecast mForecast;
+    // Shown until the first forecast arrives, see ForecastSnapshot
+    private ForecastSnapshot mSnapshot;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -55,9 +56,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            long date = null == mForecast
+                    ? mSnapshot.mDates[adapterPosition]
+                    : mForecast.days.get(adapterPosition).date;
+            mClickHandler.onClick(date, this);
             mICM.onClick(this);
         }
     }
@@ -106,8 +108,36 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        if (null == mForecast) {
+            bindSnapshotRow(forecastAdapterViewHolder, position);
+            return;
+        }
+        ForecastRepository.Day day = mForecast.days.get(position);
+        bindIcon(forecastAdapterViewHolder, position, day.weatherId);
+
+        // Find TextView and set formatted date on it
+        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, day.date));
+
+        // Read weather forecast from the day
+        String description = Utility.getStringForWeatherCondition(mContext, day.weatherId);
+
+        String highString = Utility.formatTemperature(mContext, day.high);
+        String lowString = Utility.formatTemperature(mContext, day.low);
+
+        bindText(forecastAdapterViewHolder, position, description, highString, lowString);
+    }
+
+    /*
+        The snapshot rows come formatted already, the first frame doesn't format anything.
+     */
+    private void bindSnapshotRow(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        bindIcon(forecastAdapterViewHolder, position, mSnapshot.mWeatherIds[position]);
+        forecastAdapterViewHolder.mDateView.setText(mSnapshot.mDateTexts[position]);
+        bindText(forecastAdapterViewHolder, position, mSnapshot.mDescriptions[position],
+                mSnapshot.mHighs[position], mSnapshot.mLows[position]);
+    }
+
+    private void bindIcon(ForecastAdapterViewHolder forecastAdapterViewHolder, int position, int weatherId) {
         int defaultImage;
 
         switch (getItemViewType(position)) {
@@ -131,16 +161,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
         ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+    }
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
+    private void bindText(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                          String description, String highString, String lowString) {
         // Find TextView and set weather forecast on it
         forecastAdapterViewHolder.mDescriptionView.setText(description);
         forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
@@ -149,15 +173,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
         forecastAdapterViewHolder.mHighTempView.setText(highString);
         forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
 
@@ -187,18 +205,38 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        if (null == mForecast) return null == mSnapshot ? 0 : mSnapshot.getCount();
+        return mForecast.days.size();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    public void swapForecast(ForecastRepository.Forecast newForecast) {
+        mForecast = newForecast;
+        // the real rows have arrived, the snapshot has served its purpose
+        if (null != newForecast) {
+            mSnapshot = null;
+        }
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    /**
+     * Shows the rows of a snapshot until {@link #swapForecast} provides the forecast.
+     */
+    public void swapSnapshot(ForecastSnapshot snapshot) {
+        if (null != mForecast) {
+            return;
+        }
+        mSnapshot = snapshot;
+        notifyDataSetChanged();
+        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    public ForecastSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    public ForecastRepository.Forecast getForecast() {
+        return mForecast;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.Loader;
+
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.ForecastStream;
+
+/**
+ * Delivers the forecast of a location from {@link ForecastStream} while started, the way a
+ * CursorLoader follows its uri.
+ * <p>
+ * When the repository already holds the forecast it is delivered as soon as the loader starts,
+ * without going through the stream's thread.  After that the loader only hears about changes
+ * to the fields it was created with, once per burst of writes.  A {@link ForecastStream#reformat}
+ * hands out a new forecast object, which is delivered like a change, whether the loader is
+ * started or gets it when it starts again.
+ */
+public class ForecastLoader extends Loader<ForecastRepository.Forecast>
+        implements ForecastStream.Subscriber {
+
+    private final String mLocationSetting;
+    private final int mFields;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private ForecastRepository.Forecast mForecast;
+    private ForecastStream.Subscription mSubscription;
+
+    public ForecastLoader(Context context, String locationSetting, int fields) {
+        super(context);
+        mLocationSetting = locationSetting;
+        mFields = fields;
+    }
+
+    @Override
+    public void onForecast(final ForecastRepository.Forecast forecast) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isStarted()) {
+                    deliverResult(forecast);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void deliverResult(ForecastRepository.Forecast forecast) {
+        if (isReset()) {
+            return;
+        }
+        // the stream may catch up with a forecast that was already delivered from memory
+        if (forecast == mForecast) {
+            return;
+        }
+        mForecast = forecast;
+        if (isStarted()) {
+            super.deliverResult(forecast);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        ForecastRepository.Forecast loaded =
+                ForecastRepository.getInstance().getForecast(mLocationSetting);
+        if (null != loaded) {
+            deliverResult(loaded);
+        } else if (null != mForecast) {
+            super.deliverResult(mForecast);
+        }
+        if (null == mSubscription) {
+            mSubscription = ForecastStream.getInstance(getContext())
+                    .subscribe(mLocationSetting, mFields, this);
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        if (null != mSubscription) {
+            mSubscription.unsubscribe();
+            mSubscription = null;
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mForecast = null;
+    }
+}
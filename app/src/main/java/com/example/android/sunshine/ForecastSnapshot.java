@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.data.ForecastRepository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The forecast list as it was last rendered, formatted and saved to a small file.
+ * <p>
+ * The sync writes it after every successful run.  ForecastFragment reads it synchronously when
+ * its view is created, so the first frame shows the forecast without waiting for the database;
+ * the loader's cursor replaces it once it arrives.  A snapshot is only used on the day it was
+ * written and for the location, units and locale it was formatted for.
+ */
+public class ForecastSnapshot {
+
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast_snapshot.bin";
+
+    private static final int MAGIC = 0x53554e53; // "SUNS"
+    private static final int VERSION = 1;
+
+    // Only the rows the list shows without scrolling matter for the first frame
+    private static final int MAX_ROWS = 14;
+
+    final String mLocationSetting;
+    final double mLatitude;
+    final double mLongitude;
+    final int mCount;
+    final long[] mDates;
+    final int[] mWeatherIds;
+    final String[] mDateTexts;
+    final String[] mDescriptions;
+    final String[] mHighs;
+    final String[] mLows;
+
+    private ForecastSnapshot(String locationSetting, double latitude, double longitude,
+                             int count) {
+        mLocationSetting = locationSetting;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mCount = count;
+        mDates = new long[count];
+        mWeatherIds = new int[count];
+        mDateTexts = new String[count];
+        mDescriptions = new String[count];
+        mHighs = new String[count];
+        mLows = new String[count];
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /*
+        What the formatted strings depend on besides the rows themselves.
+     */
+    private static String getFormatKey(Context context) {
+        return Locale.getDefault().toString() + "|" + Utility.isMetric(context);
+    }
+
+    /**
+     * Reads the snapshot for the current location.
+     *
+     * @return the snapshot, or null if there is none or it no longer matches what the list
+     * would show.
+     */
+    public static ForecastSnapshot read(Context context) {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(getFile(context).openRead()));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readInt() != DateEngine.getCurrentJulianDay()
+                    || !in.readUTF().equals(getFormatKey(context))) {
+                return null;
+            }
+            String locationSetting = in.readUTF();
+            if (!locationSetting.equals(Utility.getPreferredLocation(context))) {
+                return null;
+            }
+            double latitude = in.readDouble();
+            double longitude = in.readDouble();
+            int count = in.readInt();
+            ForecastSnapshot snapshot =
+                    new ForecastSnapshot(locationSetting, latitude, longitude, count);
+            for (int i = 0; i < count; i++) {
+                snapshot.mDates[i] = in.readLong();
+                snapshot.mWeatherIds[i] = in.readInt();
+                snapshot.mDateTexts[i] = in.readUTF();
+                snapshot.mDescriptions[i] = in.readUTF();
+                snapshot.mHighs[i] = in.readUTF();
+                snapshot.mLows[i] = in.readUTF();
+            }
+            return snapshot;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Ignoring unreadable forecast snapshot", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing left to do with it
+            }
+        }
+    }
+
+    /**
+     * Formats the forecast for the current location from today on, as the list shows it, and
+     * replaces the snapshot with it.  Call it off the main thread.
+     */
+    public static void update(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        ForecastRepository.Forecast forecast =
+                ForecastRepository.getInstance().loadForecast(context, locationSetting);
+        if (forecast.days.isEmpty()) {
+            getFile(context).delete();
+            return;
+        }
+
+        ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting,
+                forecast.latitude, forecast.longitude, Math.min(forecast.days.size(), MAX_ROWS));
+        for (int i = 0; i < snapshot.mCount; i++) {
+            ForecastRepository.Day day = forecast.days.get(i);
+            snapshot.mDates[i] = day.date;
+            snapshot.mWeatherIds[i] = day.weatherId;
+            snapshot.mDateTexts[i] = Utility.getFriendlyDayString(context, day.date);
+            snapshot.mDescriptions[i] = Utility.getStringForWeatherCondition(context, day.weatherId);
+            snapshot.mHighs[i] = Utility.formatTemperature(context, day.high);
+            snapshot.mLows[i] = Utility.formatTemperature(context, day.low);
+        }
+
+        try {
+            snapshot.write(context);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing the forecast snapshot", e);
+        }
+    }
+
+    /*
+        Writes to a temporary file that replaces the snapshot only once it is complete, so a
+        reader never sees half a snapshot.
+     */
+    private void write(Context context) throws IOException {
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = file.startWrite();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(DateEngine.getCurrentJulianDay());
+            out.writeUTF(getFormatKey(context));
+            out.writeUTF(mLocationSetting);
+            out.writeDouble(mLatitude);
+            out.writeDouble(mLongitude);
+            out.writeInt(mCount);
+            for (int i = 0; i < mCount; i++) {
+                out.writeLong(mDates[i]);
+                out.writeInt(mWeatherIds[i]);
+                out.writeUTF(mDateTexts[i]);
+                out.writeUTF(mDescriptions[i]);
+                out.writeUTF(mHighs[i]);
+                out.writeUTF(mLows[i]);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            file.failWrite(stream);
+            throw e;
+        }
+    }
+}
@@ -15,15 +15,16 @@
  */
 package com.example.android.sunshine;
 
-import android.app.NotificationManager;
-import android.app.PendingIntent;
+import android.annotation.TargetApi;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
-import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
+import com.example.android.sunshine.sync.ForecastDeltaApplier;
+import com.example.android.sunshine.sync.PushSyncScheduler;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
 
 public class GcmBroadcastReceiver extends BroadcastReceiver {
@@ -34,7 +35,6 @@ public class GcmBroadcastReceiver extends BroadcastReceiver {
     private static final String EXTRA_LOCATION = "location";
 
     public static final int NOTIFICATION_ID = 1;
-    private NotificationManager mNotificationManager;
 
     public GcmBroadcastReceiver() {
         super();
@@ -56,12 +56,25 @@ public class GcmBroadcastReceiver extends BroadcastReceiver {
             if (GoogleCloudMessaging.MESSAGE_TYPE_MESSAGE.equals(messageType)) {
                 // Is this our message?? Better be if you're going to act on it!
                 if (MainActivity.PROJECT_NUMBER.equals(extras.getString(EXTRA_SENDER))) {
-                    // Process message and then post a notification of the received message.
-                    String weather = extras.getString(EXTRA_WEATHER);
-                    String location = extras.getString(EXTRA_LOCATION);
-                    String alert = "Heads up: " + weather + " in " + location + "!";
+                    if (ForecastDeltaApplier.isForecastDelta(extras)) {
+                        // New days of forecast, written in the background while the
+                        // broadcast is kept open
+                        ForecastDeltaApplier.enqueue(context, extras, finishLater());
+                    } else if (PushSyncScheduler.isSyncRequest(extras)) {
+                        // The forecast of a location changed, sync it after a random delay
+                        // so the server doesn't hear from every device at once
+                        PushSyncScheduler.schedule(context, extras);
+                    } else {
+                        // Process message and then post a notification of the received message,
+                        // unless it repeats a recent one.  The notifier writes down what it
+                        // posted, so that is done in the background too.
+                        String weather = extras.getString(EXTRA_WEATHER);
+                        String location = extras.getString(EXTRA_LOCATION);
+                        String alert = "Heads up: " + weather + " in " + location + "!";
 
-                    sendNotification(context, alert);
+                        AlertNotifier.getInstance(context).postAlert(location, alert,
+                                finishLater());
+                    }
                 }
 
                 Log.i(LOG_TAG, "Received: " + extras.toString());
@@ -69,25 +82,21 @@ public class GcmBroadcastReceiver extends BroadcastReceiver {
         }
     }
 
-    // Put the message into a notification and post it.
-    // This is just one simple example of what you might choose to do with a GCM message.
-    private void sendNotification(Context context, String msg) {
-        mNotificationManager = (NotificationManager)
-                context.getSystemService(Context.NOTIFICATION_SERVICE);
-
-        PendingIntent contentIntent =
-                PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class), 0);
-
-        NotificationCompat.Builder mBuilder =
-                new NotificationCompat.Builder(context)
-                        .setSmallIcon(R.drawable.art_storm)
-                        .setContentTitle("Weather Alert!")
-                        .setStyle(new NotificationCompat.BigTextStyle()
-                                .bigText(msg))
-                        .setContentText(msg)
-                        .setPriority(NotificationCompat.PRIORITY_HIGH);
-
-        mBuilder.setContentIntent(contentIntent);
-        mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
+    /*
+        Keeps the process alive past onReceive, until the returned Runnable is run.  Before
+        Honeycomb there is no way to, the Runnable is null then.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Runnable finishLater() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return null;
+        }
+        final PendingResult result = goAsync();
+        return new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -3,22 +3,44 @@ package com.example.android.sunshine;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.Filter;
+
+import com.example.android.sunshine.data.CityIndex;
+
+import java.io.IOException;
+import java.util.List;
 
 /**
  * Created by gabriel on 9/12/15.
  */
 public class LocationEditTextPreference extends EditTextPreference {
+    private static final String LOG_TAG = LocationEditTextPreference.class.getSimpleName();
+
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 3;
+    // Start suggesting cities after this many characters
+    static final private int SUGGESTION_THRESHOLD = 2;
+    static final private int MAX_SUGGESTIONS = 8;
+
     private int mMinLength;
 
+    // Replaces the EditText of EditTextPreference in the dialog, to show city suggestions
+    private AutoCompleteTextView mCityView;
+    private CityIndex.City mPickedCity;
+
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
 
@@ -30,11 +52,33 @@ public class LocationEditTextPreference extends EditTextPreference {
         }
     }
 
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        mPickedCity = null;
+        mCityView = new AutoCompleteTextView(getContext());
+        // Takes the place of the EditText in the dialog, and its id so the dialog's saved
+        // state brings the typed text back after a rotation
+        mCityView.setId(editText.getId());
+        mCityView.setInputType(editText.getInputType());
+        mCityView.setSingleLine(true);
+        mCityView.setText(editText.getText());
+        mCityView.setSelection(mCityView.length());
+        mCityView.setThreshold(SUGGESTION_THRESHOLD);
+        mCityView.setAdapter(new CityAdapter(getContext()));
+        mCityView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                mPickedCity = (CityIndex.City) parent.getItemAtPosition(position);
+            }
+        });
+        super.onAddEditTextToDialogView(dialogView, mCityView);
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
 
-        EditText et = getEditText();
+        EditText et = mCityView;
         et.addTextChangedListener(new TextWatcher() {
 
 
@@ -66,4 +110,85 @@ public class LocationEditTextPreference extends EditTextPreference {
             }
         });
     }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        // EditTextPreference would read its own EditText, which isn't in the dialog
+        if (positiveResult) {
+            String value = mCityView.getText().toString();
+            if (callChangeListener(value)) {
+                // Store the picked city first: changing the location starts a sync, which
+                // requests the city by id when it was picked for this setting.
+                SharedPreferences.Editor editor = getSharedPreferences().edit();
+                if (null != mPickedCity && value.equals(mPickedCity.getLocationSetting())) {
+                    editor.putLong(getContext().getString(R.string.pref_location_city_id_key),
+                            mPickedCity.id);
+                    editor.putString(getContext().getString(R.string.pref_location_city_setting_key),
+                            value);
+                } else {
+                    editor.remove(getContext().getString(R.string.pref_location_city_id_key));
+                    editor.remove(getContext().getString(R.string.pref_location_city_setting_key));
+                }
+                editor.commit();
+                setText(value);
+            }
+        }
+        mCityView = null;
+        mPickedCity = null;
+    }
+
+    /*
+        Suggests cities from the offline index.  Filtering runs on a worker thread, which is
+        also where the index gets loaded the first time.
+     */
+    private static class CityAdapter extends ArrayAdapter<CityIndex.City> {
+        private final Context mAppContext;
+
+        CityAdapter(Context context) {
+            super(context, android.R.layout.simple_dropdown_item_1line);
+            mAppContext = context.getApplicationContext();
+        }
+
+        @Override
+        public Filter getFilter() {
+            return mFilter;
+        }
+
+        private final Filter mFilter = new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                FilterResults results = new FilterResults();
+                if (null == constraint) {
+                    return results;
+                }
+                try {
+                    List<CityIndex.City> cities = CityIndex.getInstance(mAppContext)
+                            .suggest(constraint.toString(), MAX_SUGGESTIONS);
+                    results.values = cities;
+                    results.count = cities.size();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Can't load the city index", e);
+                }
+                return results;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                setNotifyOnChange(false);
+                clear();
+                if (null != results.values) {
+                    for (CityIndex.City city : (List<CityIndex.City>) results.values) {
+                        add(city);
+                    }
+                }
+                notifyDataSetChanged();
+            }
+
+            @Override
+            public CharSequence convertResultToString(Object resultValue) {
+                return ((CityIndex.City) resultValue).getLocationSetting();
+            }
+        };
+    }
 }
@@ -36,12 +36,24 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private static final String PROPERTY_APP_VERSION = "appVersion";
     static final String PROJECT_NUMBER = "860767897157";
 
+    // Runs the account, sync and GCM setup inside onCreate, as it used to be.  Only meant for
+    // the startup benchmark to compare against.
+    static final String EXTRA_EAGER_INIT = "eager_init";
+
+    private static final String TRACE_ON_CREATE = "main_on_create";
+    private static final String TRACE_SYNC_INIT = "sync_init";
+    private static final String TRACE_GCM_INIT = "gcm_init";
+
     private boolean mTwoPane;
     private String mLocation;
     private GoogleCloudMessaging mGcm;
+    // The deferred GCM setup checks Play Services, no need to do it again on the first resume
+    private boolean mFirstResume = true;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTracer.reset();
+        StartupTracer.begin(TRACE_ON_CREATE);
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         mLocation = Utility.getPreferredLocation(this);
@@ -71,8 +83,32 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                 .findFragmentById(R.id.fragment_forecast));
         forecastFragment.setUseTodayLayout(!mTwoPane);
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // None of this is needed to draw the forecast.  Getting the sync account can go to the
+        // AccountManager and the GCM setup reads preferences and asks the PackageManager, so
+        // they wait until the first frame is on screen.
+        final Context appContext = getApplicationContext();
+        DeferredInitializer initializer = new DeferredInitializer(this)
+                .inBackground(TRACE_SYNC_INIT, new Runnable() {
+                    @Override
+                    public void run() {
+                        SunshineSyncAdapter.initializeSyncAdapter(appContext);
+                    }
+                })
+                .onMainThread(TRACE_GCM_INIT, new Runnable() {
+                    @Override
+                    public void run() {
+                        initializeGcm();
+                    }
+                });
+        if (getIntent().getBooleanExtra(EXTRA_EAGER_INIT, false)) {
+            initializer.runNow();
+        } else {
+            initializer.start();
+        }
+        StartupTracer.end(TRACE_ON_CREATE);
+    }
 
+    private void initializeGcm() {
         // If Google Play Services is not available, some features, such as GCM-powered weather
         // alerts, will not be available.
         if (checkPlayServices()) {
@@ -121,7 +157,9 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     protected void onResume() {
         super.onResume();
 
-        if (!checkPlayServices()) {
+        if (mFirstResume) {
+            mFirstResume = false;
+        } else if (!checkPlayServices()) {
             // Store regID as null
         }
         String location = Utility.getPreferredLocation(this);
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+
+import com.example.android.sunshine.core.WeatherFormatter;
+
+/**
+ * The {@link WeatherFormatter} formats of the app's string resources.
+ */
+public final class ResourceFormats implements WeatherFormatter.Formats {
+
+    private static ResourceFormats sInstance;
+
+    private final Context mContext;
+
+    public static synchronized ResourceFormats get(Context context) {
+        if (null == sInstance) {
+            sInstance = new ResourceFormats(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ResourceFormats(Context context) {
+        mContext = context;
+    }
+
+    @Override
+    public String getTemperatureFormat() {
+        return mContext.getString(R.string.format_temperature);
+    }
+
+    @Override
+    public String getWindKmhFormat() {
+        return mContext.getString(R.string.format_wind_kmh);
+    }
+
+    @Override
+    public String getWindMphFormat() {
+        return mContext.getString(R.string.format_wind_mph);
+    }
+
+    @Override
+    public String getPressureFormat() {
+        return mContext.getString(R.string.format_pressure);
+    }
+
+    @Override
+    public String getHumidityFormat() {
+        return mContext.getString(R.string.format_humidity);
+    }
+
+    @Override
+    public String getNotificationFormat() {
+        return mContext.getString(R.string.format_notification);
+    }
+}
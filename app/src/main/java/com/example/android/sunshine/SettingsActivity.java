@@ -1,6 +1,7 @@
 package com.example.android.sunshine;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Build;
@@ -10,7 +11,7 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.ForecastStream;
 import com.example.android.sunshine.sync.SunshineSyncAdapter;
 
 /**
@@ -38,9 +39,26 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_history_key)));
 
     }
 
+    // Registers the shared preference change listener
+    @Override
+    protected void onResume() {
+        super.onResume();
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .registerOnSharedPreferenceChangeListener(this);
+    }
+
+    // Unregisters the shared preference change listener
+    @Override
+    protected void onPause() {
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .unregisterOnSharedPreferenceChangeListener(this);
+        super.onPause();
+    }
+
     /**
      * Attaches a listener so the summary is always updated with the preference value.
      * Also fires the listener once, to initialize the summary (so it shows up before the value
@@ -105,21 +123,32 @@ public class SettingsActivity extends PreferenceActivity
     // start our synchronization here
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        if (key.equals(getString(R.string.pref_location_key))) {
-            // we've changed the location
-            // first clear locationStatus
-            Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
-        } else if (key.equals(getString(R.string.pref_units_key))) {
+        // A new location is synced by the forecast list when it comes back, see
+        // ForecastFragment.onLocationChanged, so it isn't handled here
+        if (key.equals(getString(R.string.pref_units_key))) {
             // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            reformatForecast(this);
         } else if (key.equals(getString(R.string.pref_location_status_key))) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
         } else if (key.equals(getString(R.string.pref_art_pack_key))) {
             // art pack have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            reformatForecast(this);
         }
     }
+
+    /*
+        The forecast didn't change but is shown differently: the list and the detail view get
+        it again to rebind, and the snapshot is formatted again.
+     */
+    static void reformatForecast(Context context) {
+        final Context appContext = context.getApplicationContext();
+        ForecastStream.getInstance(appContext).reformat(new Runnable() {
+            @Override
+            public void run() {
+                ForecastSnapshot.update(appContext);
+            }
+        });
+    }
 }
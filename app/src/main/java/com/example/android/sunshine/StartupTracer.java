@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Records timed sections of the app startup.
+ * <p>
+ * Times are relative to the last {@link #reset()}, which MainActivity calls first thing in
+ * onCreate.  {@link #dump()} writes every section to the log as one JSON object per line under
+ * the StartupTrace tag, e.g
+ * <pre>{"section":"sync_init","thread":"deferred-init","start_us":18210,"duration_us":9304}</pre>
+ * Debug builds always do; release builds only once the tag is enabled with
+ * <pre>adb shell setprop log.tag.StartupTrace DEBUG</pre>
+ * Sections also show up in systrace on Jelly Bean MR2 and later, as long as each one starts and
+ * ends on the same thread.
+ */
+public final class StartupTracer {
+
+    public static final String LOG_TAG = "StartupTrace";
+
+    // Events with no duration, recorded with mark()
+    public static final String FIRST_FRAME = "first_frame";
+
+    private static final ArrayList<Section> sSections = new ArrayList<>();
+    private static long sOriginNanos = System.nanoTime();
+
+    private static final class Section {
+        final String mName;
+        final String mThread;
+        final long mStartNanos;
+        long mEndNanos = -1;
+
+        Section(String name, String thread, long startNanos) {
+            mName = name;
+            mThread = thread;
+            mStartNanos = startNanos;
+        }
+    }
+
+    private StartupTracer() {
+    }
+
+    /**
+     * Forgets every recorded section and restarts the clock.
+     */
+    public static synchronized void reset() {
+        sSections.clear();
+        sOriginNanos = now();
+    }
+
+    public static void begin(String section) {
+        beginTrace(section);
+        synchronized (StartupTracer.class) {
+            sSections.add(new Section(section, Thread.currentThread().getName(), now()));
+        }
+    }
+
+    public static void end(String section) {
+        long end = now();
+        synchronized (StartupTracer.class) {
+            for (int i = sSections.size() - 1; i >= 0; i--) {
+                Section s = sSections.get(i);
+                if (s.mName.equals(section) && s.mEndNanos < 0) {
+                    s.mEndNanos = end;
+                    break;
+                }
+            }
+        }
+        endTrace();
+    }
+
+    /**
+     * Records an event that has no duration, such as {@link #FIRST_FRAME}.
+     */
+    public static synchronized void mark(String event) {
+        Section s = new Section(event, Thread.currentThread().getName(), now());
+        s.mEndNanos = s.mStartNanos;
+        sSections.add(s);
+    }
+
+    /**
+     * @return the time from the last reset to the end of the section or event, in microseconds,
+     * or -1 if it hasn't ended yet.
+     */
+    public static synchronized long getEndMicros(String name) {
+        for (Section s : sSections) {
+            if (s.mName.equals(name) && s.mEndNanos >= 0) {
+                return (s.mEndNanos - sOriginNanos) / 1000;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the recorded sections to the log, if the build or the tag's log level asks for it.
+     */
+    public static synchronized void dump() {
+        if (!BuildConfig.DEBUG && !Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            return;
+        }
+        for (Section s : sSections) {
+            Log.d(LOG_TAG, "{\"section\":\"" + s.mName + "\",\"thread\":\"" + s.mThread +
+                    "\",\"start_us\":" + (s.mStartNanos - sOriginNanos) / 1000 +
+                    ",\"duration_us\":" + (s.mEndNanos < 0 ? -1 : (s.mEndNanos - s.mStartNanos) / 1000) +
+                    "}");
+        }
+    }
+
+    // monotonic, and unlike SystemClock.elapsedRealtimeNanos available before Jelly Bean MR1
+    private static long now() {
+        return System.nanoTime();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTrace(String section) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(section);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTrace() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+}
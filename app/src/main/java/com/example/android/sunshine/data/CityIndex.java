@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Offline prefix index over the cities known to OpenWeatherMap.
+ * <p>
+ * The list is the cities.tsv asset, one city per line:
+ * <pre>key TAB id TAB name TAB country TAB lat TAB lon</pre>
+ * where key is the name folded to lower case without accents, and lines are sorted by key.  The
+ * build script's buildCityIndex task produces it from OpenWeatherMap's city.list.json.  The
+ * asset is stored uncompressed and mapped into memory; the only structure built on the heap is
+ * the offset of each line, so a lookup is a binary search over the mapped bytes.  When fewer
+ * than the requested number of cities start with the typed text, cities whose name starts
+ * within one typo of it are added.  Those are found by walking the sorted keys as the trie they
+ * imply, where a node is the range of lines sharing a prefix, and leaving a node as soon as no
+ * key below it can be within one typo.
+ */
+public class CityIndex {
+
+    private static final String LOG_TAG = CityIndex.class.getSimpleName();
+
+    public static final String ASSET_NAME = "cities.tsv";
+
+    private static final byte TAB = '\t';
+    private static final byte NEWLINE = '\n';
+
+    // Don't look for typos in the first letters typed, everything would match
+    private static final int MIN_FUZZY_LENGTH = 3;
+
+    private static CityIndex sInstance;
+
+    private final ByteBuffer mData;
+    private final int[] mLines;
+
+    /**
+     * A city of the index.
+     */
+    public static class City {
+        public final long id;
+        public final String name;
+        public final String country;
+        public final double lat;
+        public final double lon;
+
+        City(long id, String name, String country, double lat, double lon) {
+            this.id = id;
+            this.name = name;
+            this.country = country;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        /**
+         * @return the location setting for this city, in the "name,country" form the server
+         * understands.
+         */
+        public String getLocationSetting() {
+            return name + "," + country;
+        }
+
+        @Override
+        public String toString() {
+            return getLocationSetting();
+        }
+    }
+
+    /**
+     * Returns the index, loading it on first use.  Loading touches the disk, so don't call this
+     * on the main thread.
+     */
+    public static synchronized CityIndex getInstance(Context context) throws IOException {
+        if (null == sInstance) {
+            sInstance = new CityIndex(load(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    CityIndex(ByteBuffer data) {
+        mData = data;
+
+        int count = 0;
+        int limit = data.limit();
+        for (int i = 0; i < limit; i++) {
+            if (data.get(i) == NEWLINE) {
+                count++;
+            }
+        }
+        if (limit > 0 && data.get(limit - 1) != NEWLINE) {
+            count++;
+        }
+
+        mLines = new int[count];
+        int line = 0;
+        for (int i = 0; i < limit && line < count; i++) {
+            if (i == 0 || data.get(i - 1) == NEWLINE) {
+                mLines[line++] = i;
+            }
+        }
+    }
+
+    private static ByteBuffer load(Context context) throws IOException {
+        try {
+            AssetFileDescriptor fd = context.getAssets().openFd(ASSET_NAME);
+            FileInputStream in = fd.createInputStream();
+            try {
+                return in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        fd.getStartOffset(), fd.getLength());
+            } finally {
+                in.close();
+                fd.close();
+            }
+        } catch (IOException e) {
+            // openFd only works on uncompressed assets.  Read the list into memory instead.
+            Log.w(LOG_TAG, "Can't map " + ASSET_NAME + ", reading it", e);
+        }
+        InputStream in = context.getAssets().open(ASSET_NAME);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the number of cities in the index
+     */
+    public int size() {
+        return mLines.length;
+    }
+
+    /**
+     * @param text  what the user typed
+     * @param limit the maximum number of cities returned
+     * @return the cities whose name starts with the text, in alphabetical order, followed by
+     * cities whose name starts within one typo of it if there is room left.
+     */
+    public List<City> suggest(String text, int limit) {
+        List<City> cities = new ArrayList<>(limit);
+        byte[] prefix = normalize(text);
+        if (prefix.length == 0 || limit <= 0) {
+            return cities;
+        }
+
+        int first = lowerBound(prefix, prefix.length);
+        int last = upperBound(prefix, prefix.length);
+        for (int line = first; line < last && cities.size() < limit; line++) {
+            cities.add(readCity(line));
+        }
+
+        if (cities.size() < limit && prefix.length >= MIN_FUZZY_LENGTH) {
+            // Typos in the first letter are rare, so only cities sharing it are candidates.
+            int bucketStart = lowerBound(prefix, 1);
+            int bucketEnd = upperBound(prefix, 1);
+            new FuzzyWalk(prefix, first, last, limit, cities)
+                    .visit(0, prefix[0], bucketStart, bucketEnd);
+        }
+        return cities;
+    }
+
+    /*
+        Folds the text the way the keys were folded: lower case in the root locale, so a Turkish
+        I still folds to i, accents removed.  Keys are ASCII in practice; anything else is kept
+        as UTF-8.
+     */
+    static byte[] normalize(String text) {
+        String folded = Normalizer.normalize(text.trim().toLowerCase(Locale.ROOT),
+                Normalizer.Form.NFD);
+        StringBuilder builder = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                builder.append(c);
+            }
+        }
+        try {
+            return builder.toString().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // First line whose key is >= the first length bytes of prefix
+    private int lowerBound(byte[] prefix, int length) {
+        int low = 0;
+        int high = mLines.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mLines[mid], prefix, length) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First line whose key doesn't start with the first length bytes of prefix and sorts after
+    private int upperBound(byte[] prefix, int length) {
+        int low = 0;
+        int high = mLines.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mLines[mid], prefix, length) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*
+        Compares the key at offset, cut to length bytes, with the first length bytes of prefix.
+     */
+    private int compareKey(int offset, byte[] prefix, int length) {
+        for (int i = 0; i < length; i++) {
+            int b = offset + i < mData.limit() ? mData.get(offset + i) : TAB;
+            if (b == TAB) {
+                return -1;
+            }
+            int difference = (b & 0xff) - (prefix[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /*
+        Finds the cities whose key has a prefix at most one insertion, deletion, substitution
+        or transposition away from the typed text, skipping those in [skipFirst, skipLast).
+
+        The lines below a trie node of depth d are a range sharing d key bytes, and its
+        children are the sub-ranges with the same byte at d, found by binary search.  mRows[d]
+        is the edit distance between the node's prefix and each prefix of the typed text, so
+        a node is computed once for all lines below it and nothing is allocated per line.  A
+        node whose row is all above one has no match below it and is left; a node whose
+        distance to the whole text is at most one matches every line below it.
+     */
+    private final class FuzzyWalk {
+        private final byte[] mTyped;
+        private final int mSkipFirst;
+        private final int mSkipLast;
+        private final int mLimit;
+        private final List<City> mCities;
+        // With one edit allowed the walk never goes deeper than the text plus one byte
+        private final int[][] mRows;
+        // The next bytes worth trying at each depth
+        private final int[][] mCandidates;
+
+        FuzzyWalk(byte[] typed, int skipFirst, int skipLast, int limit, List<City> cities) {
+            int n = typed.length;
+            mTyped = typed;
+            mSkipFirst = skipFirst;
+            mSkipLast = skipLast;
+            mLimit = limit;
+            mCities = cities;
+            mRows = new int[n + 2][n + 1];
+            mCandidates = new int[n + 2][2 * n];
+            for (int i = 0; i <= n; i++) {
+                mRows[0][i] = i;
+            }
+        }
+
+        /*
+            Goes down from the node at depth to its child with byte b, whose lines are
+            [low, high).
+         */
+        void visit(int depth, byte b, int low, int high) {
+            if (low >= high || depth + 1 >= mRows.length) {
+                return;
+            }
+            int n = mTyped.length;
+            int[] row = mRows[depth];
+            int[] next = mRows[depth + 1];
+            // The byte before b on the path, for transpositions
+            int before = depth > 0 ? byteAt(low, depth - 1) : -1;
+            next[0] = depth + 1;
+            int rowMin = next[0];
+            for (int i = 1; i <= n; i++) {
+                byte a = mTyped[i - 1];
+                int value = Math.min(Math.min(row[i] + 1, next[i - 1] + 1),
+                        row[i - 1] + (a == b ? 0 : 1));
+                if (depth > 0 && i > 1 && mTyped[i - 2] == b && (a & 0xff) == before) {
+                    value = Math.min(value, mRows[depth - 1][i - 2] + 1);
+                }
+                next[i] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin <= 1) {
+                walk(depth + 1, low, high);
+            }
+        }
+
+        private void walk(int depth, int low, int high) {
+            int[] row = mRows[depth];
+            if (row[mTyped.length] <= 1) {
+                for (int line = low; line < high && mCities.size() < mLimit; line++) {
+                    if (line < mSkipFirst || line >= mSkipLast) {
+                        mCities.add(readCity(line));
+                    }
+                }
+                return;
+            }
+
+            // Keys ending here sort first and have no children
+            while (low < high && byteAt(low, depth) == TAB) {
+                low++;
+            }
+
+            boolean exact = false;
+            for (int i = 0; i < row.length && !exact; i++) {
+                exact = row[i] == 0;
+            }
+            if (exact) {
+                // Still on the typed text, any next byte can be the one typo
+                while (low < high && mCities.size() < mLimit) {
+                    int b = byteAt(low, depth);
+                    int end = searchByte(low, high, depth, b + 1);
+                    visit(depth, (byte) b, low, end);
+                    low = end;
+                }
+                return;
+            }
+
+            // The typo was spent, only the bytes that continue a match of the text can do:
+            // the text's next byte after a prefix one edit away, or the second half of a swap.
+            int[] candidates = mCandidates[depth];
+            int count = 0;
+            for (int i = 1; i <= mTyped.length; i++) {
+                if (row[i - 1] == 1) {
+                    candidates[count++] = mTyped[i - 1] & 0xff;
+                }
+                if (i > 1 && mRows[depth - 1][i - 2] == 0) {
+                    candidates[count++] = mTyped[i - 2] & 0xff;
+                }
+            }
+            Arrays.sort(candidates, 0, count);
+            for (int c = 0; c < count && mCities.size() < mLimit; c++) {
+                int b = candidates[c];
+                if (c > 0 && b == candidates[c - 1]) {
+                    continue;
+                }
+                int start = searchByte(low, high, depth, b);
+                int end = searchByte(start, high, depth, b + 1);
+                visit(depth, (byte) b, start, end);
+            }
+        }
+    }
+
+    // The byte at position depth of the key of line, as an unsigned value
+    private int byteAt(int line, int depth) {
+        int offset = mLines[line] + depth;
+        return offset < mData.limit() ? mData.get(offset) & 0xff : TAB;
+    }
+
+    /*
+        First line of [low, high) whose byte at depth is >= b.  The lines share their first
+        depth bytes, so they're sorted by that byte.
+     */
+    private int searchByte(int low, int high, int depth, int b) {
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (byteAt(mid, depth) < b) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Offset just past the TAB ending the field starting at offset
+    private int skipField(int offset) {
+        int limit = mData.limit();
+        while (offset < limit && mData.get(offset) != TAB && mData.get(offset) != NEWLINE) {
+            offset++;
+        }
+        return offset + 1;
+    }
+
+    private long parseLong(int offset) {
+        long value = 0;
+        byte b;
+        while (offset < mData.limit() && (b = mData.get(offset)) >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            offset++;
+        }
+        return value;
+    }
+
+    private String readField(int offset) {
+        int end = skipField(offset) - 1;
+        byte[] bytes = new byte[end - offset];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = mData.get(offset + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private City readCity(int line) {
+        int offset = skipField(mLines[line]);
+        long id = parseLong(offset);
+        offset = skipField(offset);
+        String name = readField(offset);
+        offset = skipField(offset);
+        String country = readField(offset);
+        offset = skipField(offset);
+        double lat = Double.parseDouble(readField(offset));
+        offset = skipField(offset);
+        double lon = Double.parseDouble(readField(offset));
+        return new City(id, name, country, lat, lon);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.core.DateEngine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-process copy of the forecast of one location, from today on, shared by everything that
+ * shows it: the forecast list, the detail view, the notification and the wearable.
+ * <p>
+ * Rows are immutable {@link Day} objects, so they can be handed to any thread.  Only
+ * {@link WeatherProvider} invalidates the copy, on every write, and the next
+ * {@link #loadForecast} queries the provider again; {@link ForecastStream} tells subscribers
+ * when that happens.  Reading a forecast that is already loaded, as the detail view does for
+ * the day that was picked in the list, does no I/O.
+ */
+public class ForecastRepository {
+
+    private static final ForecastRepository sInstance = new ForecastRepository();
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    private static final int COL_DATE = 0;
+    private static final int COL_WEATHER_ID = 1;
+    private static final int COL_SHORT_DESC = 2;
+    private static final int COL_MAX_TEMP = 3;
+    private static final int COL_MIN_TEMP = 4;
+    private static final int COL_HUMIDITY = 5;
+    private static final int COL_PRESSURE = 6;
+    private static final int COL_WIND_SPEED = 7;
+    private static final int COL_DEGREES = 8;
+    private static final int COL_COORD_LAT = 9;
+    private static final int COL_COORD_LONG = 10;
+
+    /**
+     * The weather of one day.
+     */
+    public static final class Day {
+        public final long date;
+        public final int weatherId;
+        public final String shortDesc;
+        public final double high;
+        public final double low;
+        public final float humidity;
+        public final float pressure;
+        public final float windSpeed;
+        public final float degrees;
+
+        Day(Cursor cursor) {
+            date = cursor.getLong(COL_DATE);
+            weatherId = cursor.getInt(COL_WEATHER_ID);
+            shortDesc = cursor.getString(COL_SHORT_DESC);
+            high = cursor.getDouble(COL_MAX_TEMP);
+            low = cursor.getDouble(COL_MIN_TEMP);
+            humidity = cursor.getFloat(COL_HUMIDITY);
+            pressure = cursor.getFloat(COL_PRESSURE);
+            windSpeed = cursor.getFloat(COL_WIND_SPEED);
+            degrees = cursor.getFloat(COL_DEGREES);
+        }
+    }
+
+    /**
+     * The days of one location by increasing date, starting with the day it was loaded.
+     */
+    public static final class Forecast {
+        public final String locationSetting;
+        // NaN when there are no days
+        public final double latitude;
+        public final double longitude;
+        public final List<Day> days;
+
+        Forecast(String locationSetting, double latitude, double longitude, List<Day> days) {
+            this.locationSetting = locationSetting;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.days = Collections.unmodifiableList(days);
+        }
+
+        /**
+         * @return the day that contains date, or null if it isn't part of the forecast.
+         */
+        public Day getDay(long date) {
+            long key = WeatherContract.normalizeDate(date);
+            int low = 0;
+            int high = days.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midDate = days.get(mid).date;
+                if (midDate < key) {
+                    low = mid + 1;
+                } else if (midDate > key) {
+                    high = mid - 1;
+                } else {
+                    return days.get(mid);
+                }
+            }
+            return null;
+        }
+    }
+
+    private Forecast mForecast;
+    private int mStartDay;
+    // Bumped by every invalidation, so a load that raced a write doesn't get cached
+    private int mGeneration;
+
+    public static ForecastRepository getInstance() {
+        return sInstance;
+    }
+
+    private ForecastRepository() {
+    }
+
+    /**
+     * @return the loaded forecast of locationSetting, or null if it has to be loaded first.
+     */
+    public synchronized Forecast getForecast(String locationSetting) {
+        if (null != mForecast && mForecast.locationSetting.equals(locationSetting)
+                && mStartDay == DateEngine.getCurrentJulianDay()) {
+            return mForecast;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the forecast of locationSetting, querying the provider unless it is loaded
+     * already.  Call it off the main thread.
+     */
+    public Forecast loadForecast(Context context, String locationSetting) {
+        int generation;
+        synchronized (this) {
+            Forecast forecast = getForecast(locationSetting);
+            if (null != forecast) {
+                return forecast;
+            }
+            generation = mGeneration;
+        }
+
+        int startDay = DateEngine.getCurrentJulianDay();
+        Forecast forecast = query(context, locationSetting,
+                DateEngine.getStartOfJulianDay(startDay));
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mForecast = forecast;
+                mStartDay = startDay;
+            }
+        }
+        return forecast;
+    }
+
+    private static Forecast query(Context context, String locationSetting, long startDate) {
+        // In-process, so skip the ContentResolver and the uri round trip
+        Cursor cursor = WeatherStore.getInstance(context).queryWeather(locationSetting,
+                startDate, FORECAST_COLUMNS, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        ArrayList<Day> days = new ArrayList<>();
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        if (null != cursor) {
+            try {
+                while (cursor.moveToNext()) {
+                    if (days.isEmpty()) {
+                        latitude = cursor.getDouble(COL_COORD_LAT);
+                        longitude = cursor.getDouble(COL_COORD_LONG);
+                    }
+                    days.add(new Day(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return new Forecast(locationSetting, latitude, longitude, days);
+    }
+
+    /*
+        Called by ForecastStream when the forecast is to be shown differently, such as in other
+        units, although its rows didn't change.  The loaded forecast is replaced with a copy,
+        so whatever skips a forecast it already has by identity takes this one.
+     */
+    synchronized void reformat() {
+        if (null != mForecast) {
+            mForecast = new Forecast(mForecast.locationSetting, mForecast.latitude,
+                    mForecast.longitude, mForecast.days);
+        }
+    }
+
+    /*
+        Called by the provider after weather or location rows change.
+     */
+    synchronized void invalidate() {
+        mForecast = null;
+        mGeneration++;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Pushes forecasts from {@link ForecastRepository} to subscribers whenever the provider's data
+ * changes.
+ * <p>
+ * The provider notifies once per write, and a sync writes the location, the forecast and the
+ * weekly rollups.  The stream waits until notifications have stopped for a frame before it
+ * loads the forecast again, so a burst of writes costs one query and one delivery.  Loading
+ * and delivery happen on the stream's own background thread.
+ * <p>
+ * A subscriber names the fields it shows, as a mask of the FIELD_ constants.  It gets the
+ * current forecast when it subscribes, and after that only the forecasts in which one of
+ * those fields changed, unless {@link #reformat} asks for all of them again.
+ */
+public class ForecastStream {
+
+    public static final int FIELD_CONDITION = 1;     // weather id and short description
+    public static final int FIELD_TEMPERATURE = 1 << 1;
+    public static final int FIELD_HUMIDITY = 1 << 2;
+    public static final int FIELD_PRESSURE = 1 << 3;
+    public static final int FIELD_WIND = 1 << 4;     // speed and direction
+    public static final int FIELD_COORDINATES = 1 << 5;
+    public static final int FIELD_ALL = (1 << 6) - 1;
+
+    // Quiet time that ends a burst of notifications
+    static final long FRAME_WINDOW_MS = 16;
+    // A steady trickle of writes still gets a delivery this often
+    static final long MAX_DELAY_MS = 100;
+
+    private static ForecastStream sInstance;
+
+    /**
+     * Receives forecasts on the stream's thread.
+     */
+    public interface Subscriber {
+        void onForecast(ForecastRepository.Forecast forecast);
+    }
+
+    /**
+     * Stops the deliveries of one {@link #subscribe} call.
+     */
+    public final class Subscription {
+        final String mLocationSetting;
+        final int mFields;
+        final Subscriber mSubscriber;
+        ForecastRepository.Forecast mLast;
+
+        Subscription(String locationSetting, int fields, Subscriber subscriber) {
+            mLocationSetting = locationSetting;
+            mFields = fields;
+            mSubscriber = subscriber;
+        }
+
+        public void unsubscribe() {
+            removeSubscription(this);
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final ArrayList<Subscription> mSubscriptions = new ArrayList<>();
+    private final ContentObserver mObserver;
+
+    // When the burst being coalesced started, 0 if there is none
+    private long mBurstStart;
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            mBurstStart = 0;
+            refresh(false);
+        }
+    };
+
+    public static synchronized ForecastStream getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new ForecastStream(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ForecastStream(Context context) {
+        mContext = context;
+        HandlerThread thread = new HandlerThread("forecast-stream",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        // Called on mHandler, so the burst bookkeeping needs no locking
+        mObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                long now = SystemClock.uptimeMillis();
+                if (0 == mBurstStart) {
+                    mBurstStart = now;
+                }
+                mHandler.removeCallbacks(mRefresh);
+                mHandler.postAtTime(mRefresh,
+                        Math.min(now + FRAME_WINDOW_MS, mBurstStart + MAX_DELAY_MS));
+            }
+        };
+    }
+
+    /**
+     * Delivers the forecast of locationSetting to subscriber now and again whenever one of
+     * fields changes, until the returned subscription is cancelled.
+     */
+    public Subscription subscribe(String locationSetting, int fields, Subscriber subscriber) {
+        final Subscription subscription = new Subscription(locationSetting, fields, subscriber);
+        synchronized (mSubscriptions) {
+            if (mSubscriptions.isEmpty()) {
+                mContext.getContentResolver().registerContentObserver(
+                        WeatherContract.BASE_CONTENT_URI, true, mObserver);
+            }
+            mSubscriptions.add(subscription);
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                deliver(subscription, ForecastRepository.getInstance()
+                        .loadForecast(mContext, subscription.mLocationSetting));
+            }
+        });
+        return subscription;
+    }
+
+    /**
+     * Delivers a new copy of the forecast to every subscriber, whatever its fields, for when
+     * forecasts are to be shown differently although the data didn't change, such as after a
+     * change of units.  Loaders started later get the copy too.
+     *
+     * @param onDone run on the stream's thread once the copies were delivered, may be null
+     */
+    public void reformat(final Runnable onDone) {
+        ForecastRepository.getInstance().reformat();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                refresh(true);
+                if (null != onDone) {
+                    onDone.run();
+                }
+            }
+        });
+    }
+
+    private void removeSubscription(Subscription subscription) {
+        synchronized (mSubscriptions) {
+            if (mSubscriptions.remove(subscription) && mSubscriptions.isEmpty()) {
+                mContext.getContentResolver().unregisterContentObserver(mObserver);
+            }
+        }
+    }
+
+    private List<Subscription> getSubscriptions() {
+        synchronized (mSubscriptions) {
+            return new ArrayList<>(mSubscriptions);
+        }
+    }
+
+    /*
+        Loads every subscribed location once and hands out the result, to every subscriber if
+        force is set.  Runs on mHandler.
+     */
+    private void refresh(boolean force) {
+        HashMap<String, ForecastRepository.Forecast> forecasts = new HashMap<>();
+        for (Subscription subscription : getSubscriptions()) {
+            ForecastRepository.Forecast forecast = forecasts.get(subscription.mLocationSetting);
+            if (null == forecast) {
+                forecast = ForecastRepository.getInstance()
+                        .loadForecast(mContext, subscription.mLocationSetting);
+                forecasts.put(subscription.mLocationSetting, forecast);
+            }
+            if (force || hasChanged(subscription.mLast, forecast, subscription.mFields)) {
+                deliver(subscription, forecast);
+            }
+        }
+    }
+
+    private void deliver(Subscription subscription, ForecastRepository.Forecast forecast) {
+        synchronized (mSubscriptions) {
+            if (!mSubscriptions.contains(subscription)) {
+                return;
+            }
+        }
+        subscription.mLast = forecast;
+        subscription.mSubscriber.onForecast(forecast);
+    }
+
+    /*
+        Whether a subscriber to fields would see a difference between the two forecasts.  The
+        days themselves, added or dropped, always count.
+     */
+    static boolean hasChanged(ForecastRepository.Forecast before,
+                              ForecastRepository.Forecast after, int fields) {
+        if (null == before || before.days.size() != after.days.size()) {
+            return true;
+        }
+        if ((fields & FIELD_COORDINATES) != 0 && (Double.compare(before.latitude, after.latitude) != 0
+                || Double.compare(before.longitude, after.longitude) != 0)) {
+            return true;
+        }
+        for (int i = 0; i < after.days.size(); i++) {
+            ForecastRepository.Day a = before.days.get(i);
+            ForecastRepository.Day b = after.days.get(i);
+            if (a.date != b.date) {
+                return true;
+            }
+            if ((fields & FIELD_CONDITION) != 0 && (a.weatherId != b.weatherId
+                    || !equal(a.shortDesc, b.shortDesc))) {
+                return true;
+            }
+            if ((fields & FIELD_TEMPERATURE) != 0 && (a.high != b.high || a.low != b.low)) {
+                return true;
+            }
+            if ((fields & FIELD_HUMIDITY) != 0 && a.humidity != b.humidity) {
+                return true;
+            }
+            if ((fields & FIELD_PRESSURE) != 0 && a.pressure != b.pressure) {
+                return true;
+            }
+            if ((fields & FIELD_WIND) != 0 && (a.windSpeed != b.windSpeed
+                    || a.degrees != b.degrees)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equal(String a, String b) {
+        return null == a ? null == b : a.equals(b);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.HashMap;
+
+/**
+ * In-process map from location setting to the _id of its row in the location table.
+ * <p>
+ * The mapping almost never changes, so the sync doesn't need to ask the database for it on
+ * every run.  Only {@link WeatherProvider} writes to the cache: it warms it from the location
+ * table the first time it resolves a location, adds ids as rows are inserted and drops
+ * everything when location rows are updated or deleted.
+ */
+public class LocationIdCache {
+
+    public static final long UNKNOWN_ID = -1;
+
+    private static final LocationIdCache sInstance = new LocationIdCache();
+
+    private final HashMap<String, Long> mIds = new HashMap<>();
+    private boolean mWarm;
+
+    public static LocationIdCache getInstance() {
+        return sInstance;
+    }
+
+    private LocationIdCache() {
+    }
+
+    /**
+     * @param locationSetting the location string used to request updates from the server
+     * @return the location row id, or {@link #UNKNOWN_ID} if it isn't cached
+     */
+    public synchronized long get(String locationSetting) {
+        Long id = mIds.get(locationSetting);
+        return null == id ? UNKNOWN_ID : id;
+    }
+
+    synchronized boolean isWarm() {
+        return mWarm;
+    }
+
+    synchronized void warm(SQLiteDatabase db) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{
+                        WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null, null, null, null, null);
+        try {
+            mIds.clear();
+            while (cursor.moveToNext()) {
+                mIds.put(cursor.getString(1), cursor.getLong(0));
+            }
+            mWarm = true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    synchronized void put(String locationSetting, long id) {
+        if (null != locationSetting && id > 0) {
+            mIds.put(locationSetting, id);
+        }
+    }
+
+    synchronized void invalidate() {
+        mIds.clear();
+        mWarm = false;
+    }
+}
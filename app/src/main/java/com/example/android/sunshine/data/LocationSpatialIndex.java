@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * In-memory spatial index over the location table, for the nearest and bounding box queries
+ * of {@link WeatherProvider}.
+ * <p>
+ * Locations are few and rarely change, so the index is a snapshot of the table that the
+ * provider drops whenever location rows are inserted, updated or deleted; the next query
+ * rebuilds it.  Nearest-N searches run on a k-d tree over the points of the unit sphere, where
+ * the straight-line distance grows with the great-circle distance and longitudes don't wrap.
+ * Bounding boxes are answered from the locations sorted by latitude.
+ */
+class LocationSpatialIndex {
+
+    static final double EARTH_RADIUS_KM = 6371.0;
+
+    private static final LocationSpatialIndex sInstance = new LocationSpatialIndex();
+
+    private static final String[] COLUMNS = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    private static final int COL_ID = 0;
+    private static final int COL_SETTING = 1;
+    private static final int COL_CITY = 2;
+    private static final int COL_LAT = 3;
+    private static final int COL_LONG = 4;
+    // Not stored, computed by nearest queries
+    private static final int COL_DISTANCE = 5;
+
+    private Snapshot mSnapshot;
+
+    static LocationSpatialIndex getInstance() {
+        return sInstance;
+    }
+
+    private LocationSpatialIndex() {
+    }
+
+    synchronized void invalidate() {
+        mSnapshot = null;
+    }
+
+    private synchronized Snapshot getSnapshot(SQLiteDatabase db) {
+        if (null == mSnapshot) {
+            mSnapshot = new Snapshot(db);
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * @return the count closest locations to (lat, lon), closest first, with their distance in
+     * km in {@link WeatherContract.LocationEntry#COLUMN_DISTANCE}.
+     */
+    Cursor queryNearest(SQLiteDatabase db, String[] projection, double lat, double lon,
+                        int count) {
+        Snapshot snapshot = getSnapshot(db);
+        int[] columns = resolveProjection(projection);
+        MatrixCursor cursor = new MatrixCursor(columnNames(columns));
+        if (count <= 0 || snapshot.mSize == 0) {
+            return cursor;
+        }
+
+        double[] target = toUnitVector(lat, lon);
+        Neighbours neighbours = new Neighbours(Math.min(count, snapshot.mSize));
+        snapshot.search(0, snapshot.mSize, 0, target, neighbours);
+        for (int i = 0; i < neighbours.mSize; i++) {
+            double chord = Math.sqrt(neighbours.mDistances[i]);
+            double distance = 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, chord / 2));
+            cursor.addRow(snapshot.row(neighbours.mIndexes[i], columns, distance));
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the locations within the box, by increasing latitude.  The box crosses the
+     * antimeridian when west is greater than east.
+     */
+    Cursor queryBoundingBox(SQLiteDatabase db, String[] projection, double south, double west,
+                            double north, double east) {
+        Snapshot snapshot = getSnapshot(db);
+        int[] columns = resolveProjection(projection);
+        if (contains(columns, COL_DISTANCE)) {
+            throw new IllegalArgumentException("Bounding box queries have no "
+                    + WeatherContract.LocationEntry.COLUMN_DISTANCE + " column");
+        }
+        MatrixCursor cursor = new MatrixCursor(columnNames(columns));
+
+        int first = lowerBound(snapshot.mSortedLats, south);
+        for (int i = first; i < snapshot.mSize && snapshot.mSortedLats[i] <= north; i++) {
+            int index = snapshot.mByLatitude[i];
+            double lon = snapshot.mLons[index];
+            boolean inside = west <= east ? lon >= west && lon <= east : lon >= west || lon <= east;
+            if (inside) {
+                cursor.addRow(snapshot.row(index, columns, 0));
+            }
+        }
+        return cursor;
+    }
+
+    private static int lowerBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+        Maps the requested column names to column indexes; null means every stored column.
+     */
+    private static int[] resolveProjection(String[] projection) {
+        if (null == projection) {
+            return new int[]{COL_ID, COL_SETTING, COL_CITY, COL_LAT, COL_LONG};
+        }
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            String name = projection[i];
+            // tolerate the table prefix used in the other location projections
+            int dot = name.lastIndexOf('.');
+            if (dot >= 0) {
+                name = name.substring(dot + 1);
+            }
+            if (WeatherContract.LocationEntry.COLUMN_DISTANCE.equals(name)) {
+                columns[i] = COL_DISTANCE;
+                continue;
+            }
+            int index = Arrays.asList(COLUMNS).indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown column: " + projection[i]);
+            }
+            columns[i] = index;
+        }
+        return columns;
+    }
+
+    private static String[] columnNames(int[] columns) {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i] == COL_DISTANCE
+                    ? WeatherContract.LocationEntry.COLUMN_DISTANCE : COLUMNS[columns[i]];
+        }
+        return names;
+    }
+
+    static double[] toUnitVector(double lat, double lon) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lon);
+        return new double[]{
+                Math.cos(phi) * Math.cos(lambda),
+                Math.cos(phi) * Math.sin(lambda),
+                Math.sin(phi)
+        };
+    }
+
+    /*
+        The count best candidates seen so far, kept sorted by squared chord distance.
+     */
+    private static final class Neighbours {
+        final int[] mIndexes;
+        final double[] mDistances;
+        int mSize;
+
+        Neighbours(int capacity) {
+            mIndexes = new int[capacity];
+            mDistances = new double[capacity];
+        }
+
+        boolean isFull() {
+            return mSize == mIndexes.length;
+        }
+
+        double worst() {
+            return mDistances[mSize - 1];
+        }
+
+        void offer(int index, double distance) {
+            if (isFull() && distance >= worst()) {
+                return;
+            }
+            int i = isFull() ? mSize - 1 : mSize++;
+            while (i > 0 && mDistances[i - 1] > distance) {
+                mIndexes[i] = mIndexes[i - 1];
+                mDistances[i] = mDistances[i - 1];
+                i--;
+            }
+            mIndexes[i] = index;
+            mDistances[i] = distance;
+        }
+    }
+
+    /*
+        The location table at one point in time.  mTree holds row indexes laid out as an
+        implicit k-d tree: the median of a range splits it on the axis of its depth.
+     */
+    private static final class Snapshot {
+        final int mSize;
+        final long[] mIds;
+        final String[] mSettings;
+        final String[] mCities;
+        final double[] mLats;
+        final double[] mLons;
+        final double[][] mPoints;
+
+        final Integer[] mTree;
+        final int[] mByLatitude;
+        final double[] mSortedLats;
+
+        Snapshot(SQLiteDatabase db) {
+            Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME, COLUMNS,
+                    null, null, null, null, null);
+            try {
+                mSize = cursor.getCount();
+                mIds = new long[mSize];
+                mSettings = new String[mSize];
+                mCities = new String[mSize];
+                mLats = new double[mSize];
+                mLons = new double[mSize];
+                mPoints = new double[mSize][];
+                for (int i = 0; cursor.moveToNext(); i++) {
+                    mIds[i] = cursor.getLong(COL_ID);
+                    mSettings[i] = cursor.getString(COL_SETTING);
+                    mCities[i] = cursor.getString(COL_CITY);
+                    mLats[i] = cursor.getDouble(COL_LAT);
+                    mLons[i] = cursor.getDouble(COL_LONG);
+                    mPoints[i] = toUnitVector(mLats[i], mLons[i]);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            mTree = new Integer[mSize];
+            for (int i = 0; i < mSize; i++) {
+                mTree[i] = i;
+            }
+            build(0, mSize, 0);
+
+            Integer[] byLatitude = new Integer[mSize];
+            for (int i = 0; i < mSize; i++) {
+                byLatitude[i] = i;
+            }
+            Arrays.sort(byLatitude, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    return Double.compare(mLats[lhs], mLats[rhs]);
+                }
+            });
+            mByLatitude = new int[mSize];
+            mSortedLats = new double[mSize];
+            for (int i = 0; i < mSize; i++) {
+                mByLatitude[i] = byLatitude[i];
+                mSortedLats[i] = mLats[byLatitude[i]];
+            }
+        }
+
+        private void build(int start, int end, final int axis) {
+            if (end - start <= 1) {
+                return;
+            }
+            Arrays.sort(mTree, start, end, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    return Double.compare(mPoints[lhs][axis], mPoints[rhs][axis]);
+                }
+            });
+            int mid = (start + end) >>> 1;
+            build(start, mid, (axis + 1) % 3);
+            build(mid + 1, end, (axis + 1) % 3);
+        }
+
+        void search(int start, int end, int axis, double[] target, Neighbours neighbours) {
+            if (start >= end) {
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            int index = mTree[mid];
+            double[] point = mPoints[index];
+            double dx = point[0] - target[0];
+            double dy = point[1] - target[1];
+            double dz = point[2] - target[2];
+            neighbours.offer(index, dx * dx + dy * dy + dz * dz);
+
+            int next = (axis + 1) % 3;
+            double split = target[axis] - point[axis];
+            if (split < 0) {
+                search(start, mid, next, target, neighbours);
+                if (!neighbours.isFull() || split * split < neighbours.worst()) {
+                    search(mid + 1, end, next, target, neighbours);
+                }
+            } else {
+                search(mid + 1, end, next, target, neighbours);
+                if (!neighbours.isFull() || split * split < neighbours.worst()) {
+                    search(start, mid, next, target, neighbours);
+                }
+            }
+        }
+
+        Object[] row(int index, int[] columns, double distance) {
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                switch (columns[i]) {
+                    case COL_ID:
+                        row[i] = mIds[index];
+                        break;
+                    case COL_SETTING:
+                        row[i] = mSettings[index];
+                        break;
+                    case COL_CITY:
+                        row[i] = mCities[index];
+                        break;
+                    case COL_LAT:
+                        row[i] = mLats[index];
+                        break;
+                    case COL_LONG:
+                        row[i] = mLons[index];
+                        break;
+                    default:
+                        row[i] = distance;
+                }
+            }
+            return row;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.annotation.TargetApi;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only cursor over a weather range query that holds its rows in primitive columns, read
+ * from the database a page at a time.
+ * <p>
+ * A plain SQLite cursor copies rows into a 2 MB CursorWindow and fills it again from the
+ * database when a list scrolls past it, on the main thread.  This one reads its pages when it
+ * is created, on the thread that ran the query, which for a loader is its background thread.
+ * Each page is sized to what the list shows at once and keeps each column in a primitive
+ * array.  Moving the cursor never touches the database, and the count is the number of rows
+ * it holds, so the two can't disagree after a write.
+ * <p>
+ * Pages are shared through a small process-wide cache, keyed by the generation of the weather
+ * rows they were read in.  A cursor created for a requery that didn't follow a write (a units
+ * change, say) is assembled from them without reading the database.  {@link WeatherStore}
+ * calls {@link #invalidatePages()} whenever weather rows change.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class PagedWeatherCursor extends AbstractCursor {
+
+    // Pages kept across cursors.  A page of the forecast list is a handful of rows.
+    private static final int MAX_CACHED_PAGES = 64;
+    // Reads a write landed in the middle of are started over, at most this many times.  The
+    // write notifies the observers of the cursor anyway, so they requery.
+    private static final int MAX_READS = 3;
+
+    private static final LruCache<String, Page> sPages = new LruCache<>(MAX_CACHED_PAGES);
+    private static int sGeneration;
+
+    private final int mPageSize;
+    private final Page[] mPages;
+    private final String[] mColumnNames;
+    private final int mCount;
+
+    private Page mPage;
+
+    /*
+        One page of rows.  Each column is a long[], double[] or String[] depending on the
+        storage class of its values.
+     */
+    private static final class Page {
+        final String[] mColumnNames;
+        final int mStart;
+        final int mRows;
+        final int[] mTypes;
+        final Object[] mColumns;
+        final boolean[][] mNulls;
+
+        Page(String[] columnNames, int start, int rows, int[] types, Object[] columns,
+             boolean[][] nulls) {
+            mColumnNames = columnNames;
+            mStart = start;
+            mRows = rows;
+            mTypes = types;
+            mColumns = columns;
+            mNulls = nulls;
+        }
+    }
+
+    /**
+     * Reads the result, so don't call this on the main thread.
+     *
+     * @param db            the database to read from
+     * @param sql           the complete query, including its ORDER BY, without a LIMIT
+     * @param selectionArgs the arguments of the query
+     * @param pageSize      number of rows read at a time
+     */
+    PagedWeatherCursor(SQLiteDatabase db, String sql, String[] selectionArgs, int pageSize) {
+        mPageSize = Math.max(1, pageSize);
+        String query = sql + "|" + Arrays.toString(selectionArgs) + "|" + mPageSize + "|";
+
+        List<Page> pages = new ArrayList<>();
+        for (int read = 1; ; read++) {
+            int generation = getGeneration();
+            String cacheKey = generation + "|" + query;
+            pages.clear();
+            List<Page> loaded = new ArrayList<>();
+            Page page;
+            do {
+                page = sPages.get(cacheKey + pages.size());
+                if (null == page) {
+                    page = loadPage(db, sql, selectionArgs, pages.size() * mPageSize);
+                    loaded.add(page);
+                }
+                pages.add(page);
+            } while (page.mRows == mPageSize);
+
+            if (generation == getGeneration()) {
+                // Only pages read in one generation are shared
+                for (Page fresh : loaded) {
+                    sPages.put(cacheKey + fresh.mStart / mPageSize, fresh);
+                }
+                break;
+            }
+            if (read == MAX_READS) {
+                break;
+            }
+        }
+
+        mPages = pages.toArray(new Page[pages.size()]);
+        mColumnNames = mPages[0].mColumnNames;
+        Page last = mPages[mPages.length - 1];
+        mCount = last.mStart + last.mRows;
+    }
+
+    private static synchronized int getGeneration() {
+        return sGeneration;
+    }
+
+    /**
+     * Drops every cached page.  Cursors created after this call read the database again.
+     */
+    static void invalidatePages() {
+        synchronized (PagedWeatherCursor.class) {
+            sGeneration++;
+        }
+        sPages.evictAll();
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        mPage = mPages[newPosition / mPageSize];
+        return true;
+    }
+
+    private Page loadPage(SQLiteDatabase db, String sql, String[] selectionArgs, int start) {
+        Cursor cursor = db.rawQuery(sql + " LIMIT " + mPageSize + " OFFSET " + start,
+                selectionArgs);
+        try {
+            String[] columnNames = cursor.getColumnNames();
+            int rows = cursor.getCount();
+            int columnCount = columnNames.length;
+            int[] types = new int[columnCount];
+            Object[] columns = new Object[columnCount];
+            boolean[][] nulls = new boolean[columnCount][rows];
+            for (int row = 0; cursor.moveToNext(); row++) {
+                for (int column = 0; column < columnCount; column++) {
+                    int type = cursor.getType(column);
+                    if (null == columns[column] && type != FIELD_TYPE_NULL) {
+                        types[column] = type;
+                        columns[column] = newColumn(type, rows);
+                    }
+                    if (type == FIELD_TYPE_NULL) {
+                        nulls[column][row] = true;
+                        continue;
+                    }
+                    switch (types[column]) {
+                        case FIELD_TYPE_INTEGER:
+                            ((long[]) columns[column])[row] = cursor.getLong(column);
+                            break;
+                        case FIELD_TYPE_FLOAT:
+                            ((double[]) columns[column])[row] = cursor.getDouble(column);
+                            break;
+                        default:
+                            ((String[]) columns[column])[row] = cursor.getString(column);
+                    }
+                }
+            }
+            return new Page(columnNames, start, rows, types, columns, nulls);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Object newColumn(int type, int rows) {
+        switch (type) {
+            case FIELD_TYPE_INTEGER:
+                return new long[rows];
+            case FIELD_TYPE_FLOAT:
+                return new double[rows];
+            default:
+                return new String[rows];
+        }
+    }
+
+    private int row() {
+        return mPos - mPage.mStart;
+    }
+
+    @Override
+    public int getType(int column) {
+        if (isNull(column)) {
+            return FIELD_TYPE_NULL;
+        }
+        return mPage.mTypes[column];
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        checkPosition();
+        return null == mPage.mColumns[column] || mPage.mNulls[column][row()];
+    }
+
+    @Override
+    public long getLong(int column) {
+        if (isNull(column)) {
+            return 0;
+        }
+        Object values = mPage.mColumns[column];
+        if (values instanceof long[]) {
+            return ((long[]) values)[row()];
+        } else if (values instanceof double[]) {
+            return (long) ((double[]) values)[row()];
+        }
+        return Long.parseLong(((String[]) values)[row()]);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        if (isNull(column)) {
+            return 0;
+        }
+        Object values = mPage.mColumns[column];
+        if (values instanceof double[]) {
+            return ((double[]) values)[row()];
+        } else if (values instanceof long[]) {
+            return ((long[]) values)[row()];
+        }
+        return Double.parseDouble(((String[]) values)[row()]);
+    }
+
+    @Override
+    public String getString(int column) {
+        if (isNull(column)) {
+            return null;
+        }
+        Object values = mPage.mColumns[column];
+        if (values instanceof long[]) {
+            return Long.toString(((long[]) values)[row()]);
+        } else if (values instanceof double[]) {
+            return Double.toString(((double[]) values)[row()]);
+        }
+        return ((String[]) values)[row()];
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+}
@@ -19,10 +19,15 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.core.WeatherSchema;
+
+import java.util.List;
 
 /**
- * Defines table and column names for the weather database.
+ * Defines table and column names for the weather database.  The names themselves come from
+ * {@link WeatherSchema}, which holds the SQL as well.
  */
 public class WeatherContract {
 
@@ -32,15 +37,39 @@ public class WeatherContract {
 
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_ROLLUP = "rollup";
+    // Sub-paths of PATH_LOCATION for the spatial queries
+    public static final String PATH_NEAREST = "nearest";
+    public static final String PATH_BOUNDING_BOX = "bbox";
+    // Reads across locations, one query for many cities
+    public static final String PATH_WEATHER_BATCH = "weather_batch";
+    public static final String PATH_TODAY_SUMMARY = "today_summary";
+
+    // Provider methods reachable through ContentResolver.call().
+    // METHOD_COMMIT_SYNC upserts EXTRA_LOCATION, inserts the EXTRA_WEATHER rows and deletes
+    // every row dated on or before EXTRA_PRUNE_BEFORE in a single transaction, then fires one
+    // change notification for the location's weather uri.
+    public static final String METHOD_COMMIT_SYNC = "commit_sync";
+    public static final String EXTRA_LOCATION = "location";
+    public static final String EXTRA_WEATHER = "weather";
+    public static final String EXTRA_PRUNE_BEFORE = "prune_before";
+    // Keys of the Bundle returned by METHOD_COMMIT_SYNC
+    public static final String EXTRA_LOCATION_ID = "location_id";
+    public static final String EXTRA_INSERTED = "inserted";
+
+    // METHOD_COMPACT_HISTORY folds at most EXTRA_BATCH_SIZE whole weeks of weather rows dated
+    // before EXTRA_CUTOFF into the rollup table and returns how many it did in EXTRA_COMPACTED.
+    // Callers repeat it until it returns less than a full batch.
+    public static final String METHOD_COMPACT_HISTORY = "compact_history";
+    public static final String EXTRA_CUTOFF = "cutoff";
+    public static final String EXTRA_BATCH_SIZE = "batch_size";
+    public static final String EXTRA_COMPACTED = "compacted";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the the Julian day.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        // normalize the start date to the beginning of the day
+        return DateEngine.normalizeDate(startDate);
     }
 
     /*
@@ -58,21 +87,87 @@ public class WeatherContract {
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOCATION;
 
 
-        public static final String TABLE_NAME = "location";
+        public static final String TABLE_NAME = WeatherSchema.LocationTable.TABLE_NAME;
 
         // The location setting string is what will be sent to openweathermap as the location query
-        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+        public static final String COLUMN_LOCATION_SETTING = WeatherSchema.LocationTable.COLUMN_LOCATION_SETTING;
 
         // Name string more readable tha the zip code
-        public static final String COLUMN_CITY_NAME = "city_name";
+        public static final String COLUMN_CITY_NAME = WeatherSchema.LocationTable.COLUMN_CITY_NAME;
 
         // pinpoint location on the map
-        public static final String COLUMN_COORD_LAT = "coord_lat";
-        public static final String COLUMN_COORD_LONG = "coord_long";
+        public static final String COLUMN_COORD_LAT = WeatherSchema.LocationTable.COLUMN_COORD_LAT;
+        public static final String COLUMN_COORD_LONG = WeatherSchema.LocationTable.COLUMN_COORD_LONG;
 
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        // Distance in km from the point of a nearest query.  Only in nearest query results.
+        public static final String COLUMN_DISTANCE = "distance";
+
+        public static final String PARAM_LAT = "lat";
+        public static final String PARAM_LONG = "lon";
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_SOUTH = "south";
+        public static final String PARAM_WEST = "west";
+        public static final String PARAM_NORTH = "north";
+        public static final String PARAM_EAST = "east";
+
+        /*
+            The limit stored locations closest to (lat, lon), closest first.
+         */
+        public static Uri buildNearestUri(double lat, double lon, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAREST)
+                    .appendQueryParameter(PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LONG, Double.toString(lon))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /*
+            The stored locations inside the box.  A box with west > east crosses the
+            antimeridian.
+         */
+        public static Uri buildBoundingBoxUri(double south, double west, double north,
+                                              double east) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_BOUNDING_BOX)
+                    .appendQueryParameter(PARAM_SOUTH, Double.toString(south))
+                    .appendQueryParameter(PARAM_WEST, Double.toString(west))
+                    .appendQueryParameter(PARAM_NORTH, Double.toString(north))
+                    .appendQueryParameter(PARAM_EAST, Double.toString(east)).build();
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the rollup table, which keeps one
+        summary row per location and week for forecasts older than the history preference.
+     */
+    public static final class RollupEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ROLLUP).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ROLLUP;
+
+        public static final String TABLE_NAME = WeatherSchema.RollupTable.TABLE_NAME;
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = WeatherSchema.RollupTable.COLUMN_LOC_KEY;
+        // First day of the week (Monday, UTC), stored as long in milliseconds since the epoch
+        public static final String COLUMN_WEEK_START = WeatherSchema.RollupTable.COLUMN_WEEK_START;
+
+        // Lowest min and highest max temperature of the week
+        public static final String COLUMN_MIN_TEMP = WeatherSchema.RollupTable.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherSchema.RollupTable.COLUMN_MAX_TEMP;
+        // Mean of the daily (min + max) / 2 temperatures
+        public static final String COLUMN_MEAN_TEMP = WeatherSchema.RollupTable.COLUMN_MEAN_TEMP;
+
+        // The weather id that occurred on most days of the week
+        public static final String COLUMN_WEATHER_ID = WeatherSchema.RollupTable.COLUMN_WEATHER_ID;
+
+        // Number of daily rows folded into this one
+        public static final String COLUMN_DAY_COUNT = WeatherSchema.RollupTable.COLUMN_DAY_COUNT;
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -86,34 +181,34 @@ public class WeatherContract {
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_WEATHER;
 
-        public static final String TABLE_NAME = "weather";
+        public static final String TABLE_NAME = WeatherSchema.WeatherTable.TABLE_NAME;
 
         // Column with the foreign key into the location table.
-        public static final String COLUMN_LOC_KEY = "location_id";
+        public static final String COLUMN_LOC_KEY = WeatherSchema.WeatherTable.COLUMN_LOC_KEY;
         // Date, stored as long in milliseconds since the epoch
-        public static final String COLUMN_DATE = "date";
+        public static final String COLUMN_DATE = WeatherSchema.WeatherTable.COLUMN_DATE;
         // Weather id as returned by API, to identify the icon to be used
-        public static final String COLUMN_WEATHER_ID = "weather_id";
+        public static final String COLUMN_WEATHER_ID = WeatherSchema.WeatherTable.COLUMN_WEATHER_ID;
 
         // Short description and long description of the weather, as provided by API.
         // e.g "clear" vs "sky is clear".
-        public static final String COLUMN_SHORT_DESC = "short_desc";
+        public static final String COLUMN_SHORT_DESC = WeatherSchema.WeatherTable.COLUMN_SHORT_DESC;
 
         // Min and max temperatures for the day (stored as floats)
-        public static final String COLUMN_MIN_TEMP = "min";
-        public static final String COLUMN_MAX_TEMP = "max";
+        public static final String COLUMN_MIN_TEMP = WeatherSchema.WeatherTable.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherSchema.WeatherTable.COLUMN_MAX_TEMP;
 
         // Humidity is stored as a float representing percentage
-        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_HUMIDITY = WeatherSchema.WeatherTable.COLUMN_HUMIDITY;
 
         // Humidity is stored as a float representing percentage
-        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_PRESSURE = WeatherSchema.WeatherTable.COLUMN_PRESSURE;
 
         // Windspeed is stored as a float representing windspeed  mph
-        public static final String COLUMN_WIND_SPEED = "wind";
+        public static final String COLUMN_WIND_SPEED = WeatherSchema.WeatherTable.COLUMN_WIND_SPEED;
 
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
-        public static final String COLUMN_DEGREES = "degrees";
+        public static final String COLUMN_DEGREES = WeatherSchema.WeatherTable.COLUMN_DEGREES;
 
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
@@ -133,11 +228,50 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        // Optional query parameter asking the provider to read the result this many rows at a
+        // time into primitive columns instead of a CursorWindow
+        public static final String PARAM_PAGE_SIZE = "page_size";
+
+        public static Uri buildWeatherLocationWithStartDate(
+                String locationSetting, long startDate, int pageSize) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_PAGE_SIZE, Integer.toString(pageSize)).build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        public static final Uri BATCH_CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_WEATHER_BATCH).build();
+
+        // Query parameters of batch uris.  PARAM_LOCATION is repeated once per location and
+        // the date range includes both ends.
+        public static final String PARAM_LOCATION = "location";
+        public static final String PARAM_START_DATE = "start";
+        public static final String PARAM_END_DATE = "end";
+
+        /*
+            The weather of every given location between two dates, ordered by location setting
+            then date unless the query asks for another order.
+         */
+        public static Uri buildWeatherBatchUri(List<String> locationSettings, long startDate,
+                                               long endDate) {
+            Uri.Builder builder = BATCH_CONTENT_URI.buildUpon();
+            for (String locationSetting : locationSettings) {
+                builder.appendQueryParameter(PARAM_LOCATION, locationSetting);
+            }
+            return builder
+                    .appendQueryParameter(PARAM_START_DATE, Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
+        public static Uri buildWeatherBatchUri(List<String> locationSettings, long date) {
+            return buildWeatherBatchUri(locationSettings, date, date);
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -146,6 +280,14 @@ public class WeatherContract {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        public static int getPageSizeFromUri(Uri uri) {
+            String pageSizeString = uri.getQueryParameter(PARAM_PAGE_SIZE);
+            if (null != pageSizeString && pageSizeString.length() > 0)
+                return Integer.parseInt(pageSizeString);
+            else
+                return 0;
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
@@ -154,4 +296,38 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        One row per saved location with its weather on one day, today unless the uri says
+        otherwise.  Locations without a forecast for that day have nulls in the weather columns.
+     */
+    public static final class TodaySummaryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_TODAY_SUMMARY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_TODAY_SUMMARY;
+
+        // _ID is the location row id.  The other columns are named as in the location and
+        // weather tables.
+        public static final String COLUMN_LOCATION_SETTING = LocationEntry.COLUMN_LOCATION_SETTING;
+        public static final String COLUMN_CITY_NAME = LocationEntry.COLUMN_CITY_NAME;
+        public static final String COLUMN_COORD_LAT = LocationEntry.COLUMN_COORD_LAT;
+        public static final String COLUMN_COORD_LONG = LocationEntry.COLUMN_COORD_LONG;
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        // Number of days stored for the location from the summary day on
+        public static final String COLUMN_FORECAST_DAYS = WeatherSchema.COLUMN_FORECAST_DAYS;
+
+        public static final String PARAM_DATE = "date";
+
+        public static Uri buildTodaySummaryUri(long date) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_DATE, Long.toString(normalizeDate(date))).build();
+        }
+    }
 }
@@ -16,80 +16,108 @@
 package com.example.android.sunshine.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
-import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.core.WeatherSchema;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
 /**
- * Manages a local database for weather data.
+ * Manages a local database for weather data.  The tables are described by
+ * {@link WeatherSchema}.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version and add
+    // the step from the previous one to onUpgrade.
+    //   3: the rollup table
+    //   4: the index of weather rows by location and date
+    //   5: the issued table
+    static final int DATABASE_VERSION = 5;
+    // The oldest version onUpgrade migrates, older databases are recreated
+    private static final int OLDEST_MIGRATED_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
-    public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
-    }
+    // WITHOUT ROWID tables need SQLite 3.8.2, which ships with Lollipop
+    static final boolean CLUSTERED_LAYOUT_SUPPORTED =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
 
-    @Override
-    public void onCreate(SQLiteDatabase sqLiteDatabase) {
-        final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
-                LocationEntry._ID + " INTEGER PRIMARY KEY," +
-                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
-                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL);";
+    // The layout new databases are created with.  Existing databases keep theirs.
+    private final boolean mCreateClustered;
+    private volatile boolean mClustered;
 
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-
-                // the ID of the location entry associated with this weather data
-                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
-                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+    public WeatherDbHelper(Context context) {
+        this(context, DATABASE_NAME,
+                BuildConfig.CLUSTERED_WEATHER_TABLE && CLUSTERED_LAYOUT_SUPPORTED);
+    }
 
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+    WeatherDbHelper(Context context, String name, boolean clustered) {
+        super(context, name, null, DATABASE_VERSION);
+        mCreateClustered = clustered;
+        mClustered = clustered;
+    }
 
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+    /**
+     * @return true if the open database stores weather rows in the clustered layout: a
+     * WITHOUT ROWID table whose primary key is (location_id, date), so the rows of a location
+     * sit next to each other in date order.  Its _id column is filled in by the provider.
+     */
+    public boolean isClustered() {
+        return mClustered;
+    }
 
-                // Set up the location column as a foreign key to location table.
-                " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
-                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        mClustered = hasClusteredLayout(db);
+    }
 
-                // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+    private static boolean hasClusteredLayout(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{WeatherEntry.TABLE_NAME});
+        try {
+            return cursor.moveToFirst()
+                    && cursor.getString(0).toUpperCase().contains("WITHOUT ROWID");
+        } finally {
+            cursor.close();
+        }
+    }
 
-        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
-        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+    @Override
+    public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        for (String sql : WeatherSchema.getCreateStatements(mCreateClustered)) {
+            sqLiteDatabase.execSQL(sql);
+        }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
+        // The forecast could be fetched again, but the history and its weekly rollups can't,
+        // so every version since the first is migrated in place.  Each step only adds tables
+        // or indexes, the rows already stored stay as they are.
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATED_VERSION) {
+            for (String table : WeatherSchema.getTableNames()) {
+                sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + table);
+            }
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        if (oldVersion < 3) {
+            sqLiteDatabase.execSQL(WeatherSchema.CREATE_ROLLUP_TABLE);
+        }
+        if (oldVersion < 4 && !hasClusteredLayout(sqLiteDatabase)) {
+            // The primary key of the clustered layout is this index already
+            sqLiteDatabase.execSQL(WeatherSchema.CREATE_WEATHER_LOCATION_INDEX);
+        }
+        if (oldVersion < 5) {
+            // Locations without a row count as never issued, the next sync writes it
+            sqLiteDatabase.execSQL(WeatherSchema.CREATE_ISSUED_TABLE);
+        }
     }
 }
@@ -21,91 +21,50 @@ import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import com.example.android.sunshine.core.WeatherSchema;
+
+import java.util.List;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
+    private WeatherStore mStore;
     private WeatherDbHelper mOpenHelper;
+    private final LocationIdCache mLocationIds = LocationIdCache.getInstance();
+    private final LocationSpatialIndex mSpatialIndex = LocationSpatialIndex.getInstance();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_BATCH = 103;
     static final int LOCATION = 300;
-
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
-
-    static{
-        sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
-        
-        //This is an inner join which looks like
-        //weather INNER JOIN location ON weather.location_id = location._id
-        sWeatherByLocationSettingQueryBuilder.setTables(
-                WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
-                        WeatherContract.LocationEntry.TABLE_NAME +
-                        " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
-                        "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
-                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
-                        "." + WeatherContract.LocationEntry._ID);
-    }
-
-    //location.location_setting = ?
-    private static final String sLocationSettingSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
-
-    //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
-
-    //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
-            WeatherContract.LocationEntry.TABLE_NAME +
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+    static final int LOCATION_NEAREST = 301;
+    static final int LOCATION_BOUNDING_BOX = 302;
+    static final int ROLLUP = 400;
+    static final int TODAY_SUMMARY = 500;
 
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
-        String[] selectionArgs;
-        String selection;
-
-        if (startDate == 0) {
-            selection = sLocationSettingSelection;
-            selectionArgs = new String[]{locationSetting};
-        } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
+        int pageSize = WeatherContract.WeatherEntry.getPageSizeFromUri(uri);
+        if (pageSize > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return new PagedWeatherCursor(mOpenHelper.getReadableDatabase(),
+                    mStore.buildWeatherQuery(startDate, projection, sortOrder),
+                    WeatherStore.getLocationSettingArgs(locationSetting, startDate), pageSize);
         }
-
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                sortOrder
-        );
+        return mStore.queryWeather(locationSetting, startDate, projection, sortOrder);
     }
 
-    private Cursor getWeatherByLocationSettingAndDate(
-            Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
-
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+    private Cursor getWeatherByLocationSettingAndDate(Uri uri, String[] projection) {
+        return mStore.queryWeatherOnDate(WeatherContract.WeatherEntry.getLocationSettingFromUri(uri),
+                WeatherContract.WeatherEntry.getDateFromUri(uri), projection);
     }
 
     /*
@@ -128,6 +87,15 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_NEAREST, LOCATION_NEAREST);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_BOUNDING_BOX, LOCATION_BOUNDING_BOX);
+
+        matcher.addURI(authority, WeatherContract.PATH_ROLLUP, ROLLUP);
+
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER_BATCH, WEATHER_BATCH);
+        matcher.addURI(authority, WeatherContract.PATH_TODAY_SUMMARY, TODAY_SUMMARY);
         return matcher;
     }
 
@@ -137,7 +105,9 @@ public class WeatherProvider extends ContentProvider {
      */
     @Override
     public boolean onCreate() {
-        mOpenHelper = new WeatherDbHelper(getContext());
+        // The store is shared with in-process callers that skip the ContentResolver
+        mStore = WeatherStore.getInstance(getContext());
+        mOpenHelper = mStore.getOpenHelper();
         return true;
     }
 
@@ -159,9 +129,16 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER_WITH_LOCATION:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
+            case WEATHER_BATCH:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
+            case LOCATION_NEAREST:
+            case LOCATION_BOUNDING_BOX:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case ROLLUP:
+                return WeatherContract.RollupEntry.CONTENT_TYPE;
+            case TODAY_SUMMARY:
+                return WeatherContract.TodaySummaryEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -173,11 +150,13 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
+        // Rows of the cross-location queries change with writes to any of the other uris
+        Uri notificationUri = uri;
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                retCursor = getWeatherByLocationSettingAndDate(uri, projection);
                 break;
             }
             // "weather/*"
@@ -211,11 +190,66 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/nearest"
+            case LOCATION_NEAREST: {
+                retCursor = mSpatialIndex.queryNearest(mOpenHelper.getReadableDatabase(),
+                        projection,
+                        getDoubleParameter(uri, WeatherContract.LocationEntry.PARAM_LAT),
+                        getDoubleParameter(uri, WeatherContract.LocationEntry.PARAM_LONG),
+                        (int) getDoubleParameter(uri, WeatherContract.LocationEntry.PARAM_LIMIT));
+                break;
+            }
+            // "location/bbox"
+            case LOCATION_BOUNDING_BOX: {
+                retCursor = mSpatialIndex.queryBoundingBox(mOpenHelper.getReadableDatabase(),
+                        projection,
+                        getDoubleParameter(uri, WeatherContract.LocationEntry.PARAM_SOUTH),
+                        getDoubleParameter(uri, WeatherContract.LocationEntry.PARAM_WEST),
+                        getDoubleParameter(uri, WeatherContract.LocationEntry.PARAM_NORTH),
+                        getDoubleParameter(uri, WeatherContract.LocationEntry.PARAM_EAST));
+                break;
+            }
+            // "rollup"
+            case ROLLUP: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.RollupEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+
+            // "weather_batch"
+            case WEATHER_BATCH: {
+                List<String> locationSettings = uri.getQueryParameters(
+                        WeatherContract.WeatherEntry.PARAM_LOCATION);
+                retCursor = mStore.queryWeatherBatch(
+                        locationSettings.toArray(new String[locationSettings.size()]),
+                        getLongParameter(uri, WeatherContract.WeatherEntry.PARAM_START_DATE),
+                        getLongParameter(uri, WeatherContract.WeatherEntry.PARAM_END_DATE),
+                        projection,
+                        sortOrder);
+                notificationUri = WeatherContract.BASE_CONTENT_URI;
+                break;
+            }
+            // "today_summary"
+            case TODAY_SUMMARY: {
+                long date = null == uri.getQueryParameter(WeatherContract.TodaySummaryEntry.PARAM_DATE)
+                        ? System.currentTimeMillis()
+                        : getLongParameter(uri, WeatherContract.TodaySummaryEntry.PARAM_DATE);
+                retCursor = mStore.queryTodaySummary(date, projection, sortOrder);
+                notificationUri = WeatherContract.BASE_CONTENT_URI;
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        retCursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return retCursor;
     }
 
@@ -230,8 +264,7 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id = mStore.insertWeather(db, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -239,17 +272,28 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
+                // Insert-or-ignore, so two syncs racing on the same location setting both get
+                // the id of the single row instead of one of them failing
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                long _id = db.insertWithOnConflict(WeatherContract.LocationEntry.TABLE_NAME,
+                        null, values, SQLiteDatabase.CONFLICT_IGNORE);
+                if ( _id > 0 ) {
+                    mLocationIds.put(locationSetting, _id);
+                    mSpatialIndex.invalidate();
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
-                else
+                } else {
+                    _id = mStore.queryLocationId(db, locationSetting);
+                    if ( _id > 0 )
+                        return WeatherContract.LocationEntry.buildLocationUri(_id);
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                }
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        mStore.notifyChange(uri);
         return returnUri;
     }
 
@@ -267,25 +311,28 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    // A location added later may get a deleted one's id
+                    db.delete(WeatherSchema.IssuedTable.TABLE_NAME,
+                            WeatherSchema.ORPHAN_ISSUED_SELECTION, null);
+                    mLocationIds.invalidate();
+                    mSpatialIndex.invalidate();
+                }
+                break;
+            case ROLLUP:
+                rowsDeleted = db.delete(
+                        WeatherContract.RollupEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mStore.notifyChange(uri);
         }
         return rowsDeleted;
     }
 
-    private void normalizeDate(ContentValues values) {
-        // normalize the date value
-        if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
-            long dateValue = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(dateValue));
-        }
-    }
-
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -295,19 +342,21 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                rowsUpdated = mStore.updateWeather(db, values, selection, selectionArgs);
                 break;
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    mLocationIds.invalidate();
+                    mSpatialIndex.invalidate();
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mStore.notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -322,8 +371,7 @@ public class WeatherProvider extends ContentProvider {
                 int returnCount = 0;
                 try {
                     for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = mStore.insertWeather(db, value);
                         if (_id != -1) {
                             returnCount++;
                         }
@@ -332,13 +380,80 @@ public class WeatherProvider extends ContentProvider {
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                mStore.notifyChange(uri);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_COMMIT_SYNC.equals(method)) {
+            return commitSync(extras);
+        } else if (WeatherContract.METHOD_COMPACT_HISTORY.equals(method)) {
+            return compactHistory(extras);
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private Bundle commitSync(Bundle extras) {
+        ContentValues locationValues = extras.getParcelable(WeatherContract.EXTRA_LOCATION);
+        Parcelable[] parcelables = extras.getParcelableArray(WeatherContract.EXTRA_WEATHER);
+        if (null == locationValues) {
+            throw new IllegalArgumentException("Missing " + WeatherContract.EXTRA_LOCATION);
+        }
+        ContentValues[] weatherValues = null;
+        if (null != parcelables) {
+            weatherValues = new ContentValues[parcelables.length];
+            for (int i = 0; i < parcelables.length; i++) {
+                weatherValues[i] = (ContentValues) parcelables[i];
+            }
+        }
+        WeatherStore.CommitResult commit = mStore.commitSync(locationValues, weatherValues,
+                extras.getLong(WeatherContract.EXTRA_PRUNE_BEFORE, 0));
+
+        Bundle result = new Bundle();
+        result.putLong(WeatherContract.EXTRA_LOCATION_ID, commit.locationId);
+        result.putInt(WeatherContract.EXTRA_INSERTED, commit.inserted);
+        return result;
+    }
+
+    private Bundle compactHistory(Bundle extras) {
+        int compacted = mStore.compactHistory(extras.getLong(WeatherContract.EXTRA_CUTOFF),
+                extras.getInt(WeatherContract.EXTRA_BATCH_SIZE,
+                        WeatherStore.DEFAULT_COMPACT_BATCH_SIZE));
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_COMPACTED, compacted);
+        return result;
+    }
+
+    private static long getLongParameter(Uri uri, String name) {
+        String value = uri.getQueryParameter(name);
+        if (null == value) {
+            throw new IllegalArgumentException("Missing " + name + " in " + uri);
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " in " + uri);
+        }
+    }
+
+    private static double getDoubleParameter(Uri uri, String name) {
+        String value = uri.getQueryParameter(name);
+        if (null == value) {
+            throw new IllegalArgumentException("Missing " + name + " in " + uri);
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " in " + uri);
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,511 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+
+import com.example.android.sunshine.core.WeatherSchema;
+
+import java.util.Map;
+
+/**
+ * Typed access to the weather database for code running in the app's own process.
+ * <p>
+ * {@link WeatherProvider} is not exported, so the only thing a query through the
+ * ContentResolver buys an in-process caller is the cost of building a Uri, matching it and
+ * parsing it back into the arguments it started from.  The store takes those arguments
+ * directly.  The provider is a thin layer over the same methods, so both paths read and write
+ * the same way and notify the same observers.
+ * <p>
+ * Cursors returned here have no notification uri; callers that need to follow changes use
+ * {@link ForecastStream} or go through the provider.
+ */
+public class WeatherStore {
+
+    // Number of whole weeks compactHistory folds per transaction when the caller doesn't say
+    public static final int DEFAULT_COMPACT_BATCH_SIZE = 8;
+
+    //weather INNER JOIN location ON weather.location_id = location._id
+    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+
+    static{
+        sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sWeatherByLocationSettingQueryBuilder.setTables(WeatherSchema.WEATHER_JOIN_LOCATION);
+    }
+
+    // SQLite refuses statements with more than 999 arguments
+    static final int MAX_BATCH_LOCATIONS = 900;
+
+    private static WeatherStore sInstance;
+
+    private final Context mContext;
+    private final WeatherDbHelper mOpenHelper;
+    private final LocationIdCache mLocationIds = LocationIdCache.getInstance();
+    private final LocationSpatialIndex mSpatialIndex = LocationSpatialIndex.getInstance();
+
+    /**
+     * The result of {@link #commitSync}.
+     */
+    public static final class CommitResult {
+        public final long locationId;
+        public final int inserted;
+
+        CommitResult(long locationId, int inserted) {
+            this.locationId = locationId;
+            this.inserted = inserted;
+        }
+    }
+
+    public static synchronized WeatherStore getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WeatherStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherStore(Context context) {
+        mContext = context;
+        mOpenHelper = new WeatherDbHelper(context);
+    }
+
+    WeatherDbHelper getOpenHelper() {
+        return mOpenHelper;
+    }
+
+    /**
+     * The weather of a location joined with its location row, like
+     * {@link WeatherContract.WeatherEntry#buildWeatherLocationWithStartDate}.
+     *
+     * @param startDate the first normalized date to return, or 0 for every row
+     */
+    public Cursor queryWeather(String locationSetting, long startDate, String[] projection,
+                               String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                getLocationSettingSelection(startDate),
+                getLocationSettingArgs(locationSetting, startDate),
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    /**
+     * The weather of a location on one day, like
+     * {@link WeatherContract.WeatherEntry#buildWeatherLocationWithDate}.
+     */
+    public Cursor queryWeatherOnDate(String locationSetting, long date, String[] projection) {
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                WeatherSchema.LOCATION_SETTING_AND_DAY_SELECTION,
+                new String[]{locationSetting, Long.toString(WeatherContract.normalizeDate(date))},
+                null,
+                null,
+                null
+        );
+    }
+
+    /**
+     * The weather of several locations between two dates, both included, in one query.  Rows
+     * come grouped by location setting and by date within a location unless sortOrder says
+     * otherwise.
+     */
+    public Cursor queryWeatherBatch(String[] locationSettings, long startDate, long endDate,
+                                    String[] projection, String sortOrder) {
+        if (locationSettings.length == 0 || locationSettings.length > MAX_BATCH_LOCATIONS) {
+            throw new IllegalArgumentException("A batch takes 1 to " + MAX_BATCH_LOCATIONS
+                    + " locations, not " + locationSettings.length);
+        }
+        String[] args = new String[locationSettings.length + 2];
+        System.arraycopy(locationSettings, 0, args, 0, locationSettings.length);
+        args[locationSettings.length] = Long.toString(WeatherContract.normalizeDate(startDate));
+        args[locationSettings.length + 1] = Long.toString(WeatherContract.normalizeDate(endDate));
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                WeatherSchema.buildBatchSelection(locationSettings.length),
+                args,
+                null,
+                null,
+                null == sortOrder ? WeatherSchema.BATCH_SORT_ORDER : sortOrder
+        );
+    }
+
+    /**
+     * One row per saved location with its weather on date, see
+     * {@link WeatherContract.TodaySummaryEntry}.  Ordered by city name unless sortOrder says
+     * otherwise.
+     */
+    public Cursor queryTodaySummary(long date, String[] projection, String sortOrder) {
+        String day = Long.toString(WeatherContract.normalizeDate(date));
+        String sql = SQLiteQueryBuilder.buildQueryString(false, WeatherSchema.TODAY_SUMMARY_TABLE, projection,
+                null, null, null,
+                null == sortOrder ? WeatherContract.TodaySummaryEntry.COLUMN_CITY_NAME + " ASC"
+                        : sortOrder,
+                null);
+        return mOpenHelper.getReadableDatabase().rawQuery(sql, new String[]{day, day});
+    }
+
+    /*
+        The SQL of queryWeather, for the provider's paged cursors.
+     */
+    String buildWeatherQuery(long startDate, String[] projection, String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.buildQuery(
+                projection, getLocationSettingSelection(startDate), null, null, sortOrder, null);
+    }
+
+    private static String getLocationSettingSelection(long startDate) {
+        return startDate == 0 ? WeatherSchema.LOCATION_SETTING_SELECTION
+                : WeatherSchema.LOCATION_SETTING_WITH_START_DATE_SELECTION;
+    }
+
+    static String[] getLocationSettingArgs(String locationSetting, long startDate) {
+        return startDate == 0
+                ? new String[]{locationSetting}
+                : new String[]{locationSetting, Long.toString(startDate)};
+    }
+
+    /**
+     * Writes the result of a sync as one unit: the location is inserted or refreshed, the
+     * forecast rows are written against its id and stale rows are pruned, all inside one
+     * transaction.  Observers get a single notification once everything is committed instead
+     * of one per step.
+     *
+     * @param locationValues the location row
+     * @param weatherValues  the forecast rows, their location key is filled in here
+     * @param pruneBefore    rows dated on or before this normalized date are deleted, 0 keeps
+     *                       them all
+     * @param issued         the server's time when it sent the forecast, in milliseconds since
+     *                       the epoch, or 0 if it didn't say.  Deltas are issued by the server
+     *                       clock too, so comparing them with the device clock would let its
+     *                       skew decide which forecast is newer.
+     */
+    public CommitResult commitSync(ContentValues locationValues, ContentValues[] weatherValues,
+                                   long pruneBefore, long issued) {
+        // Whatever was issued before the sync is in what it fetched.  Without the server's
+        // time the device clock is the best guess.
+        return commit(locationValues, weatherValues, pruneBefore,
+                issued > 0 ? issued : System.currentTimeMillis(), false);
+    }
+
+    /**
+     * {@link #commitSync(ContentValues, ContentValues[], long, long)} of a forecast whose
+     * server time is unknown.
+     */
+    public CommitResult commitSync(ContentValues locationValues, ContentValues[] weatherValues,
+                                   long pruneBefore) {
+        return commitSync(locationValues, weatherValues, pruneBefore, 0);
+    }
+
+    /**
+     * Writes a pushed forecast delta like {@link #commitSync}, without pruning, but only if
+     * the location is stored and what is stored for it was issued before the delta.  The check
+     * and the write are one transaction, and the issue time is kept with the weather, so a
+     * delta arriving late is dropped in any process.
+     *
+     * @param issued when the delta was issued, in milliseconds since the epoch
+     * @return the result, or null if the location isn't stored or has a newer forecast.
+     */
+    public CommitResult commitDelta(ContentValues locationValues, ContentValues[] weatherValues,
+                                    long issued) {
+        return commit(locationValues, weatherValues, 0, issued, true);
+    }
+
+    private CommitResult commit(ContentValues locationValues, ContentValues[] weatherValues,
+                                long pruneBefore, long issued, boolean onlyNewer) {
+        String locationSetting = locationValues.getAsString(
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        long locationId;
+        int returnCount = 0;
+        db.beginTransaction();
+        try {
+            if (onlyNewer) {
+                locationId = queryLocationId(db, locationSetting);
+                if (locationId == LocationIdCache.UNKNOWN_ID
+                        || queryIssued(db, locationId) >= issued) {
+                    return null;
+                }
+                updateLocation(db, locationId, locationValues);
+            } else {
+                locationId = resolveLocationId(db, locationSetting, locationValues);
+            }
+            if (null != weatherValues) {
+                for (ContentValues value : weatherValues) {
+                    value.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                    long _id = insertWeather(db, value);
+                    if (_id != -1) {
+                        returnCount++;
+                    }
+                }
+            }
+            if (pruneBefore > 0) {
+                // delete old data so we don't build up an endless history
+                db.delete(WeatherContract.WeatherEntry.TABLE_NAME, WeatherSchema.PRUNE_SELECTION,
+                        new String[]{Long.toString(pruneBefore)});
+            }
+            ContentValues issuedValues = new ContentValues();
+            issuedValues.put(WeatherSchema.IssuedTable.COLUMN_LOC_KEY, locationId);
+            issuedValues.put(WeatherSchema.IssuedTable.COLUMN_ISSUED, issued);
+            db.insertWithOnConflict(WeatherSchema.IssuedTable.TABLE_NAME, null, issuedValues,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        // only cache the id once the row that holds it has been committed
+        mLocationIds.put(locationSetting, locationId);
+        notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+        return new CommitResult(locationId, returnCount);
+    }
+
+    /**
+     * Folds up to batchSize whole weeks older than the cutoff into one rollup row each and
+     * deletes the daily rows they came from.  Each call is its own short transaction, so the
+     * write lock is released between batches and readers are never held up for long.
+     *
+     * @return the number of weeks folded
+     */
+    public int compactHistory(long cutoff, int batchSize) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int compacted = 0;
+        db.beginTransaction();
+        try {
+            Cursor weeks = db.rawQuery(WeatherSchema.COMPACT_WEEKS_QUERY, new String[]{
+                    Long.toString(cutoff), Long.toString(cutoff), Integer.toString(batchSize)});
+            try {
+                while (weeks.moveToNext()) {
+                    long locationId = weeks.getLong(0);
+                    long weekStart = weeks.getLong(1);
+                    String[] weekArgs = new String[]{Long.toString(locationId),
+                            Long.toString(weekStart),
+                            Long.toString(weekStart + WeatherSchema.WEEK_IN_MILLIS)};
+
+                    ContentValues rollupValues = new ContentValues();
+                    rollupValues.put(WeatherContract.RollupEntry.COLUMN_LOC_KEY, locationId);
+                    rollupValues.put(WeatherContract.RollupEntry.COLUMN_WEEK_START, weekStart);
+                    rollupValues.put(WeatherContract.RollupEntry.COLUMN_MIN_TEMP, weeks.getDouble(2));
+                    rollupValues.put(WeatherContract.RollupEntry.COLUMN_MAX_TEMP, weeks.getDouble(3));
+                    rollupValues.put(WeatherContract.RollupEntry.COLUMN_MEAN_TEMP, weeks.getDouble(4));
+                    rollupValues.put(WeatherContract.RollupEntry.COLUMN_DAY_COUNT, weeks.getInt(5));
+                    rollupValues.put(WeatherContract.RollupEntry.COLUMN_WEATHER_ID,
+                            queryDominantWeatherId(db, weekArgs));
+                    db.insert(WeatherContract.RollupEntry.TABLE_NAME, null, rollupValues);
+
+                    db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                            WeatherSchema.LOCATION_AND_DATE_RANGE_SELECTION, weekArgs);
+                    compacted++;
+                }
+            } finally {
+                weeks.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (compacted > 0) {
+            notifyChange(WeatherContract.RollupEntry.CONTENT_URI);
+        }
+        return compacted;
+    }
+
+    private int queryDominantWeatherId(SQLiteDatabase db, String[] weekArgs) {
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_WEATHER_ID},
+                WeatherSchema.LOCATION_AND_DATE_RANGE_SELECTION,
+                weekArgs,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                null,
+                "COUNT(*) DESC",
+                "1");
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Returns the id of the location row for locationSetting, inserting it from values if it
+        doesn't exist yet and refreshing its name and coordinates if it does.  Known settings
+        are answered from the in-process cache.
+     */
+    private long resolveLocationId(SQLiteDatabase db, String locationSetting,
+                                   ContentValues values) {
+        if (!mLocationIds.isWarm()) {
+            mLocationIds.warm(db);
+        }
+        long _id = mLocationIds.get(locationSetting);
+        if (_id != LocationIdCache.UNKNOWN_ID) {
+            updateLocation(db, _id, values);
+            return _id;
+        }
+        _id = db.insertWithOnConflict(WeatherContract.LocationEntry.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE);
+        if (_id > 0) {
+            mSpatialIndex.invalidate();
+        } else {
+            _id = queryLocationId(db, locationSetting);
+            if (_id > 0) {
+                updateLocation(db, _id, values);
+            }
+        }
+        if (_id <= 0) {
+            throw new android.database.SQLException("Failed to insert location " + locationSetting);
+        }
+        return _id;
+    }
+
+    /*
+        Writes the name and coordinates of an existing location, only when one of them
+        changed, so a sync of an unchanged location costs no page write.
+     */
+    private void updateLocation(SQLiteDatabase db, long _id, ContentValues values) {
+        ContentValues changed = new ContentValues(values);
+        changed.remove(WeatherContract.LocationEntry._ID);
+        changed.remove(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        if (changed.size() == 0) {
+            return;
+        }
+        // Bound parameters take the column's affinity, so the values compare as stored
+        String[] columns = new String[changed.size()];
+        String[] selectionArgs = new String[changed.size() + 1];
+        selectionArgs[0] = Long.toString(_id);
+        int i = 0;
+        for (Map.Entry<String, Object> value : changed.valueSet()) {
+            columns[i] = value.getKey();
+            selectionArgs[++i] = String.valueOf(value.getValue());
+        }
+        if (db.update(WeatherContract.LocationEntry.TABLE_NAME, changed,
+                WeatherSchema.buildLocationChangedSelection(columns), selectionArgs) > 0) {
+            mSpatialIndex.invalidate();
+        }
+    }
+
+    long queryLocationId(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherSchema.LOCATION_ID_SELECTION,
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : LocationIdCache.UNKNOWN_ID;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        When the forecast stored for a location was issued, 0 if that isn't known.
+     */
+    private static long queryIssued(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherSchema.IssuedTable.TABLE_NAME,
+                new String[]{WeatherSchema.IssuedTable.COLUMN_ISSUED},
+                WeatherSchema.ISSUED_SELECTION,
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Inserts one weather row and returns its _id, or -1 on failure.  The clustered layout has
+        no rowid to hand out, so its _id is derived from the row's primary key instead.
+     */
+    long insertWeather(SQLiteDatabase db, ContentValues values) {
+        normalizeDate(values);
+        if (!mOpenHelper.isClustered()) {
+            return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+        }
+        long _id = WeatherSchema.clusteredWeatherId(
+                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+        values.put(WeatherContract.WeatherEntry._ID, _id);
+        return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values) == -1 ? -1 : _id;
+    }
+
+    /*
+        Updates weather rows.  In the clustered layout _id is derived from location_id and
+        date, so it can't be set, and a row whose key columns change gets its _id derived
+        again in the same transaction.
+     */
+    int updateWeather(SQLiteDatabase db, ContentValues values, String selection,
+                      String[] selectionArgs) {
+        normalizeDate(values);
+        if (!mOpenHelper.isClustered()) {
+            return db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
+                    selectionArgs);
+        }
+        if (values.containsKey(WeatherContract.WeatherEntry._ID)) {
+            throw new IllegalArgumentException("The _id of a clustered weather row is derived");
+        }
+        if (!values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                && !values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
+            return db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
+                    selectionArgs);
+        }
+        int rowsUpdated;
+        db.beginTransaction();
+        try {
+            rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
+                    selectionArgs);
+            if (rowsUpdated > 0) {
+                rederiveClusteredIds(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return rowsUpdated;
+    }
+
+    /*
+        Sets the _id of every clustered weather row whose key columns moved since it was
+        derived.  The selection of the update may no longer match the moved rows, so this
+        looks at all of them.
+     */
+    static void rederiveClusteredIds(SQLiteDatabase db) {
+        db.execSQL(WeatherSchema.REDERIVE_CLUSTERED_IDS);
+    }
+
+    // Every write ends up here, which makes it the place to drop cached cursor pages and the
+    // shared forecast as well
+    void notifyChange(Uri uri) {
+        PagedWeatherCursor.invalidatePages();
+        ForecastRepository.getInstance().invalidate();
+        mContext.getContentResolver().notifyChange(uri, null);
+    }
+
+    void normalizeDate(ContentValues values) {
+        // normalize the date value
+        if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
+            long dateValue = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(dateValue));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Remembers the address of every host the sync talks to for a while, so syncs a few minutes
+ * apart don't each wait for a lookup.  The platform's own cache only keeps answers for a few
+ * seconds on older releases.
+ * <p>
+ * The platform resolver can't be interrupted and may block for far longer than a request is
+ * allowed to take, so lookups run on threads of their own and callers only wait as long as
+ * they can afford.  A lookup that outlives its caller still fills the cache, and callers
+ * asking for a host that is being looked up wait for that lookup instead of starting another.
+ */
+class DnsCache {
+
+    static final long DEFAULT_TTL_MS = 5 * 60 * 1000;
+
+    private static final class Entry {
+        final InetAddress mAddress;
+        final long mExpires;
+
+        Entry(InetAddress address, long expires) {
+            mAddress = address;
+            mExpires = expires;
+        }
+    }
+
+    private static final ExecutorService sResolver = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "dns-lookup");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final long mTtl;
+    // Both guarded by mEntries
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    private final HashMap<String, Future<InetAddress>> mPending = new HashMap<>();
+
+    DnsCache(long ttl) {
+        mTtl = ttl;
+    }
+
+    /**
+     * @param timeoutMs how long to wait for an address that isn't cached.
+     * @return an address of host, from the cache unless the one there has expired.
+     * @throws SocketTimeoutException if the lookup takes longer than timeoutMs.
+     */
+    InetAddress lookup(final String host, long timeoutMs) throws IOException {
+        long now = SystemClock.elapsedRealtime();
+        Future<InetAddress> pending;
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(host);
+            if (null != entry && entry.mExpires > now) {
+                return entry.mAddress;
+            }
+            pending = mPending.get(host);
+            if (null == pending) {
+                pending = sResolver.submit(new Callable<InetAddress>() {
+                    @Override
+                    public InetAddress call() throws UnknownHostException {
+                        try {
+                            InetAddress address = resolve(host);
+                            synchronized (mEntries) {
+                                mEntries.put(host, new Entry(address,
+                                        SystemClock.elapsedRealtime() + mTtl));
+                            }
+                            return address;
+                        } finally {
+                            synchronized (mEntries) {
+                                mPending.remove(host);
+                            }
+                        }
+                    }
+                });
+                mPending.put(host, pending);
+            }
+        }
+        try {
+            return pending.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("No address for " + host + " after "
+                    + timeoutMs + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted looking up " + host);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to look up " + host, e.getCause());
+        }
+    }
+
+    /*
+        Asks the platform, blocking.  Tests replace it to simulate a slow resolver.
+     */
+    InetAddress resolve(String host) throws UnknownHostException {
+        return InetAddress.getByName(host);
+    }
+
+    /**
+     * Forgets host, after its cached address stopped answering.
+     */
+    void evict(String host) {
+        synchronized (mEntries) {
+            mEntries.remove(host);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.os.Bundle;
+import android.util.Base64;
+
+import com.example.android.sunshine.core.CityForecast;
+import com.example.android.sunshine.core.CompactForecastSource;
+import com.example.android.sunshine.core.ForecastBatch;
+import com.example.android.sunshine.core.ForecastParseException;
+
+/**
+ * A few days of forecast for one location, pushed by the server when they changed.  The data
+ * of the GCM message, all strings:
+ * <ul>
+ * <li>type: forecast_delta</li>
+ * <li>location: the location setting the forecast is for</li>
+ * <li>start_day: the julian day of the first day</li>
+ * <li>issued: when the server made the forecast, in milliseconds since the epoch.  Deltas
+ * older than the last one applied to the location are dropped.</li>
+ * <li>forecast: the days in the format of {@link CompactForecastSource}, URL-safe base64</li>
+ * </ul>
+ */
+final class ForecastDelta {
+
+    static final String EXTRA_TYPE = "type";
+    static final String TYPE_FORECAST_DELTA = "forecast_delta";
+    static final String EXTRA_LOCATION = "location";
+    static final String EXTRA_START_DAY = "start_day";
+    static final String EXTRA_ISSUED = "issued";
+    static final String EXTRA_FORECAST = "forecast";
+
+    // The sync asks for 14 days, a delta may run a little past that
+    static final int MAX_DAYS = 16;
+    // GCM won't deliver a larger message anyway
+    static final int MAX_FORECAST_CHARS = 4096;
+
+    private static final CompactForecastSource sSource = new CompactForecastSource();
+
+    final String locationSetting;
+    final int startDay;
+    final long issued;
+    final ForecastBatch forecast;
+
+    private ForecastDelta(String locationSetting, int startDay, long issued,
+                          ForecastBatch forecast) {
+        this.locationSetting = locationSetting;
+        this.startDay = startDay;
+        this.issued = issued;
+        this.forecast = forecast;
+    }
+
+    /**
+     * Reads and checks the delta in the data of a message.
+     *
+     * @param today the current julian day, deltas have to be about today or the days after
+     * @throws ForecastParseException if anything in the message is missing, malformed or
+     *                                implausible.
+     */
+    static ForecastDelta parse(Bundle extras, int today) throws ForecastParseException {
+        String locationSetting = extras.getString(EXTRA_LOCATION);
+        if (null == locationSetting || locationSetting.isEmpty()) {
+            throw new ForecastParseException("No location");
+        }
+        int startDay = (int) parseLong(extras, EXTRA_START_DAY);
+        long issued = parseLong(extras, EXTRA_ISSUED);
+        if (issued <= 0) {
+            throw new ForecastParseException("Bad issue time " + issued);
+        }
+        // Yesterday still, for a message that crossed midnight
+        if (startDay < today - 1 || startDay >= today + MAX_DAYS) {
+            throw new ForecastParseException("Start day " + startDay + " isn't near " + today);
+        }
+
+        String encoded = extras.getString(EXTRA_FORECAST);
+        if (null == encoded || encoded.length() > MAX_FORECAST_CHARS) {
+            throw new ForecastParseException("No forecast or one that is too long");
+        }
+        byte[] body;
+        try {
+            body = Base64.decode(encoded, Base64.URL_SAFE);
+        } catch (IllegalArgumentException e) {
+            throw new ForecastParseException("Forecast isn't base64", e);
+        }
+        ForecastBatch forecast = sSource.decode(body, startDay);
+        if (forecast.status != CityForecast.STATUS_OK) {
+            throw new ForecastParseException("A delta can't be an error");
+        }
+        if (forecast.size == 0 || startDay + forecast.size > today + MAX_DAYS) {
+            throw new ForecastParseException(forecast.size + " days from " + startDay);
+        }
+        for (int i = 0; i < forecast.size; i++) {
+            if (forecast.lows[i] > forecast.highs[i] || forecast.humidities[i] > 100
+                    || forecast.windDirections[i] > 360) {
+                throw new ForecastParseException("Implausible day " + i);
+            }
+        }
+        return new ForecastDelta(locationSetting, startDay, issued, forecast);
+    }
+
+    private static long parseLong(Bundle extras, String name) throws ForecastParseException {
+        try {
+            return Long.parseLong(extras.getString(name));
+        } catch (NumberFormatException e) {
+            throw new ForecastParseException("Bad " + name, e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.sunshine.ForecastSnapshot;
+import com.example.android.sunshine.Utility;
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.core.ForecastParseException;
+import com.example.android.sunshine.data.WeatherStore;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes pushed {@link ForecastDelta}s to the database, so the list, the detail view and the
+ * watch face show them without a sync.
+ * <p>
+ * Deltas are applied one at a time on a background thread, through the same provider write
+ * as a sync.  At most {@link #MAX_PENDING} wait behind it; a burst beyond that is dropped and
+ * left to the next sync.  Only locations already in the database are updated, a push can't
+ * add one.  The database keeps the issue time of what it stores for every location, written
+ * with the weather, so a delta older than the last sync or delta is dropped even after the
+ * process was restarted.
+ * <p>
+ * A delta is done, and its broadcast finished, once it is in the database and the snapshot.
+ * The watch face is updated after that on a thread of its own, once for a burst of deltas, as
+ * reaching the watch can take seconds.  If the process goes first, the next sync updates it.
+ */
+public final class ForecastDeltaApplier {
+
+    private static final String LOG_TAG = ForecastDeltaApplier.class.getSimpleName();
+
+    static final int MAX_PENDING = 8;
+
+    /*
+        A delta waiting for the executor.  onDone runs whether it was applied or not.
+     */
+    private static final class Task implements Runnable {
+        final Context mContext;
+        final Bundle mExtras;
+        final Runnable mOnDone;
+
+        Task(Context context, Bundle extras, Runnable onDone) {
+            mContext = context;
+            mExtras = extras;
+            mOnDone = onDone;
+        }
+
+        @Override
+        public void run() {
+            boolean preferred = false;
+            try {
+                ForecastDelta delta = ForecastDelta.parse(mExtras,
+                        DateEngine.getCurrentJulianDay());
+                preferred = apply(mContext, delta)
+                        && delta.locationSetting.equals(Utility.getPreferredLocation(mContext));
+            } catch (ForecastParseException e) {
+                Log.w(LOG_TAG, "Dropped an invalid forecast delta: " + e.getMessage());
+            } finally {
+                done();
+            }
+            if (preferred) {
+                updateWearable(mContext);
+            }
+        }
+
+        void done() {
+            if (null != mOnDone) {
+                mOnDone.run();
+            }
+        }
+    }
+
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(1, 1,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "forecast-delta");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            },
+            new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    Log.w(LOG_TAG, "Too many forecast deltas, dropped one");
+                    ((Task) r).done();
+                }
+            });
+
+    // Pushes to the watch face, off the delta thread so a slow watch doesn't hold up deltas
+    private static final ExecutorService sWearableExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "forecast-delta-wearable");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+    // Whether a push is waiting to start, which then covers later deltas too
+    private static final AtomicBoolean sWearableUpdatePending = new AtomicBoolean();
+
+    private ForecastDeltaApplier() {
+    }
+
+    /**
+     * @return whether the data of a GCM message is a forecast delta.
+     */
+    public static boolean isForecastDelta(Bundle extras) {
+        return ForecastDelta.TYPE_FORECAST_DELTA.equals(
+                extras.getString(ForecastDelta.EXTRA_TYPE));
+    }
+
+    /**
+     * Checks and applies the delta in the data of a GCM message in the background.
+     *
+     * @param onDone run on the background thread once the delta was applied or dropped, may
+     *               be null
+     */
+    public static void enqueue(Context context, Bundle extras, Runnable onDone) {
+        sExecutor.execute(new Task(context.getApplicationContext(), extras, onDone));
+    }
+
+    /**
+     * Writes delta to the database, unless its location isn't there or what is stored for it
+     * was issued later, and updates the snapshot.  Runs on the calling thread, the watch face
+     * is left to the caller.
+     *
+     * @return whether it was written.
+     */
+    static boolean apply(Context context, ForecastDelta delta) {
+        // Upserts the days, the rows of the other days stay as the last sync left them
+        WeatherStore.CommitResult commit = WeatherStore.getInstance(context).commitDelta(
+                SunshineSyncAdapter.toLocationValues(delta.locationSetting,
+                        delta.forecast.cityName, delta.forecast.latitude,
+                        delta.forecast.longitude),
+                SunshineSyncAdapter.toWeatherValues(delta.forecast), delta.issued);
+        if (null == commit) {
+            Log.d(LOG_TAG, "Forecast delta for " + delta.locationSetting
+                    + " is stale or not stored here");
+            return false;
+        }
+        Log.d(LOG_TAG, "Applied " + delta.forecast.size + " pushed days for "
+                + delta.locationSetting);
+
+        if (delta.locationSetting.equals(Utility.getPreferredLocation(context))) {
+            ForecastSnapshot.update(context);
+        }
+        return true;
+    }
+
+    /*
+        Pushes the forecast to the watch face, unless a push that hasn't started yet will.
+     */
+    private static void updateWearable(final Context context) {
+        if (!sWearableUpdatePending.compareAndSet(false, true)) {
+            return;
+        }
+        sWearableExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sWearableUpdatePending.set(false);
+                WearableUpdater.updateBlocking(context);
+            }
+        });
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.BuildConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches from an ordered list of mirrors of the forecast API.
+ * <p>
+ * Every endpoint keeps an exponentially weighted moving average of its latency, and the
+ * fastest one is asked first, the list order breaking ties.  When the request is hedged and
+ * the first endpoint hasn't answered by the time it answers {@link #HEDGE_PERCENTILE} of its
+ * requests, the same request goes to the next endpoint, the first complete answer wins and
+ * the other request is cancelled.  One slow edge node then costs a manual refresh its usual
+ * latency plus that of a mirror, not a timeout.  Errors and 5xx statuses move on to the next
+ * endpoint, hedged or not, until all have failed or the deadline has passed.
+ * <p>
+ * A failure counts as a request that took the whole deadline in the moving average, so a
+ * failing endpoint drops down the ranking.  It stays out of the percentile though: how long
+ * answers take says nothing about when to hedge, and a few failures would otherwise push the
+ * hedge delay to the deadline and turn hedging off.
+ */
+public class ForecastFetcher {
+
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // Weight of the newest sample in the moving average
+    static final double EWMA_WEIGHT = 0.2;
+    // What an endpoint that hasn't answered yet is assumed to take
+    static final long INITIAL_ESTIMATE_MS = 500;
+    static final double HEDGE_PERCENTILE = 0.95;
+    // Samples the percentile is taken over, and how many it needs to be trusted
+    static final int LATENCY_WINDOW = 32;
+    static final int MIN_PERCENTILE_SAMPLES = 8;
+    static final long DEFAULT_HEDGE_DELAY_MS = 1000;
+    static final long MIN_HEDGE_DELAY_MS = 50;
+
+    private static ForecastFetcher sInstance;
+
+    private static final ExecutorService sExecutor =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "forecast-fetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * A mirror and what it has taken lately.
+     */
+    static final class Endpoint {
+        final String mBaseUrl;
+        final int mOrder;
+        private double mEwmaMs = -1;
+        private final long[] mWindow = new long[LATENCY_WINDOW];
+        private int mSamples;
+
+        Endpoint(String baseUrl, int order) {
+            mBaseUrl = baseUrl;
+            mOrder = order;
+        }
+
+        /**
+         * Records how long an answer took, or at least would have taken.
+         */
+        synchronized void record(long latencyMs) {
+            average(latencyMs);
+            mWindow[mSamples % LATENCY_WINDOW] = latencyMs;
+            mSamples++;
+        }
+
+        /**
+         * Records a failure, ranking the endpoint as if it had taken penaltyMs.  The hedge
+         * delay only follows answers.
+         */
+        synchronized void recordFailure(long penaltyMs) {
+            average(penaltyMs);
+        }
+
+        /**
+         * Records a request cut off after elapsedMs because another endpoint answered first.
+         * It would have taken at least that long, and at least as long as expected, since a
+         * hedge cancelled just after it started says nothing about how fast it is.  Like
+         * failures, it doesn't move the hedge delay.
+         */
+        synchronized void recordLoser(long elapsedMs) {
+            average(Math.max(elapsedMs, (long) getEstimateMs()));
+        }
+
+        private void average(long latencyMs) {
+            mEwmaMs = mEwmaMs < 0 ? latencyMs
+                    : EWMA_WEIGHT * latencyMs + (1 - EWMA_WEIGHT) * mEwmaMs;
+        }
+
+        synchronized double getEstimateMs() {
+            return mEwmaMs < 0 ? INITIAL_ESTIMATE_MS : mEwmaMs;
+        }
+
+        /**
+         * @return how long to wait for this endpoint before hedging.
+         */
+        synchronized long getHedgeDelayMs() {
+            int count = Math.min(mSamples, LATENCY_WINDOW);
+            if (count < MIN_PERCENTILE_SAMPLES) {
+                return DEFAULT_HEDGE_DELAY_MS;
+            }
+            long[] sorted = Arrays.copyOf(mWindow, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(HEDGE_PERCENTILE * count) - 1;
+            return Math.max(MIN_HEDGE_DELAY_MS, sorted[index]);
+        }
+
+        @Override
+        public String toString() {
+            return mBaseUrl;
+        }
+    }
+
+    /*
+        One request to one endpoint, run on the executor.
+     */
+    private static final class Attempt implements Callable<Attempt> {
+        final Endpoint mEndpoint;
+        final WeatherHttpClient.Request mRequest;
+        final long mStart = SystemClock.elapsedRealtime();
+        WeatherHttpClient.Response mResponse;
+        IOException mError;
+        long mElapsedMs;
+
+        Attempt(Endpoint endpoint, WeatherHttpClient.Request request) {
+            mEndpoint = endpoint;
+            mRequest = request;
+        }
+
+        @Override
+        public Attempt call() {
+            try {
+                mResponse = mRequest.execute();
+            } catch (IOException e) {
+                mError = e;
+            }
+            mElapsedMs = SystemClock.elapsedRealtime() - mStart;
+            return this;
+        }
+
+        boolean succeeded() {
+            return null != mResponse && mResponse.code < HttpURLConnection.HTTP_INTERNAL_ERROR;
+        }
+    }
+
+    private final WeatherHttpClient mClient;
+    private final List<Endpoint> mEndpoints;
+    private final long mDeadlineMs;
+
+    /**
+     * @return the fetcher for the endpoints the app was built with.
+     */
+    public static synchronized ForecastFetcher getInstance() {
+        if (null == sInstance) {
+            sInstance = new ForecastFetcher(WeatherHttpClient.getInstance(),
+                    BuildConfig.OPEN_WEATHER_MAP_BASE_URLS, WeatherHttpClient.DEADLINE_MS);
+        }
+        return sInstance;
+    }
+
+    ForecastFetcher(WeatherHttpClient client, String[] baseUrls, long deadlineMs) {
+        if (baseUrls.length == 0) {
+            throw new IllegalArgumentException("No endpoints");
+        }
+        mClient = client;
+        mDeadlineMs = deadlineMs;
+        mEndpoints = new ArrayList<>(baseUrls.length);
+        for (int i = 0; i < baseUrls.length; i++) {
+            mEndpoints.add(new Endpoint(baseUrls[i], i));
+        }
+    }
+
+    /**
+     * @return the endpoints, the one to ask first first.
+     */
+    List<Endpoint> rank() {
+        // Estimates change while other fetches finish, the sort needs them to hold still
+        final double[] estimates = new double[mEndpoints.size()];
+        for (Endpoint endpoint : mEndpoints) {
+            estimates[endpoint.mOrder] = endpoint.getEstimateMs();
+        }
+        List<Endpoint> ranked = new ArrayList<>(mEndpoints);
+        Collections.sort(ranked, new Comparator<Endpoint>() {
+            @Override
+            public int compare(Endpoint lhs, Endpoint rhs) {
+                int byEstimate = Double.compare(estimates[lhs.mOrder], estimates[rhs.mOrder]);
+                return byEstimate != 0 ? byEstimate : lhs.mOrder - rhs.mOrder;
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * GETs path, relative to the base URL of the endpoints, from the first endpoint able to
+     * answer it.
+     *
+     * @param hedge whether a slow answer is worth a second request.  Background syncs don't
+     *              need the bandwidth spent on them.
+     * @return the first response that isn't a server error.  A 404 is an answer.
+     * @throws SocketTimeoutException if no endpoint answered before the deadline.
+     * @throws IOException            the error of the last endpoint when all failed.
+     */
+    public WeatherHttpClient.Response fetch(String path, boolean hedge) throws IOException {
+        List<Endpoint> ranked = rank();
+        CompletionService<Attempt> completion = new ExecutorCompletionService<>(sExecutor);
+        List<Attempt> running = new ArrayList<>(2);
+        long deadline = SystemClock.elapsedRealtime() + mDeadlineMs;
+        int next = 1;
+        long hedgeAt = start(completion, running, ranked.get(0), path,
+                hedge && next < ranked.size());
+        try {
+            while (true) {
+                long now = SystemClock.elapsedRealtime();
+                if (now >= deadline) {
+                    throw new SocketTimeoutException("No endpoint answered within "
+                            + mDeadlineMs + "ms");
+                }
+                if (now >= hedgeAt) {
+                    Log.d(LOG_TAG, "Hedging " + path + " on " + ranked.get(next));
+                    hedgeAt = start(completion, running, ranked.get(next++), path, false);
+                    continue;
+                }
+
+                Future<Attempt> done = completion.poll(Math.min(hedgeAt, deadline) - now,
+                        TimeUnit.MILLISECONDS);
+                if (null == done) {
+                    continue;
+                }
+                Attempt attempt;
+                try {
+                    attempt = done.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+                running.remove(attempt);
+                if (attempt.succeeded()) {
+                    attempt.mEndpoint.record(attempt.mElapsedMs);
+                    return attempt.mResponse;
+                }
+
+                // A failure ranks like a request that took the whole deadline
+                attempt.mEndpoint.recordFailure(mDeadlineMs);
+                IOException failure = null != attempt.mError ? attempt.mError : new IOException(
+                        attempt.mEndpoint + " answered " + attempt.mResponse.code);
+                Log.w(LOG_TAG, "Fetch from " + attempt.mEndpoint + " failed: " + failure);
+                if (running.isEmpty()) {
+                    if (next == ranked.size()) {
+                        throw failure;
+                    }
+                    Endpoint endpoint = ranked.get(next++);
+                    hedgeAt = start(completion, running, endpoint, path,
+                            hedge && next < ranked.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted fetching " + path);
+        } finally {
+            // The losers.  What they took so far is the least they would have taken, which
+            // keeps an endpoint that always loses from staying first.
+            long now = SystemClock.elapsedRealtime();
+            for (Attempt attempt : running) {
+                attempt.mRequest.cancel();
+                attempt.mEndpoint.recordLoser(now - attempt.mStart);
+            }
+        }
+    }
+
+    /*
+        Sends path to endpoint and returns when to hedge it, never if it isn't hedged.
+     */
+    private long start(CompletionService<Attempt> completion, List<Attempt> running,
+                       Endpoint endpoint, String path, boolean hedge) {
+        Attempt attempt = new Attempt(endpoint, mClient.newRequest(endpoint.mBaseUrl + path));
+        running.add(attempt);
+        completion.submit(attempt);
+        return hedge ? attempt.mStart + endpoint.getHedgeDelayMs() : Long.MAX_VALUE;
+    }
+}
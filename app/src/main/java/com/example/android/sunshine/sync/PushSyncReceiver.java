@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Starts the sync a push message asked for, once the delay {@link PushSyncScheduler} picked
+ * for it is over.
+ */
+public class PushSyncReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        PushSyncScheduler.onAlarm(context, intent);
+        String locationSetting = intent.getStringExtra(PushSyncScheduler.EXTRA_SYNC_LOCATION);
+        if (null != locationSetting) {
+            SunshineSyncAdapter.syncLocation(context, locationSetting);
+        }
+    }
+}
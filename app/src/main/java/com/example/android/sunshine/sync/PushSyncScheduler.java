@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * Turns GCM messages asking for a sync into a sync of the location they name, without every
+ * device that got the message hitting the server at once.  The data of the message, all
+ * strings:
+ * <ul>
+ * <li>type: sync</li>
+ * <li>location: the location setting whose forecast changed</li>
+ * <li>spread: optional, the seconds over which the server wants the syncs spread, at most
+ * {@link #MAX_SPREAD_MS}</li>
+ * </ul>
+ * <p>
+ * Each message waits a random part of the spread before its sync starts.  A message whose
+ * collapse key, or location without one, already has a sync waiting replaces the location of
+ * that sync instead of adding one.  Every new sync takes a token of a bucket of
+ * {@link #BUCKET_CAPACITY}, refilled one every {@link #REFILL_INTERVAL_MS}; without a token
+ * the message is dropped and the periodic sync catches up.
+ */
+public final class PushSyncScheduler {
+
+    private static final String LOG_TAG = PushSyncScheduler.class.getSimpleName();
+
+    static final String EXTRA_TYPE = ForecastDelta.EXTRA_TYPE;
+    static final String TYPE_SYNC = "sync";
+    static final String EXTRA_LOCATION = ForecastDelta.EXTRA_LOCATION;
+    static final String EXTRA_SPREAD = "spread";
+    // Set by GCM, to NO_COLLAPSE_KEY on messages sent without one
+    static final String EXTRA_COLLAPSE_KEY = "collapse_key";
+    static final String NO_COLLAPSE_KEY = "do_not_collapse";
+
+    static final int BUCKET_CAPACITY = 3;
+    static final long REFILL_INTERVAL_MS = 20 * 60 * 1000;
+    static final long DEFAULT_SPREAD_MS = 2 * 60 * 1000;
+    static final long MAX_SPREAD_MS = 30 * 60 * 1000;
+
+    // What schedule() did with a message
+    static final int RESULT_SCHEDULED = 0;
+    static final int RESULT_COLLAPSED = 1;
+    static final int RESULT_RATE_LIMITED = 2;
+    static final int RESULT_INVALID = 3;
+
+    static final String ACTION_SYNC = "com.example.android.sunshine.sync.ACTION_PUSH_SYNC";
+    static final String EXTRA_SYNC_LOCATION = "location";
+
+    private static final String PREF_TOKENS = "tokens";
+    private static final String PREF_TOKENS_UPDATED = "tokens_updated";
+    // Followed by the collapse key, when its sync starts in wall clock time
+    private static final String PREF_PENDING = "pending:";
+
+    private static final Random sRandom = new Random();
+
+    /**
+     * A token bucket that refills continuously, so a device averages at most one push sync
+     * per refill interval with short bursts of up to the capacity.
+     */
+    static final class TokenBucket {
+        final int mCapacity;
+        final long mRefillIntervalMs;
+        double mTokens;
+        long mUpdatedMs;
+
+        TokenBucket(int capacity, long refillIntervalMs, double tokens, long updatedMs) {
+            mCapacity = capacity;
+            mRefillIntervalMs = refillIntervalMs;
+            mTokens = tokens;
+            mUpdatedMs = updatedMs;
+        }
+
+        /**
+         * @return whether a token was left, which is then taken.
+         */
+        boolean tryAcquire(long nowMs) {
+            // The clock was set back, refill from now on rather than never
+            long elapsed = Math.max(0, nowMs - mUpdatedMs);
+            mTokens = Math.min(mCapacity, mTokens + (double) elapsed / mRefillIntervalMs);
+            mUpdatedMs = nowMs;
+            if (mTokens < 1) {
+                return false;
+            }
+            mTokens -= 1;
+            return true;
+        }
+    }
+
+    private PushSyncScheduler() {
+    }
+
+    /**
+     * @return whether the data of a GCM message asks for a sync.
+     */
+    public static boolean isSyncRequest(Bundle extras) {
+        return TYPE_SYNC.equals(extras.getString(EXTRA_TYPE));
+    }
+
+    /**
+     * Schedules the sync a GCM message asks for, if the rate limit allows it.  Only touches
+     * preferences and the alarm manager, so it can run on the main thread.
+     */
+    public static void schedule(Context context, Bundle extras) {
+        String locationSetting = extras.getString(EXTRA_LOCATION);
+        String collapseKey = extras.getString(EXTRA_COLLAPSE_KEY);
+        long spreadMs = DEFAULT_SPREAD_MS;
+        String spread = extras.getString(EXTRA_SPREAD);
+        if (null != spread) {
+            try {
+                spreadMs = Long.parseLong(spread) * 1000;
+            } catch (NumberFormatException e) {
+                Log.w(LOG_TAG, "Bad spread " + spread);
+            }
+        }
+        schedule(context, locationSetting, collapseKey, spreadMs, System.currentTimeMillis());
+    }
+
+    /**
+     * @return one of the RESULT_ constants.
+     */
+    static int schedule(Context context, String locationSetting, String collapseKey,
+                        long spreadMs, long nowMs) {
+        if (null == locationSetting || locationSetting.isEmpty()) {
+            Log.w(LOG_TAG, "Sync request without a location");
+            return RESULT_INVALID;
+        }
+        // Messages without a collapse key all share the same one, so collapse by location
+        boolean collapsible = null != collapseKey && !collapseKey.isEmpty()
+                && !NO_COLLAPSE_KEY.equals(collapseKey);
+        String key = PREF_PENDING + (collapsible ? collapseKey : locationSetting);
+        SharedPreferences prefs = getPreferences(context);
+
+        long pendingStart = prefs.getLong(key, 0);
+        if (pendingStart > nowMs) {
+            // Keep the start, a stream of messages shouldn't push it back forever
+            setAlarm(context, key, locationSetting, pendingStart - nowMs);
+            Log.d(LOG_TAG, "Collapsed a sync request for " + locationSetting);
+            return RESULT_COLLAPSED;
+        }
+
+        TokenBucket bucket = new TokenBucket(BUCKET_CAPACITY, REFILL_INTERVAL_MS,
+                prefs.getFloat(PREF_TOKENS, BUCKET_CAPACITY),
+                prefs.getLong(PREF_TOKENS_UPDATED, nowMs));
+        boolean acquired = bucket.tryAcquire(nowMs);
+        SharedPreferences.Editor editor = prefs.edit()
+                .putFloat(PREF_TOKENS, (float) bucket.mTokens)
+                .putLong(PREF_TOKENS_UPDATED, bucket.mUpdatedMs);
+        if (!acquired) {
+            editor.remove(key).apply();
+            Log.d(LOG_TAG, "Too many sync requests, dropped one for " + locationSetting);
+            return RESULT_RATE_LIMITED;
+        }
+
+        long delayMs = jitter(sRandom, spreadMs);
+        editor.putLong(key, nowMs + delayMs).apply();
+        setAlarm(context, key, locationSetting, delayMs);
+        Log.d(LOG_TAG, "Sync of " + locationSetting + " in " + delayMs + "ms");
+        return RESULT_SCHEDULED;
+    }
+
+    /**
+     * @return a delay spread evenly over [0, spreadMs), with spreadMs kept within
+     * [0, MAX_SPREAD_MS].
+     */
+    static long jitter(Random random, long spreadMs) {
+        long spread = Math.max(0, Math.min(spreadMs, MAX_SPREAD_MS));
+        return (long) (random.nextDouble() * spread);
+    }
+
+    /**
+     * Called when the alarm of a pending sync went off, so the next message with its key
+     * schedules a new one.
+     */
+    static void onAlarm(Context context, Intent intent) {
+        Uri data = intent.getData();
+        if (null != data) {
+            getPreferences(context).edit().remove(data.getSchemeSpecificPart()).apply();
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PushSyncScheduler.class.getSimpleName(),
+                Context.MODE_PRIVATE);
+    }
+
+    /*
+        One alarm per key: the data makes the intents of different keys distinct, and
+        FLAG_UPDATE_CURRENT lets a later message replace the location of its key.
+     */
+    private static void setAlarm(Context context, String key, String locationSetting,
+                                 long delayMs) {
+        Intent intent = new Intent(ACTION_SYNC, Uri.fromParts("sunshine", key, null),
+                context, PushSyncReceiver.class);
+        intent.putExtra(EXTRA_SYNC_LOCATION, locationSetting);
+        PendingIntent operation = PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager =
+                (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + delayMs, operation);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.Utility;
+import com.example.android.sunshine.data.ForecastRepository;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.PendingResult;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends today's forecast of the preferred location to the watch face, after a sync or a
+ * pushed forecast changed it.
+ */
+final class WearableUpdater {
+
+    private static final String LOG_TAG = WearableUpdater.class.getSimpleName();
+
+    private static final String PATH_WITH_FEATURE = "/watch_face_config/Digital";
+    private static final String MAX_KEY = "com.example.key.max";
+    private static final String MIN_KEY = "com.example.key.min";
+    private static final String ICON_KEY = "com.example.key.icon";
+
+    // How long a background task waits for Play services before giving up on the watch
+    private static final long CONNECT_TIMEOUT_MS = 3000;
+
+    private WearableUpdater() {
+    }
+
+    /**
+     * Puts today's forecast through client, which the caller has connected or is connecting.
+     *
+     * @return the pending put, null when there is no forecast for today.
+     */
+    static PendingResult<DataApi.DataItemResult> update(Context context,
+                                                        GoogleApiClient client) {
+        String locationQuery = Utility.getPreferredLocation(context);
+        ForecastRepository.Day today = ForecastRepository.getInstance()
+                .loadForecast(context, locationQuery).getDay(System.currentTimeMillis());
+        if (null != today) {
+            Log.d(LOG_TAG, "SENDING WEATHER DATA ");
+            PutDataMapRequest putDataMapReq = PutDataMapRequest.create(PATH_WITH_FEATURE);
+            putDataMapReq.getDataMap().putDouble(MIN_KEY, today.low);
+            putDataMapReq.getDataMap().putDouble(MAX_KEY, today.high);
+            putDataMapReq.getDataMap().putInt(ICON_KEY, today.weatherId);
+            PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
+            return Wearable.DataApi.putDataItem(client, putDataReq);
+        }
+        return null;
+    }
+
+    /**
+     * Connects a client of its own, sends today's forecast and disconnects.  Blocks, so only
+     * for background threads.
+     */
+    static void updateBlocking(Context context) {
+        GoogleApiClient client = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult result = client.blockingConnect(CONNECT_TIMEOUT_MS,
+                TimeUnit.MILLISECONDS);
+        if (!result.isSuccess()) {
+            Log.w(LOG_TAG, "No wearable connection: " + result);
+            return;
+        }
+        try {
+            PendingResult<DataApi.DataItemResult> put = update(context, client);
+            if (null != put) {
+                // Disconnecting would drop a put that hasn't gone out yet
+                put.await(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            client.disconnect();
+        }
+    }
+}
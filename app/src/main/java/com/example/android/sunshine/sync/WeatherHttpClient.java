@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.os.SystemClock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The HTTP client every request of the sync goes through.
+ * <p>
+ * HttpURLConnection keeps idle connections alive and hands them to the next request for the
+ * same host, but only if the response was read to the end and closed, and the connection was
+ * not disconnected.  The client does exactly that, so several requests in a sync, or syncs
+ * close together, pay for one TCP setup.  Connections are only disconnected after a failure.
+ * <p>
+ * Addresses of plain http hosts come from a {@link DnsCache}.  Every request has a connect
+ * timeout, a read timeout and a deadline for the whole exchange, from the address lookup on,
+ * after which the connection is cut, so neither a hung resolver, a stalled server nor one
+ * that trickles bytes just fast enough to beat the read timeout can hold the sync thread.
+ * Bodies larger than a cap are refused.
+ */
+public class WeatherHttpClient {
+
+    static final int CONNECT_TIMEOUT_MS = 10 * 1000;
+    static final int READ_TIMEOUT_MS = 15 * 1000;
+    static final int DEADLINE_MS = 30 * 1000;
+    // A year of daily forecast is about 100KB
+    static final int MAX_RESPONSE_BYTES = 1024 * 1024;
+    // Idle connections HttpURLConnection keeps per host
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final WeatherHttpClient sInstance;
+
+    // Disconnects requests that run past their deadline, which aborts a blocked read
+    private static final ScheduledExecutorService sWatchdog =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "http-deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    static {
+        // Read once, when HttpURLConnection sets up its pool, so set them before any request
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(MAX_IDLE_CONNECTIONS));
+        sInstance = new WeatherHttpClient(new DnsCache(DnsCache.DEFAULT_TTL_MS),
+                CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS, DEADLINE_MS, MAX_RESPONSE_BYTES);
+    }
+
+    /**
+     * A complete response.  Error statuses have the body of the error too.
+     */
+    public static final class Response {
+        public final int code;
+        public final byte[] body;
+        // The server's clock when it answered, from the Date header, or 0 without one
+        public final long date;
+
+        Response(int code, byte[] body, long date) {
+            this.code = code;
+            this.body = body;
+            this.date = date;
+        }
+
+        /**
+         * @return the body as UTF-8 text.
+         */
+        public String getText() {
+            return new String(body, UTF_8);
+        }
+    }
+
+    private final DnsCache mDns;
+    private final int mConnectTimeoutMs;
+    private final int mReadTimeoutMs;
+    private final int mDeadlineMs;
+    private final int mMaxResponseBytes;
+
+    public static WeatherHttpClient getInstance() {
+        return sInstance;
+    }
+
+    WeatherHttpClient(DnsCache dns, int connectTimeoutMs, int readTimeoutMs, int deadlineMs,
+                      int maxResponseBytes) {
+        mDns = dns;
+        mConnectTimeoutMs = connectTimeoutMs;
+        mReadTimeoutMs = readTimeoutMs;
+        mDeadlineMs = deadlineMs;
+        mMaxResponseBytes = maxResponseBytes;
+    }
+
+    /**
+     * GETs url and reads the whole body.
+     *
+     * @throws SocketTimeoutException if the server takes longer than the timeouts or the
+     *                                deadline allow.
+     * @throws IOException            for any other failure, including a body over the cap.
+     */
+    public Response get(String url) throws IOException {
+        return newRequest(url).execute();
+    }
+
+    /**
+     * A GET of url that another thread can cancel while it runs, see {@link Request}.
+     */
+    public Request newRequest(String url) {
+        return new Request(url);
+    }
+
+    /**
+     * One GET, run by {@link #execute()} on the calling thread.  {@link #cancel()} cuts its
+     * connection from any other thread, the way the deadline does.
+     */
+    public final class Request {
+        private final String mUrl;
+        private final AtomicBoolean mCancelled = new AtomicBoolean();
+        private volatile HttpURLConnection mConnection;
+
+        private Request(String url) {
+            mUrl = url;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        /**
+         * Stops the request.  execute() throws an {@link InterruptedIOException}, now or as
+         * soon as it gets that far.
+         */
+        public void cancel() {
+            mCancelled.set(true);
+            HttpURLConnection connection = mConnection;
+            if (null != connection) {
+                connection.disconnect();
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled.get();
+        }
+
+        /**
+         * Runs the request, see {@link WeatherHttpClient#get(String)}.
+         *
+         * @throws InterruptedIOException if the request was cancelled.
+         */
+        public Response execute() throws IOException {
+            long start = SystemClock.elapsedRealtime();
+            URL target = new URL(mUrl);
+            String host = target.getHost();
+            // TLS checks the certificate against the host name, so only plain http is
+            // redirected to the cached address
+            boolean pinned = "http".equals(target.getProtocol());
+            URL connectTo = target;
+            if (pinned) {
+                InetAddress address = mDns.lookup(host, mDeadlineMs);
+                String literal = address instanceof Inet6Address
+                        ? "[" + address.getHostAddress() + "]" : address.getHostAddress();
+                connectTo = new URL(target.getProtocol(), literal, target.getPort(),
+                        target.getFile());
+            }
+
+            // The lookup took its share of the deadline
+            long remainingMs = mDeadlineMs - (SystemClock.elapsedRealtime() - start);
+            if (remainingMs <= 0) {
+                throw new SocketTimeoutException("No complete response after "
+                        + mDeadlineMs + "ms");
+            }
+            final HttpURLConnection connection = (HttpURLConnection) connectTo.openConnection();
+            mConnection = connection;
+            final AtomicBoolean expired = new AtomicBoolean();
+            ScheduledFuture<?> watchdog = sWatchdog.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expired.set(true);
+                    connection.disconnect();
+                }
+            }, remainingMs, TimeUnit.MILLISECONDS);
+            boolean reusable = false;
+            try {
+                // A cancel() that came before mConnection was set didn't disconnect anything
+                if (mCancelled.get()) {
+                    throw new InterruptedIOException("Cancelled");
+                }
+                connection.setConnectTimeout((int) Math.min(mConnectTimeoutMs, remainingMs));
+                connection.setReadTimeout((int) Math.min(mReadTimeoutMs, remainingMs));
+                if (pinned) {
+                    connection.setRequestProperty("Host",
+                            target.getPort() == -1 ? host : host + ":" + target.getPort());
+                }
+
+                int code;
+                try {
+                    code = connection.getResponseCode();
+                } catch (IOException e) {
+                    // The cached address may be the reason, look it up again next time.  Not
+                    // when the request was cut on purpose, the address was fine.
+                    if (pinned && !mCancelled.get() && !expired.get()) {
+                        mDns.evict(host);
+                    }
+                    throw e;
+                }
+                InputStream in = code >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? connection.getErrorStream() : connection.getInputStream();
+                byte[] body = null == in ? new byte[0] : readBody(connection, in);
+                reusable = true;
+                return new Response(code, body, connection.getDate());
+            } catch (IOException e) {
+                if (mCancelled.get()) {
+                    throw new InterruptedIOException("Cancelled");
+                }
+                if (expired.get()) {
+                    throw new SocketTimeoutException("No complete response after "
+                            + mDeadlineMs + "ms");
+                }
+                throw e;
+            } finally {
+                watchdog.cancel(false);
+                if (!reusable) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    /*
+        Reads in to the end and closes it, which is what puts the connection back in the pool.
+     */
+    private byte[] readBody(HttpURLConnection connection, InputStream in) throws IOException {
+        try {
+            int length = connection.getContentLength();
+            if (length > mMaxResponseBytes) {
+                throw new IOException("Response of " + length + " bytes is over the limit");
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream(length > 0 ? length : 8192);
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                body.write(buffer, 0, count);
+                if (body.size() > mMaxResponseBytes) {
+                    throw new IOException("Response is over the limit of " + mMaxResponseBytes
+                            + " bytes");
+                }
+            }
+            return body.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
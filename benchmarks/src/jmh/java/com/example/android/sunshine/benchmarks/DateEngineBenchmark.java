@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.core.DateEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The date math behind WeatherContract.normalizeDate, which runs for every row written and
+ * every dated uri built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DateEngineBenchmark {
+
+    // A power of two, so the index wraps with a mask
+    private static final int DATES = 1024;
+
+    private final long[] mDates = new long[DATES];
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        // A year either side of now, including both daylight saving transitions
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < DATES; i++) {
+            mDates[i] = now + (long) (random.nextDouble() * 2 * 365 * DateEngine.DAY_IN_MILLIS)
+                    - 365 * DateEngine.DAY_IN_MILLIS;
+        }
+    }
+
+    @Benchmark
+    public long normalizeDate() {
+        return DateEngine.normalizeDate(mDates[mNext++ & (DATES - 1)]);
+    }
+
+    @Benchmark
+    public int getJulianDay() {
+        return DateEngine.getJulianDay(mDates[mNext++ & (DATES - 1)]);
+    }
+
+    @Benchmark
+    public long getStartOfJulianDay() {
+        return DateEngine.getStartOfJulianDay(
+                DateEngine.EPOCH_JULIAN_DAY + 16000 + (mNext++ & (DATES - 1)));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.core.CityForecast;
+import com.example.android.sunshine.core.CompactForecastSource;
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.core.ForecastBatch;
+import com.example.android.sunshine.core.ForecastParseException;
+import com.example.android.sunshine.core.ForecastParser;
+import com.example.android.sunshine.core.ForecastSource;
+import com.example.android.sunshine.core.OwmForecastParser;
+import com.example.android.sunshine.core.OwmForecastSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a 14 day forecast/daily response, as the sync adapter does after every download,
+ * and decoding the same forecast from each {@link ForecastSource}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ForecastParseBenchmark {
+
+    static final String FORECAST_RESOURCE = "/forecast_daily_14.json";
+
+    private final ForecastParser mParser = OwmForecastParser.getInstance();
+    private final ForecastSource mOwmSource = new OwmForecastSource("key");
+    private final ForecastSource mCompactSource = new CompactForecastSource();
+    private String mForecastJson;
+    private byte[] mForecastJsonBytes;
+    private byte[] mForecastCompact;
+    private int mJulianStartDay;
+
+    @Setup
+    public void setUp() throws IOException, ForecastParseException {
+        mForecastJson = readResource(FORECAST_RESOURCE);
+        mForecastJsonBytes = mForecastJson.getBytes("UTF-8");
+        mJulianStartDay = DateEngine.getCurrentJulianDay();
+        mForecastCompact = CompactForecastSource.encode(
+                mOwmSource.decode(mForecastJsonBytes, mJulianStartDay));
+    }
+
+    @Benchmark
+    public CityForecast parse() throws ForecastParseException {
+        return mParser.parse(mForecastJson, mJulianStartDay);
+    }
+
+    @Benchmark
+    public ForecastBatch decodeOwm() throws ForecastParseException {
+        return mOwmSource.decode(mForecastJsonBytes, mJulianStartDay);
+    }
+
+    @Benchmark
+    public ForecastBatch decodeCompact() throws ForecastParseException {
+        return mCompactSource.decode(mForecastCompact, mJulianStartDay);
+    }
+
+    static String readResource(String name) throws IOException {
+        InputStream in = ForecastParseBenchmark.class.getResourceAsStream(name);
+        if (null == in) {
+            throw new IOException("Missing resource " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
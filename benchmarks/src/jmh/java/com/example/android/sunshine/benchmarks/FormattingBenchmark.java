@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.core.WeatherConditions;
+import com.example.android.sunshine.core.WeatherFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The strings bound to every forecast row: temperatures, wind, pressure and humidity through
+ * {@link WeatherFormatter}, against String.format with the same format as a baseline, and the
+ * condition code lookups.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormattingBenchmark {
+
+    // The English formats of res/values/strings.xml, as Resources.getString returns them
+    static final WeatherFormatter.Formats ENGLISH_FORMATS = new WeatherFormatter.Formats() {
+        @Override
+        public String getTemperatureFormat() {
+            return "%1.0f\u00B0";
+        }
+
+        @Override
+        public String getWindKmhFormat() {
+            return "%1$1.0f km/h %2$s";
+        }
+
+        @Override
+        public String getWindMphFormat() {
+            return "%1$1.0f mph %2$s";
+        }
+
+        @Override
+        public String getPressureFormat() {
+            return "%1.0f hPa";
+        }
+
+        @Override
+        public String getHumidityFormat() {
+            return "%1.0f %%";
+        }
+
+        @Override
+        public String getNotificationFormat() {
+            return "Forecast: %1$s High: %2$s Low: %3$s";
+        }
+    };
+
+    // Every code the API documents, and a few it doesn't
+    private static final int[] WEATHER_IDS = {
+            200, 211, 232, 300, 321, 500, 504, 511, 520, 531, 600, 622, 701, 741, 761, 781,
+            800, 801, 802, 804, 900, 962, 0, 999
+    };
+
+    private final WeatherFormatter mFormatter = WeatherFormatter.getInstance();
+    private double mTemperature = -20.3;
+    private float mWindDegrees;
+    private int mNext;
+
+    private double nextTemperature() {
+        mTemperature = mTemperature > 40 ? -20.3 : mTemperature + 0.7;
+        return mTemperature;
+    }
+
+    @Benchmark
+    public String formatTemperature() {
+        return mFormatter.formatTemperature(ENGLISH_FORMATS, nextTemperature(), true);
+    }
+
+    @Benchmark
+    public String formatTemperatureImperial() {
+        return mFormatter.formatTemperature(ENGLISH_FORMATS, nextTemperature(), false);
+    }
+
+    @Benchmark
+    public String formatTemperatureStringFormat() {
+        return String.format(ENGLISH_FORMATS.getTemperatureFormat(), nextTemperature());
+    }
+
+    @Benchmark
+    public String formatWind() {
+        mWindDegrees = mWindDegrees >= 360 ? 0 : mWindDegrees + 13;
+        return mFormatter.formatWind(ENGLISH_FORMATS, 3 + mWindDegrees / 30, mWindDegrees, true);
+    }
+
+    @Benchmark
+    public String formatPressure() {
+        return mFormatter.formatPressure(ENGLISH_FORMATS, 990 + (mNext++ & 63));
+    }
+
+    @Benchmark
+    public String formatHumidity() {
+        return mFormatter.formatHumidity(ENGLISH_FORMATS, mNext++ & 63);
+    }
+
+    @Benchmark
+    public String getArtName() {
+        return WeatherConditions.getArtName(WEATHER_IDS[mNext++ % WEATHER_IDS.length]);
+    }
+}
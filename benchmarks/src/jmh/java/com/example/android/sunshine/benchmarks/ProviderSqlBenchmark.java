@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.core.DateEngine;
+import com.example.android.sunshine.core.WeatherSchema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The provider's write and read paths on SQLite through JDBC: the transaction of
+ * WeatherStore.commitSync and the location join of WeatherStore.queryWeather.
+ * <p>
+ * The provider itself needs Android, but its tables and SQL come from WeatherSchema, which the
+ * app builds its database from too, in either layout of the weather table.  Location ids are
+ * resolved the way WeatherStore does, from a cache warmed once.  The database is a file, in
+ * journal mode, like the one on the device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProviderSqlBenchmark {
+
+    private static final int FORECAST_DAYS = 14;
+
+    private static final String[] LOCATION_COLUMNS = {
+            WeatherSchema.LocationTable.COLUMN_CITY_NAME,
+            WeatherSchema.LocationTable.COLUMN_COORD_LAT,
+            WeatherSchema.LocationTable.COLUMN_COORD_LONG
+    };
+
+    private static final String INSERT_LOCATION = "INSERT OR IGNORE INTO " +
+            WeatherSchema.LocationTable.TABLE_NAME + " (" +
+            WeatherSchema.LocationTable.COLUMN_LOCATION_SETTING + ", " +
+            WeatherSchema.LocationTable.COLUMN_CITY_NAME + ", " +
+            WeatherSchema.LocationTable.COLUMN_COORD_LAT + ", " +
+            WeatherSchema.LocationTable.COLUMN_COORD_LONG + ") VALUES (?, ?, ?, ?)";
+
+    private static final String QUERY_LOCATION_ID = "SELECT " + WeatherSchema.COLUMN_ID +
+            " FROM " + WeatherSchema.LocationTable.TABLE_NAME +
+            " WHERE " + WeatherSchema.LOCATION_ID_SELECTION;
+
+    private static final String QUERY_LOCATION_IDS = "SELECT " + WeatherSchema.COLUMN_ID + ", " +
+            WeatherSchema.LocationTable.COLUMN_LOCATION_SETTING +
+            " FROM " + WeatherSchema.LocationTable.TABLE_NAME;
+
+    // WeatherStore.updateLocation, with the name and coordinates a sync writes
+    private static final String UPDATE_LOCATION = "UPDATE " +
+            WeatherSchema.LocationTable.TABLE_NAME + " SET " +
+            WeatherSchema.LocationTable.COLUMN_CITY_NAME + " = ?, " +
+            WeatherSchema.LocationTable.COLUMN_COORD_LAT + " = ?, " +
+            WeatherSchema.LocationTable.COLUMN_COORD_LONG + " = ? WHERE " +
+            WeatherSchema.buildLocationChangedSelection(LOCATION_COLUMNS);
+
+    // The clustered layout takes the derived _id as its last value
+    private static final String INSERT_WEATHER = "INSERT INTO " +
+            WeatherSchema.WeatherTable.TABLE_NAME + " (" +
+            WeatherSchema.WeatherTable.COLUMN_LOC_KEY + ", " +
+            WeatherSchema.WeatherTable.COLUMN_DATE + ", " +
+            WeatherSchema.WeatherTable.COLUMN_SHORT_DESC + ", " +
+            WeatherSchema.WeatherTable.COLUMN_WEATHER_ID + ", " +
+            WeatherSchema.WeatherTable.COLUMN_MIN_TEMP + ", " +
+            WeatherSchema.WeatherTable.COLUMN_MAX_TEMP + ", " +
+            WeatherSchema.WeatherTable.COLUMN_HUMIDITY + ", " +
+            WeatherSchema.WeatherTable.COLUMN_PRESSURE + ", " +
+            WeatherSchema.WeatherTable.COLUMN_WIND_SPEED + ", " +
+            WeatherSchema.WeatherTable.COLUMN_DEGREES;
+
+    private static final String WRITE_ISSUED = "INSERT OR REPLACE INTO " +
+            WeatherSchema.IssuedTable.TABLE_NAME + " (" +
+            WeatherSchema.IssuedTable.COLUMN_LOC_KEY + ", " +
+            WeatherSchema.IssuedTable.COLUMN_ISSUED + ") VALUES (?, ?)";
+
+    private static final String PRUNE_WEATHER = "DELETE FROM " +
+            WeatherSchema.WeatherTable.TABLE_NAME + " WHERE " + WeatherSchema.PRUNE_SELECTION;
+
+    // WeatherStore.queryWeather with ForecastRepository's projection
+    private static final String QUERY_FORECAST = "SELECT " +
+            WeatherSchema.WeatherTable.COLUMN_DATE + ", " +
+            WeatherSchema.WeatherTable.COLUMN_WEATHER_ID + ", " +
+            WeatherSchema.WeatherTable.COLUMN_SHORT_DESC + ", " +
+            WeatherSchema.WeatherTable.COLUMN_MAX_TEMP + ", " +
+            WeatherSchema.WeatherTable.COLUMN_MIN_TEMP + ", " +
+            WeatherSchema.WeatherTable.COLUMN_HUMIDITY + ", " +
+            WeatherSchema.WeatherTable.COLUMN_PRESSURE + ", " +
+            WeatherSchema.WeatherTable.COLUMN_WIND_SPEED + ", " +
+            WeatherSchema.WeatherTable.COLUMN_DEGREES + ", " +
+            WeatherSchema.LocationTable.COLUMN_COORD_LAT + ", " +
+            WeatherSchema.LocationTable.COLUMN_COORD_LONG +
+            " FROM " + WeatherSchema.WEATHER_JOIN_LOCATION +
+            " WHERE " + WeatherSchema.LOCATION_SETTING_WITH_START_DATE_SELECTION +
+            " ORDER BY " + WeatherSchema.WeatherTable.COLUMN_DATE + " ASC";
+
+    // Locations in the database, the one being synced among them
+    @Param({"1", "100"})
+    public int locations;
+
+    // Layout of the weather table, see WeatherDbHelper
+    @Param({"false", "true"})
+    public boolean clustered;
+
+    private final Map<String, Long> mLocationIds = new HashMap<>();
+
+    private File mFile;
+    private Connection mConnection;
+    private PreparedStatement mUpdateLocation;
+    private PreparedStatement mInsertWeather;
+    private PreparedStatement mWriteIssued;
+    private PreparedStatement mPruneWeather;
+    private PreparedStatement mQueryForecast;
+    private long mToday;
+    private double mOffset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mFile = File.createTempFile("weather", ".db");
+        mConnection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getAbsolutePath());
+        try (Statement statement = mConnection.createStatement()) {
+            for (String sql : WeatherSchema.getCreateStatements(clustered)) {
+                statement.execute(sql);
+            }
+        }
+        mUpdateLocation = mConnection.prepareStatement(UPDATE_LOCATION);
+        mInsertWeather = mConnection.prepareStatement(clustered
+                ? INSERT_WEATHER + ", " + WeatherSchema.COLUMN_ID +
+                        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                : INSERT_WEATHER + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        mWriteIssued = mConnection.prepareStatement(WRITE_ISSUED);
+        mPruneWeather = mConnection.prepareStatement(PRUNE_WEATHER);
+        mQueryForecast = mConnection.prepareStatement(QUERY_FORECAST);
+        mToday = DateEngine.normalizeDate(System.currentTimeMillis());
+
+        for (int i = 0; i < locations; i++) {
+            commitSync(getLocationSetting(i), 0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mConnection.close();
+        mFile.delete();
+    }
+
+    private static String getLocationSetting(int i) {
+        return "city-" + i;
+    }
+
+    /*
+        LocationIdCache.warm: every location id in one query, on the first sync.
+     */
+    private void warmLocationIds() throws SQLException {
+        try (Statement statement = mConnection.createStatement();
+             ResultSet result = statement.executeQuery(QUERY_LOCATION_IDS)) {
+            while (result.next()) {
+                mLocationIds.put(result.getString(2), result.getLong(1));
+            }
+        }
+    }
+
+    /*
+        WeatherStore.resolveLocationId: a cached location is only written when its name or
+        coordinates changed, an unknown one is inserted.
+     */
+    private long resolveLocationId(String locationSetting) throws SQLException {
+        if (mLocationIds.isEmpty()) {
+            warmLocationIds();
+        }
+        Long cached = mLocationIds.get(locationSetting);
+        if (null != cached) {
+            mUpdateLocation.setString(1, locationSetting);
+            mUpdateLocation.setDouble(2, 51.5);
+            mUpdateLocation.setDouble(3, -0.12);
+            mUpdateLocation.setLong(4, cached);
+            mUpdateLocation.setString(5, locationSetting);
+            mUpdateLocation.setDouble(6, 51.5);
+            mUpdateLocation.setDouble(7, -0.12);
+            mUpdateLocation.executeUpdate();
+            return cached;
+        }
+        try (PreparedStatement insertLocation = mConnection.prepareStatement(INSERT_LOCATION)) {
+            insertLocation.setString(1, locationSetting);
+            insertLocation.setString(2, locationSetting);
+            insertLocation.setDouble(3, 51.5);
+            insertLocation.setDouble(4, -0.12);
+            insertLocation.executeUpdate();
+        }
+        long locationId;
+        try (PreparedStatement queryId = mConnection.prepareStatement(QUERY_LOCATION_ID)) {
+            queryId.setString(1, locationSetting);
+            try (ResultSet result = queryId.executeQuery()) {
+                result.next();
+                locationId = result.getLong(1);
+            }
+        }
+        mLocationIds.put(locationSetting, locationId);
+        return locationId;
+    }
+
+    /*
+        What a sync writes: the location, a forecast replacing the previous one, the pruning
+        of yesterday's rows and the issue time, in one transaction.
+     */
+    private int commitSync(String locationSetting, long pruneBefore) throws SQLException {
+        mConnection.setAutoCommit(false);
+        try {
+            long locationId = resolveLocationId(locationSetting);
+
+            // Vary the values so every commit really rewrites the rows
+            mOffset = mOffset > 10 ? 0 : mOffset + 0.1;
+            int inserted = 0;
+            for (int day = 0; day < FORECAST_DAYS; day++) {
+                long date = mToday + day * DateEngine.DAY_IN_MILLIS;
+                mInsertWeather.setLong(1, locationId);
+                mInsertWeather.setLong(2, date);
+                mInsertWeather.setString(3, "Clouds");
+                mInsertWeather.setInt(4, 803);
+                mInsertWeather.setDouble(5, 8.5 + mOffset);
+                mInsertWeather.setDouble(6, 14.25 + mOffset);
+                mInsertWeather.setDouble(7, 81);
+                mInsertWeather.setDouble(8, 1012.5);
+                mInsertWeather.setDouble(9, 4.2);
+                mInsertWeather.setDouble(10, 225);
+                if (clustered) {
+                    mInsertWeather.setLong(11, WeatherSchema.clusteredWeatherId(locationId, date));
+                }
+                inserted += mInsertWeather.executeUpdate();
+            }
+            if (pruneBefore > 0) {
+                mPruneWeather.setLong(1, pruneBefore);
+                mPruneWeather.executeUpdate();
+            }
+            mWriteIssued.setLong(1, locationId);
+            mWriteIssued.setLong(2, System.currentTimeMillis());
+            mWriteIssued.executeUpdate();
+            mConnection.commit();
+            return inserted;
+        } catch (SQLException e) {
+            mConnection.rollback();
+            mLocationIds.clear();
+            throw e;
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    @Benchmark
+    public int commitSync() throws SQLException {
+        return commitSync(getLocationSetting(0), mToday - DateEngine.DAY_IN_MILLIS);
+    }
+
+    @Benchmark
+    public void queryForecast(Blackhole blackhole) throws SQLException {
+        mQueryForecast.setString(1, getLocationSetting(locations - 1));
+        mQueryForecast.setLong(2, mToday);
+        try (ResultSet result = mQueryForecast.executeQuery()) {
+            // Read every column, as binding a row does
+            while (result.next()) {
+                blackhole.consume(result.getLong(1));
+                blackhole.consume(result.getInt(2));
+                blackhole.consume(result.getString(3));
+                for (int column = 4; column <= 11; column++) {
+                    blackhole.consume(result.getDouble(column));
+                }
+            }
+        }
+    }
+}
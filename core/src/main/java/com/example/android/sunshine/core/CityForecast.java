@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The daily forecast of one city, as a weather service returned it.
+ */
+public final class CityForecast {
+
+    // What the service answered
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_NOT_FOUND = 1;
+    public static final int STATUS_SERVER_ERROR = 2;
+
+    /**
+     * The forecast of one day.  Temperatures are in Celsius, the wind speed in the unit the
+     * service was asked for and its direction in degrees.
+     */
+    public static final class Day {
+        public final long date;
+        public final int weatherId;
+        public final String description;
+        public final double high;
+        public final double low;
+        public final int humidity;
+        public final double pressure;
+        public final double windSpeed;
+        public final double windDirection;
+
+        public Day(long date, int weatherId, String description, double high, double low,
+                   int humidity, double pressure, double windSpeed, double windDirection) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+            this.humidity = humidity;
+            this.pressure = pressure;
+            this.windSpeed = windSpeed;
+            this.windDirection = windDirection;
+        }
+    }
+
+    public final int status;
+    // Unless status is STATUS_OK there is no city, NaN coordinates and no days
+    public final String cityName;
+    public final double latitude;
+    public final double longitude;
+    public final List<Day> days;
+
+    public CityForecast(String cityName, double latitude, double longitude, List<Day> days) {
+        this(STATUS_OK, cityName, latitude, longitude, days);
+    }
+
+    private CityForecast(int status, String cityName, double latitude, double longitude,
+                         List<Day> days) {
+        this.status = status;
+        this.cityName = cityName;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.days = Collections.unmodifiableList(days);
+    }
+
+    /**
+     * @return an answer without a forecast, status being {@link #STATUS_NOT_FOUND} or
+     * {@link #STATUS_SERVER_ERROR}.
+     */
+    public static CityForecast error(int status) {
+        if (status == STATUS_OK) {
+            throw new IllegalArgumentException("An error needs an error status");
+        }
+        return new CityForecast(status, null, Double.NaN, Double.NaN,
+                Collections.<Day>emptyList());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The compact forecast feed of our edge cache, forecast/daily?mode=compact.  The same
+ * forecast as OpenWeatherMap's JSON in about a fifteenth of the bytes, read without a parser.
+ * <p>
+ * All numbers are big-endian, strings are a length and UTF-8:
+ * <pre>
+ * 4  magic "SFC" and the version, 1
+ * 1  status, one of the CityForecast statuses.  Nothing follows unless it is STATUS_OK.
+ * 2+ city name, u16 length and bytes
+ * 4  latitude in millionths of a degree
+ * 4  longitude in millionths of a degree
+ * 1  count of distinct descriptions, then each as u8 length and bytes
+ * 2  count of days, then 14 bytes for each:
+ *    2  weather condition id
+ *    1  index of the description
+ *    2  high in hundredths of a degree Celsius, signed
+ *    2  low in hundredths of a degree Celsius, signed
+ *    1  humidity in percent
+ *    2  pressure in tenths of a hPa
+ *    2  wind speed in hundredths of the unit
+ *    2  wind direction in tenths of a degree
+ * </pre>
+ * The days are dated like those of the JSON, from the julian day the caller starts them on.
+ */
+public final class CompactForecastSource implements ForecastSource {
+
+    private static final byte[] MAGIC = {'S', 'F', 'C', 1};
+    private static final int DAY_BYTES = 14;
+
+    private static final String FORECAST_PATH = "forecast/daily";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Override
+    public String buildRequest(String location, long cityId, int days) {
+        StringBuilder request = new StringBuilder(FORECAST_PATH).append('?');
+        if (cityId > 0) {
+            OwmForecastSource.appendParameter(request, "id", Long.toString(cityId));
+        } else {
+            OwmForecastSource.appendParameter(request, "q", location);
+        }
+        OwmForecastSource.appendParameter(request, "mode", "compact");
+        OwmForecastSource.appendParameter(request, "cnt", Integer.toString(days));
+        return request.toString();
+    }
+
+    @Override
+    public ForecastBatch decode(byte[] body, int julianStartDay) throws ForecastParseException {
+        ByteBuffer in = ByteBuffer.wrap(body);
+        try {
+            for (byte b : MAGIC) {
+                if (in.get() != b) {
+                    throw new ForecastParseException("Not a compact forecast");
+                }
+            }
+            int status = in.get();
+            if (status != CityForecast.STATUS_OK) {
+                if (status != CityForecast.STATUS_NOT_FOUND
+                        && status != CityForecast.STATUS_SERVER_ERROR) {
+                    throw new ForecastParseException("Unknown status " + status);
+                }
+                return ForecastBatch.error(status);
+            }
+
+            String cityName = readString(in, in.getShort() & 0xffff);
+            double latitude = in.getInt() / 1e6;
+            double longitude = in.getInt() / 1e6;
+            String[] descriptions = new String[in.get() & 0xff];
+            for (int i = 0; i < descriptions.length; i++) {
+                descriptions[i] = readString(in, in.get() & 0xff);
+            }
+
+            int size = in.getShort() & 0xffff;
+            if (in.remaining() < size * DAY_BYTES) {
+                throw new ForecastParseException("Truncated, " + size + " days in "
+                        + in.remaining() + " bytes");
+            }
+            ForecastBatch batch = new ForecastBatch(cityName, latitude, longitude, size);
+            for (int i = 0; i < size; i++) {
+                batch.dates[i] = DateEngine.getStartOfJulianDay(julianStartDay + i);
+                batch.weatherIds[i] = in.getShort() & 0xffff;
+                int description = in.get() & 0xff;
+                if (description >= descriptions.length) {
+                    throw new ForecastParseException("No description " + description);
+                }
+                batch.descriptions[i] = descriptions[description];
+                batch.highs[i] = in.getShort() / 100.0;
+                batch.lows[i] = in.getShort() / 100.0;
+                batch.humidities[i] = in.get() & 0xff;
+                batch.pressures[i] = (in.getShort() & 0xffff) / 10.0;
+                batch.windSpeeds[i] = (in.getShort() & 0xffff) / 100.0;
+                batch.windDirections[i] = (in.getShort() & 0xffff) / 10.0;
+            }
+            return batch;
+        } catch (BufferUnderflowException e) {
+            throw new ForecastParseException("Truncated compact forecast", e);
+        }
+    }
+
+    /**
+     * Writes batch in the compact format, as the edge cache does.  The dates aren't written,
+     * the reader dates the days itself.
+     *
+     * @throws IllegalArgumentException if a value doesn't fit the format.
+     */
+    public static byte[] encode(ForecastBatch batch) {
+        if (batch.status != CityForecast.STATUS_OK) {
+            ByteBuffer out = ByteBuffer.allocate(MAGIC.length + 1);
+            out.put(MAGIC).put((byte) batch.status);
+            return out.array();
+        }
+
+        ArrayList<byte[]> descriptions = new ArrayList<>();
+        HashMap<String, Integer> descriptionIndex = new HashMap<>();
+        int descriptionBytes = 0;
+        for (String description : batch.descriptions) {
+            if (!descriptionIndex.containsKey(description)) {
+                byte[] bytes = description.getBytes(UTF_8);
+                descriptionIndex.put(description, descriptions.size());
+                descriptions.add(checkLength(bytes, 0xff));
+                descriptionBytes += 1 + bytes.length;
+            }
+        }
+        checkRange(descriptions.size(), 0, 0xff, "descriptions");
+        checkRange(batch.size, 0, 0xffff, "days");
+        byte[] cityName = checkLength(batch.cityName.getBytes(UTF_8), 0xffff);
+
+        ByteBuffer out = ByteBuffer.allocate(MAGIC.length + 1 + 2 + cityName.length + 8 + 1
+                + descriptionBytes + 2 + batch.size * DAY_BYTES);
+        out.put(MAGIC).put((byte) CityForecast.STATUS_OK);
+        out.putShort((short) cityName.length).put(cityName);
+        out.putInt((int) Math.round(batch.latitude * 1e6));
+        out.putInt((int) Math.round(batch.longitude * 1e6));
+        out.put((byte) descriptions.size());
+        for (byte[] description : descriptions) {
+            out.put((byte) description.length).put(description);
+        }
+        out.putShort((short) batch.size);
+        for (int i = 0; i < batch.size; i++) {
+            out.putShort((short) checkRange(batch.weatherIds[i], 0, 0xffff, "weather id"));
+            out.put((byte) (int) descriptionIndex.get(batch.descriptions[i]));
+            out.putShort((short) scale(batch.highs[i], 100, Short.MIN_VALUE, Short.MAX_VALUE,
+                    "high"));
+            out.putShort((short) scale(batch.lows[i], 100, Short.MIN_VALUE, Short.MAX_VALUE,
+                    "low"));
+            out.put((byte) checkRange(batch.humidities[i], 0, 100, "humidity"));
+            out.putShort((short) scale(batch.pressures[i], 10, 0, 0xffff, "pressure"));
+            out.putShort((short) scale(batch.windSpeeds[i], 100, 0, 0xffff, "wind speed"));
+            out.putShort((short) scale(batch.windDirections[i], 10, 0, 0xffff,
+                    "wind direction"));
+        }
+        return out.array();
+    }
+
+    private static String readString(ByteBuffer in, int length) {
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static byte[] checkLength(byte[] bytes, int max) {
+        if (bytes.length > max) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes is over "
+                    + max);
+        }
+        return bytes;
+    }
+
+    private static int checkRange(int value, int min, int max, String name) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " " + value + " is out of range");
+        }
+        return value;
+    }
+
+    private static int scale(double value, int factor, int min, int max, String name) {
+        long scaled = Math.round(value * factor);
+        if (scaled < min || scaled > max) {
+            throw new IllegalArgumentException(name + " " + value + " is out of range");
+        }
+        return (int) scaled;
+    }
+}
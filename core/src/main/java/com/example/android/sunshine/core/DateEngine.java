@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.TimeZone;
+
+/**
+ * Julian day arithmetic for forecast dates.
+ * <p>
+ * The date math only needs the offset of the default time zone, which is cached, so
+ * normalizing a date doesn't allocate.  Whoever learns that the time zone changed, the app's
+ * DateChangeReceiver on Android, calls {@link #invalidate()}.
+ */
+public final class DateEngine {
+
+    // Julian day of January 1st, 1970
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+    public static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static volatile TimeZone sTimeZone = TimeZone.getDefault();
+
+    private DateEngine() {
+    }
+
+    /**
+     * Drops the cached time zone, to be called when the time zone changes.
+     */
+    public static void invalidate() {
+        sTimeZone = TimeZone.getDefault();
+    }
+
+    /**
+     * @param millis a time in milliseconds since the epoch
+     * @return the julian day that time falls on in the default time zone
+     */
+    public static int getJulianDay(long millis) {
+        long localMillis = millis + sTimeZone.getOffset(millis);
+        long day = localMillis / DAY_IN_MILLIS;
+        if (localMillis < 0 && localMillis % DAY_IN_MILLIS != 0) {
+            day--;
+        }
+        return (int) day + EPOCH_JULIAN_DAY;
+    }
+
+    public static int getCurrentJulianDay() {
+        return getJulianDay(System.currentTimeMillis());
+    }
+
+    /**
+     * @param julianDay a julian day
+     * @return the local midnight starting that day, in milliseconds since the epoch
+     */
+    public static long getStartOfJulianDay(int julianDay) {
+        long utcMidnight = (julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+        TimeZone timeZone = sTimeZone;
+        // The offset that applies at local midnight, which may differ from the one at UTC
+        // midnight around a daylight saving transition.
+        int offset = timeZone.getOffset(utcMidnight);
+        return utcMidnight - timeZone.getOffset(utcMidnight - offset);
+    }
+
+    /**
+     * @param millis a time in milliseconds since the epoch
+     * @return the start of the local day containing that time
+     */
+    public static long normalizeDate(long millis) {
+        return getStartOfJulianDay(getJulianDay(millis));
+    }
+}
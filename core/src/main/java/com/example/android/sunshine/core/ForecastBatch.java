@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * The daily forecast of one city the way every {@link ForecastSource} hands it over, whatever
+ * the service sent: one array per field, day i at index i, in the units of {@link
+ * CityForecast.Day}.  A source fills the arrays in place, so decoding a forecast allocates a
+ * dozen objects however many days it has.
+ */
+public final class ForecastBatch {
+
+    // One of the CityForecast statuses
+    public final int status;
+    // Unless status is STATUS_OK there is no city, NaN coordinates and no days
+    public final String cityName;
+    public final double latitude;
+    public final double longitude;
+
+    public final int size;
+    public final long[] dates;
+    public final int[] weatherIds;
+    public final String[] descriptions;
+    public final double[] highs;
+    public final double[] lows;
+    public final int[] humidities;
+    public final double[] pressures;
+    public final double[] windSpeeds;
+    public final double[] windDirections;
+
+    /**
+     * A forecast of size days for the source to fill in.
+     */
+    public ForecastBatch(String cityName, double latitude, double longitude, int size) {
+        this(CityForecast.STATUS_OK, cityName, latitude, longitude, size);
+    }
+
+    private ForecastBatch(int status, String cityName, double latitude, double longitude,
+                          int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size " + size);
+        }
+        this.status = status;
+        this.cityName = cityName;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.size = size;
+        dates = new long[size];
+        weatherIds = new int[size];
+        descriptions = new String[size];
+        highs = new double[size];
+        lows = new double[size];
+        humidities = new int[size];
+        pressures = new double[size];
+        windSpeeds = new double[size];
+        windDirections = new double[size];
+    }
+
+    /**
+     * @return an answer without a forecast, status being {@link CityForecast#STATUS_NOT_FOUND}
+     * or {@link CityForecast#STATUS_SERVER_ERROR}.
+     */
+    public static ForecastBatch error(int status) {
+        if (status == CityForecast.STATUS_OK) {
+            throw new IllegalArgumentException("An error needs an error status");
+        }
+        return new ForecastBatch(status, null, Double.NaN, Double.NaN, 0);
+    }
+
+    /**
+     * @return the same forecast as a batch.
+     */
+    public static ForecastBatch of(CityForecast forecast) {
+        if (forecast.status != CityForecast.STATUS_OK) {
+            return error(forecast.status);
+        }
+        ForecastBatch batch = new ForecastBatch(forecast.cityName, forecast.latitude,
+                forecast.longitude, forecast.days.size());
+        for (int i = 0; i < batch.size; i++) {
+            CityForecast.Day day = forecast.days.get(i);
+            batch.dates[i] = day.date;
+            batch.weatherIds[i] = day.weatherId;
+            batch.descriptions[i] = day.description;
+            batch.highs[i] = day.high;
+            batch.lows[i] = day.low;
+            batch.humidities[i] = day.humidity;
+            batch.pressures[i] = day.pressure;
+            batch.windSpeeds[i] = day.windSpeed;
+            batch.windDirections[i] = day.windDirection;
+        }
+        return batch;
+    }
+}
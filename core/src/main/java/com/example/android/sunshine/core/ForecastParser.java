@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * Turns the body of a forecast response into a {@link CityForecast}.
+ */
+public interface ForecastParser {
+
+    /**
+     * @param response       the complete response body
+     * @param julianStartDay the julian day of the first forecast.  Services return daily
+     *                       forecasts in order, starting with the current day in the city's
+     *                       local time, so callers pass today and every following day is dated
+     *                       one day later.
+     * @throws ForecastParseException if the body isn't a forecast
+     */
+    CityForecast parse(String response, int julianStartDay) throws ForecastParseException;
+}
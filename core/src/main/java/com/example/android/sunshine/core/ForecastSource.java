@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * A service the sync can get daily forecasts from: how to ask it for one and how to read the
+ * answer.  Where the service is, and how the request gets there, is up to the caller.
+ * <p>
+ * {@link OwmForecastSource} talks to OpenWeatherMap, {@link CompactForecastSource} to our edge
+ * cache.  Implementations are stateless and can be shared between threads.
+ */
+public interface ForecastSource {
+
+    /**
+     * @param location the location setting, a city name or a postal code
+     * @param cityId   the service's id of the city, which is used instead of location when
+     *                 it is above 0
+     * @param days     how many days of forecast, starting today
+     * @return the request for the forecast, a path and query relative to the base URL of the
+     * service.
+     */
+    String buildRequest(String location, long cityId, int days);
+
+    /**
+     * @param body           the complete response body, of a successful response or of an
+     *                       error
+     * @param julianStartDay the julian day of the first forecast, see {@link ForecastParser}
+     * @throws ForecastParseException if the body isn't a forecast
+     */
+    ForecastBatch decode(byte[] body, int julianStartDay) throws ForecastParseException;
+}
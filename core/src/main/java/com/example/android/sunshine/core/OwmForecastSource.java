@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+
+/**
+ * OpenWeatherMap's daily forecast API, forecast/daily?mode=json, read with {@link
+ * OwmForecastParser}.
+ */
+public final class OwmForecastSource implements ForecastSource {
+
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    private static final String FORECAST_PATH = "forecast/daily";
+    private static final String QUERY_PARAM = "q";
+    private static final String CITY_ID_PARAM = "id";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mApiKey;
+
+    /**
+     * @param apiKey the key OpenWeatherMap gave the app
+     */
+    public OwmForecastSource(String apiKey) {
+        mApiKey = apiKey;
+    }
+
+    @Override
+    public String buildRequest(String location, long cityId, int days) {
+        StringBuilder request = new StringBuilder(FORECAST_PATH).append('?');
+        if (cityId > 0) {
+            appendParameter(request, CITY_ID_PARAM, Long.toString(cityId));
+        } else {
+            appendParameter(request, QUERY_PARAM, location);
+        }
+        appendParameter(request, FORMAT_PARAM, "json");
+        appendParameter(request, UNITS_PARAM, "metric");
+        appendParameter(request, DAYS_PARAM, Integer.toString(days));
+        appendParameter(request, APPID_PARAM, mApiKey);
+        return request.toString();
+    }
+
+    @Override
+    public ForecastBatch decode(byte[] body, int julianStartDay) throws ForecastParseException {
+        return ForecastBatch.of(OwmForecastParser.getInstance().parse(new String(body, UTF_8),
+                julianStartDay));
+    }
+
+    /*
+        Appends name=value, encoded, and the & before it unless it is the first.
+     */
+    static void appendParameter(StringBuilder request, String name, String value) {
+        char last = request.charAt(request.length() - 1);
+        if (last != '?') {
+            request.append('&');
+        }
+        try {
+            request.append(name).append('=').append(URLEncoder.encode(value, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // Every JVM has UTF-8
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * Groups of OpenWeatherMap condition codes, the same for every screen: each group has one icon
+ * and one piece of artwork.  The app and the watch face map the groups to their own drawables.
+ * <p>
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    public static final int CONDITION_UNKNOWN = -1;
+    public static final int CONDITION_STORM = 0;
+    public static final int CONDITION_LIGHT_RAIN = 1;
+    public static final int CONDITION_RAIN = 2;
+    public static final int CONDITION_SNOW = 3;
+    public static final int CONDITION_FOG = 4;
+    public static final int CONDITION_CLEAR = 5;
+    public static final int CONDITION_LIGHT_CLOUDS = 6;
+    public static final int CONDITION_CLOUDS = 7;
+    // Size of a table indexed by condition
+    public static final int CONDITION_COUNT = 8;
+
+    // Names of the artwork in the art pack urls, by condition
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return one of the CONDITION_ constants, {@link #CONDITION_UNKNOWN} if no relation is
+     * found.
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return CONDITION_STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return CONDITION_LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return CONDITION_RAIN;
+        } else if (weatherId == 511) {
+            return CONDITION_SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return CONDITION_RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return CONDITION_SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return CONDITION_FOG;
+        } else if (weatherId == 781) {
+            return CONDITION_STORM;
+        } else if (weatherId == 800) {
+            return CONDITION_CLEAR;
+        } else if (weatherId == 801) {
+            return CONDITION_LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CONDITION_CLOUDS;
+        }
+        return CONDITION_UNKNOWN;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the name of the artwork for the condition, as used in the art pack urls, or null
+     * if no relation is found.
+     */
+    public static String getArtName(int weatherId) {
+        int condition = getCondition(weatherId);
+        return condition == CONDITION_UNKNOWN ? null : ART_NAMES[condition];
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Display strings for temperatures, wind, pressure and humidity.
+ * <p>
+ * All of these are shown rounded to whole units, and the wind direction is one of eight compass
+ * points, so the strings a device will ever show are a small set.  Each one is built once per
+ * locale and unit system, kept in a table indexed by the rounded value and handed out again on
+ * later binds.  Values outside the tables are built in a reused StringBuilder.  Neither path
+ * goes through String.format: the resource formats are split into their literal parts when the
+ * locale is first seen, and numbers are written in the digits of the locale, like String.format
+ * does.
+ * <p>
+ * The formats come from a {@link Formats}; on Android they are the string resources.
+ */
+public final class WeatherFormatter {
+
+    // Displayed temperatures, after the conversion to Fahrenheit when needed
+    private static final int MIN_TEMPERATURE = -130;
+    private static final int MAX_TEMPERATURE = 150;
+
+    // Displayed wind speeds, in km/h or mph
+    private static final int MAX_WIND_SPEED = 200;
+
+    // hPa
+    private static final int MIN_PRESSURE = 850;
+    private static final int MAX_PRESSURE = 1100;
+
+    private static final int MAX_HUMIDITY = 100;
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    private static final String[] DIRECTIONS = {
+            "N", "NE", "E", "SE", "S", "SW", "W", "NW", "Unknown"
+    };
+    private static final int UNKNOWN_DIRECTION = DIRECTIONS.length - 1;
+
+    private static final WeatherFormatter sInstance = new WeatherFormatter();
+
+    /**
+     * The localized format strings, in the syntax of String.format.  Read again whenever the
+     * default locale changes.
+     */
+    public interface Formats {
+        // %1.0f°
+        String getTemperatureFormat();
+
+        // %1$1.0f km/h %2$s
+        String getWindKmhFormat();
+
+        String getWindMphFormat();
+
+        // %1.0f hPa
+        String getPressureFormat();
+
+        // %1.0f %%
+        String getHumidityFormat();
+
+        // description, high, low
+        String getNotificationFormat();
+    }
+
+    private final StringBuilder mBuilder = new StringBuilder(32);
+
+    private Locale mLocale;
+    // '0' in the digits of the locale
+    private char mZeroDigit;
+    private Template mTemperatureFormat;
+    private Template mWindKmhFormat;
+    private Template mWindMphFormat;
+    private Template mPressureFormat;
+    private Template mHumidityFormat;
+    private Template mNotificationFormat;
+
+    // [metric ? 1 : 0][value - min]
+    private String[][] mTemperatures;
+    // [metric ? 1 : 0][speed][direction]
+    private String[][][] mWinds;
+    private String[] mPressures;
+    private String[] mHumidities;
+
+    public static WeatherFormatter getInstance() {
+        return sInstance;
+    }
+
+    private WeatherFormatter() {
+    }
+
+    /**
+     * @param temperature the temperature in Celsius, as stored in the database
+     * @param isMetric    false to show the temperature in Fahrenheit
+     * @return the temperature rounded to the degree, e.g "21°"
+     */
+    public synchronized String formatTemperature(Formats formats, double temperature,
+                                                 boolean isMetric) {
+        ensureLocale(formats);
+        if (!isMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        long rounded = round(temperature);
+        if (rounded < MIN_TEMPERATURE || rounded > MAX_TEMPERATURE) {
+            return build(mTemperatureFormat, rounded, null);
+        }
+        String[] table = mTemperatures[isMetric ? 1 : 0];
+        int index = (int) rounded - MIN_TEMPERATURE;
+        if (null == table[index]) {
+            table[index] = build(mTemperatureFormat, rounded, null);
+        }
+        return table[index];
+    }
+
+    /**
+     * @param windSpeed the wind speed in km/h, as stored in the database
+     * @param degrees   meteorological wind direction in degrees
+     * @param isMetric  false to show the speed in mph
+     * @return the speed and compass direction, e.g "12 km/h NW"
+     */
+    public synchronized String formatWind(Formats formats, float windSpeed, float degrees,
+                                          boolean isMetric) {
+        ensureLocale(formats);
+        Template format = mWindKmhFormat;
+        if (!isMetric) {
+            format = mWindMphFormat;
+            windSpeed = KMH_TO_MPH * windSpeed;
+        }
+        long rounded = round(windSpeed);
+        int direction = getDirection(degrees);
+        if (rounded < 0 || rounded > MAX_WIND_SPEED) {
+            return build(format, rounded, DIRECTIONS[direction]);
+        }
+        String[][] table = mWinds[isMetric ? 1 : 0];
+        int index = (int) rounded;
+        if (null == table[index]) {
+            table[index] = new String[DIRECTIONS.length];
+        }
+        if (null == table[index][direction]) {
+            table[index][direction] = build(format, rounded, DIRECTIONS[direction]);
+        }
+        return table[index][direction];
+    }
+
+    /**
+     * @param pressure the pressure in hPa
+     * @return the pressure rounded to the hPa, e.g "1013 hPa"
+     */
+    public synchronized String formatPressure(Formats formats, float pressure) {
+        ensureLocale(formats);
+        long rounded = round(pressure);
+        if (rounded < MIN_PRESSURE || rounded > MAX_PRESSURE) {
+            return build(mPressureFormat, rounded, null);
+        }
+        int index = (int) rounded - MIN_PRESSURE;
+        if (null == mPressures[index]) {
+            mPressures[index] = build(mPressureFormat, rounded, null);
+        }
+        return mPressures[index];
+    }
+
+    /**
+     * @param humidity the relative humidity in percent
+     * @return the humidity rounded to the percent, e.g "85 %"
+     */
+    public synchronized String formatHumidity(Formats formats, float humidity) {
+        ensureLocale(formats);
+        long rounded = round(humidity);
+        if (rounded < 0 || rounded > MAX_HUMIDITY) {
+            return build(mHumidityFormat, rounded, null);
+        }
+        int index = (int) rounded;
+        if (null == mHumidities[index]) {
+            mHumidities[index] = build(mHumidityFormat, rounded, null);
+        }
+        return mHumidities[index];
+    }
+
+    /**
+     * @return the text of the daily forecast notification
+     */
+    public synchronized String formatNotification(Formats formats, String description,
+                                                  String high, String low) {
+        ensureLocale(formats);
+        mBuilder.setLength(0);
+        mNotificationFormat.append(mBuilder, 0, mZeroDigit, description, high, low);
+        return mBuilder.toString();
+    }
+
+    private String build(Template format, long number, String text) {
+        mBuilder.setLength(0);
+        format.append(mBuilder, number, mZeroDigit, null, text);
+        return mBuilder.toString();
+    }
+
+    /*
+        Reads the format strings again and drops every table when the locale changed, since
+        both the formats and the strings built from them are localized.
+     */
+    private void ensureLocale(Formats formats) {
+        Locale locale = Locale.getDefault();
+        if (locale == mLocale) {
+            return;
+        }
+        mTemperatureFormat = new Template(formats.getTemperatureFormat());
+        mWindKmhFormat = new Template(formats.getWindKmhFormat());
+        mWindMphFormat = new Template(formats.getWindMphFormat());
+        mPressureFormat = new Template(formats.getPressureFormat());
+        mHumidityFormat = new Template(formats.getHumidityFormat());
+        mNotificationFormat = new Template(formats.getNotificationFormat());
+        mZeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+
+        mTemperatures = new String[2][MAX_TEMPERATURE - MIN_TEMPERATURE + 1];
+        mWinds = new String[2][MAX_WIND_SPEED + 1][];
+        mPressures = new String[MAX_PRESSURE - MIN_PRESSURE + 1];
+        mHumidities = new String[MAX_HUMIDITY + 1];
+        mLocale = locale;
+    }
+
+    /*
+        Rounds half away from zero, like the %1.0f in the resource formats.
+     */
+    static long round(double value) {
+        return value < 0 ? -(long) Math.floor(-value + 0.5) : (long) Math.floor(value + 0.5);
+    }
+
+    /*
+        From wind direction in degrees, determine the compass direction (e.g NW).  Anything
+        below 22.5, negative degrees included, is N.  Only NaN is unknown.
+     */
+    static int getDirection(float degrees) {
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return 0;
+        } else if (degrees >= 22.5) {
+            return (int) ((degrees + 22.5f) / 45f);
+        }
+        return UNKNOWN_DIRECTION;
+    }
+
+    /*
+        A resource format string split at its placeholders.  Numeric placeholders (%1.0f, %d)
+        are filled with the rounded number, %s placeholders with the text argument at the same
+        position.
+     */
+    private static final class Template {
+        final String[] mLiterals;
+        final int[] mArguments;
+        final boolean[] mNumeric;
+
+        Template(String format) {
+            ArrayList<String> literals = new ArrayList<>();
+            ArrayList<Integer> arguments = new ArrayList<>();
+            ArrayList<Boolean> numeric = new ArrayList<>();
+
+            StringBuilder literal = new StringBuilder();
+            int nextArgument = 1;
+            int i = 0;
+            while (i < format.length()) {
+                char c = format.charAt(i++);
+                if (c != '%' || i == format.length()) {
+                    literal.append(c);
+                    continue;
+                }
+                // %[argument$][flags][width][.precision]conversion
+                int start = i;
+                int argument = 0;
+                while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                    argument = argument * 10 + format.charAt(i++) - '0';
+                }
+                if (i < format.length() && format.charAt(i) == '$') {
+                    i++;
+                } else {
+                    argument = 0;
+                    i = start;
+                }
+                while (i < format.length() && "-#+ 0,(.".indexOf(format.charAt(i)) >= 0
+                        || i < format.length() && Character.isDigit(format.charAt(i))) {
+                    i++;
+                }
+                if (i == format.length()) {
+                    literal.append(format, start - 1, i);
+                    break;
+                }
+                char conversion = format.charAt(i++);
+                if (conversion == '%') {
+                    literal.append('%');
+                } else if (conversion == 'n') {
+                    literal.append('\n');
+                } else {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    arguments.add(argument > 0 ? argument : nextArgument++);
+                    numeric.add(conversion != 's' && conversion != 'S');
+                }
+            }
+            literals.add(literal.toString());
+
+            mLiterals = literals.toArray(new String[literals.size()]);
+            mArguments = new int[arguments.size()];
+            mNumeric = new boolean[numeric.size()];
+            for (int j = 0; j < mArguments.length; j++) {
+                mArguments[j] = arguments.get(j);
+                mNumeric[j] = numeric.get(j);
+            }
+        }
+
+        void append(StringBuilder builder, long number, char zeroDigit, String... texts) {
+            for (int i = 0; i < mArguments.length; i++) {
+                builder.append(mLiterals[i]);
+                if (mNumeric[i]) {
+                    int start = builder.length();
+                    builder.append(number);
+                    if (zeroDigit != '0') {
+                        for (int j = start; j < builder.length(); j++) {
+                            char c = builder.charAt(j);
+                            if (c >= '0' && c <= '9') {
+                                builder.setCharAt(j, (char) (zeroDigit + c - '0'));
+                            }
+                        }
+                    }
+                } else {
+                    int index = mArguments[i] - 1;
+                    builder.append(index < texts.length ? texts[index] : null);
+                }
+            }
+            builder.append(mLiterals[mLiterals.length - 1]);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * The weather database's tables and the SQL the app runs on them, as plain strings.
+ * <p>
+ * The app's WeatherDbHelper creates the database from these statements and WeatherStore
+ * reads and writes it with them; WeatherContract publishes the names.  Keeping them free of
+ * Android lets the benchmarks run the very same SQL on a workstation.
+ */
+public final class WeatherSchema {
+
+    public static final String COLUMN_ID = "_id";
+
+    /**
+     * The locations weather is stored for.
+     */
+    public static final class LocationTable {
+        public static final String TABLE_NAME = "location";
+
+        // The location setting string is what will be sent to openweathermap as the location query
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+        // Name string more readable tha the zip code
+        public static final String COLUMN_CITY_NAME = "city_name";
+        // pinpoint location on the map
+        public static final String COLUMN_COORD_LAT = "coord_lat";
+        public static final String COLUMN_COORD_LONG = "coord_long";
+
+        private LocationTable() {
+        }
+    }
+
+    /**
+     * One row per location and day.
+     */
+    public static final class WeatherTable {
+        public static final String TABLE_NAME = "weather";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Date, stored as long in milliseconds since the epoch
+        public static final String COLUMN_DATE = "date";
+        // Weather id as returned by API, to identify the icon to be used
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // Short description of the weather, as provided by API, e.g "clear"
+        public static final String COLUMN_SHORT_DESC = "short_desc";
+        // Min and max temperatures for the day (stored as floats)
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Humidity is stored as a float representing percentage
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        // Windspeed is stored as a float representing windspeed  mph
+        public static final String COLUMN_WIND_SPEED = "wind";
+        // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
+        public static final String COLUMN_DEGREES = "degrees";
+
+        public static final String LOCATION_INDEX = "weather_location_date";
+
+        private WeatherTable() {
+        }
+    }
+
+    /**
+     * One summary row per location and week, for weather older than the history preference.
+     */
+    public static final class RollupTable {
+        public static final String TABLE_NAME = "weather_rollup";
+
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // First day of the week (Monday, UTC), stored as long in milliseconds since the epoch
+        public static final String COLUMN_WEEK_START = "week_start";
+        // Lowest min and highest max temperature of the week
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Mean of the daily (min + max) / 2 temperatures
+        public static final String COLUMN_MEAN_TEMP = "mean";
+        // The weather id that occurred on most days of the week
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // Number of daily rows folded into this one
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        private RollupTable() {
+        }
+    }
+
+    /**
+     * When the forecast stored for a location was issued, so a pushed delta older than what a
+     * sync or an earlier delta wrote is dropped.  One row per location.
+     */
+    public static final class IssuedTable {
+        public static final String TABLE_NAME = "location_issued";
+
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Issue time of the newest forecast written, in milliseconds since the epoch of the
+        // server clock.  A sync counts as issued when the server answered it.
+        public static final String COLUMN_ISSUED = "issued";
+
+        private IssuedTable() {
+        }
+    }
+
+    // Number of days stored for a location from the summary day on, in the today summary
+    public static final String COLUMN_FORECAST_DAYS = "forecast_days";
+
+    public static final String CREATE_LOCATION_TABLE = "CREATE TABLE " +
+            LocationTable.TABLE_NAME + " (" +
+            COLUMN_ID + " INTEGER PRIMARY KEY," +
+            LocationTable.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+            LocationTable.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+            LocationTable.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+            LocationTable.COLUMN_COORD_LONG + " REAL NOT NULL);";
+
+    public static final String CREATE_WEATHER_TABLE = "CREATE TABLE " +
+            WeatherTable.TABLE_NAME + " (" +
+            // Why AutoIncrement here, and not above?
+            // Unique keys will be auto-generated in either case.  But for weather
+            // forecasting, it's reasonable to assume the user will want information
+            // for a certain date and all dates *following*, so the forecast data
+            // should be sorted accordingly.
+            COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+
+            // the ID of the location entry associated with this weather data
+            WeatherTable.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherTable.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherTable.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            WeatherTable.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+            WeatherTable.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            WeatherTable.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+            WeatherTable.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            WeatherTable.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            WeatherTable.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            WeatherTable.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+            // Set up the location column as a foreign key to location table.
+            " FOREIGN KEY (" + WeatherTable.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationTable.TABLE_NAME + " (" + COLUMN_ID + "), " +
+
+            // To assure the application have just one weather entry per day
+            // per location, it's created a UNIQUE constraint with REPLACE strategy
+            " UNIQUE (" + WeatherTable.COLUMN_DATE + ", " +
+            WeatherTable.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+
+    // The unique constraint leads with the date, which doesn't help the queries of one
+    // location from a date on: the forecast, and the day count of the today summary.
+    public static final String CREATE_WEATHER_LOCATION_INDEX = "CREATE INDEX " +
+            WeatherTable.LOCATION_INDEX + " ON " + WeatherTable.TABLE_NAME + " (" +
+            WeatherTable.COLUMN_LOC_KEY + ", " + WeatherTable.COLUMN_DATE + ");";
+
+    // Same columns, but clustered on (location_id, date) instead of on an autoincrement
+    // _id, which saves the separate unique index and keeps a location's history together.
+    // WITHOUT ROWID tables need SQLite 3.8.2.
+    public static final String CREATE_CLUSTERED_WEATHER_TABLE = "CREATE TABLE " +
+            WeatherTable.TABLE_NAME + " (" +
+            COLUMN_ID + " INTEGER NOT NULL," +
+
+            WeatherTable.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherTable.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherTable.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            WeatherTable.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+            WeatherTable.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            WeatherTable.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+            WeatherTable.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            WeatherTable.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            WeatherTable.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            WeatherTable.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+            " FOREIGN KEY (" + WeatherTable.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationTable.TABLE_NAME + " (" + COLUMN_ID + "), " +
+
+            // The primary key doubles as the one-entry-per-day-per-location constraint
+            " PRIMARY KEY (" + WeatherTable.COLUMN_LOC_KEY + ", " +
+            WeatherTable.COLUMN_DATE + ") ON CONFLICT REPLACE) WITHOUT ROWID;";
+
+    public static final String CREATE_ROLLUP_TABLE = "CREATE TABLE " +
+            RollupTable.TABLE_NAME + " (" +
+            COLUMN_ID + " INTEGER PRIMARY KEY," +
+            RollupTable.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            RollupTable.COLUMN_WEEK_START + " INTEGER NOT NULL, " +
+            RollupTable.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            RollupTable.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+            RollupTable.COLUMN_MEAN_TEMP + " REAL NOT NULL, " +
+            RollupTable.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+            RollupTable.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+
+            " FOREIGN KEY (" + RollupTable.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationTable.TABLE_NAME + " (" + COLUMN_ID + "), " +
+
+            // One summary per location and week
+            " UNIQUE (" + RollupTable.COLUMN_LOC_KEY + ", " +
+            RollupTable.COLUMN_WEEK_START + ") ON CONFLICT REPLACE);";
+
+    public static final String CREATE_ISSUED_TABLE = "CREATE TABLE " +
+            IssuedTable.TABLE_NAME + " (" +
+            IssuedTable.COLUMN_LOC_KEY + " INTEGER PRIMARY KEY, " +
+            IssuedTable.COLUMN_ISSUED + " INTEGER NOT NULL, " +
+
+            " FOREIGN KEY (" + IssuedTable.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationTable.TABLE_NAME + " (" + COLUMN_ID + "));";
+
+    private static final long DAY_IN_MILLIS = DateEngine.DAY_IN_MILLIS;
+    public static final long WEEK_IN_MILLIS = 7 * DAY_IN_MILLIS;
+
+    //weather INNER JOIN location ON weather.location_id = location._id
+    public static final String WEATHER_JOIN_LOCATION =
+            WeatherTable.TABLE_NAME + " INNER JOIN " + LocationTable.TABLE_NAME +
+                    " ON " + WeatherTable.TABLE_NAME + "." + WeatherTable.COLUMN_LOC_KEY +
+                    " = " + LocationTable.TABLE_NAME + "." + COLUMN_ID;
+
+    //location.location_setting = ?
+    public static final String LOCATION_SETTING_SELECTION =
+            LocationTable.TABLE_NAME + "." + LocationTable.COLUMN_LOCATION_SETTING + " = ? ";
+
+    //location.location_setting = ? AND date >= ?
+    public static final String LOCATION_SETTING_WITH_START_DATE_SELECTION =
+            LocationTable.TABLE_NAME + "." + LocationTable.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherTable.COLUMN_DATE + " >= ? ";
+
+    //location.location_setting = ? AND date = ?
+    public static final String LOCATION_SETTING_AND_DAY_SELECTION =
+            LocationTable.TABLE_NAME + "." + LocationTable.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherTable.COLUMN_DATE + " = ? ";
+
+    //location_setting = ?, on the location table alone
+    public static final String LOCATION_ID_SELECTION =
+            LocationTable.COLUMN_LOCATION_SETTING + " = ?";
+
+    //location_id = ?, on the issued table
+    public static final String ISSUED_SELECTION = IssuedTable.COLUMN_LOC_KEY + " = ?";
+
+    //location_id NOT IN (SELECT _id FROM location), issue times left by deleted locations
+    public static final String ORPHAN_ISSUED_SELECTION = IssuedTable.COLUMN_LOC_KEY +
+            " NOT IN (SELECT " + COLUMN_ID + " FROM " + LocationTable.TABLE_NAME + ")";
+
+    //date <= ?, the rows a sync prunes
+    public static final String PRUNE_SELECTION = WeatherTable.COLUMN_DATE + " <= ?";
+
+    //location_id = ? AND date >= ? AND date < ?
+    public static final String LOCATION_AND_DATE_RANGE_SELECTION =
+            WeatherTable.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherTable.COLUMN_DATE + " >= ? AND " +
+                    WeatherTable.COLUMN_DATE + " < ? ";
+
+    public static final String BATCH_SORT_ORDER =
+            LocationTable.TABLE_NAME + "." + LocationTable.COLUMN_LOCATION_SETTING + " ASC, " +
+                    WeatherTable.COLUMN_DATE + " ASC";
+
+    // The Monday (UTC) starting the week of weather.date.  The epoch was a Thursday, hence + 3.
+    private static final String WEEK_START_EXPRESSION =
+            "((" + WeatherTable.COLUMN_DATE + " / " + DAY_IN_MILLIS + ") - ((" +
+                    WeatherTable.COLUMN_DATE + " / " + DAY_IN_MILLIS + " + 3) % 7)) * " +
+                    DAY_IN_MILLIS;
+
+    //SELECT location_id, <week start> AS week_start, MIN(min), MAX(max), AVG((min + max) / 2),
+    //COUNT(*) FROM weather WHERE date < ? GROUP BY location_id, week_start
+    //HAVING week_start + <one week> <= ? ORDER BY location_id, week_start LIMIT ?
+    //Only weeks that lie entirely before the cutoff qualify, so a week is always folded whole.
+    public static final String COMPACT_WEEKS_QUERY =
+            "SELECT " + WeatherTable.COLUMN_LOC_KEY + ", " +
+                    WEEK_START_EXPRESSION + " AS " + RollupTable.COLUMN_WEEK_START + ", " +
+                    "MIN(" + WeatherTable.COLUMN_MIN_TEMP + "), " +
+                    "MAX(" + WeatherTable.COLUMN_MAX_TEMP + "), " +
+                    "AVG((" + WeatherTable.COLUMN_MIN_TEMP + " + " +
+                    WeatherTable.COLUMN_MAX_TEMP + ") / 2), " +
+                    "COUNT(*) FROM " + WeatherTable.TABLE_NAME +
+                    " WHERE " + WeatherTable.COLUMN_DATE + " < ?" +
+                    " GROUP BY " + WeatherTable.COLUMN_LOC_KEY + ", " +
+                    RollupTable.COLUMN_WEEK_START +
+                    " HAVING " + RollupTable.COLUMN_WEEK_START + " + " +
+                    WEEK_IN_MILLIS + " <= ?" +
+                    " ORDER BY " + WeatherTable.COLUMN_LOC_KEY + ", " +
+                    RollupTable.COLUMN_WEEK_START +
+                    " LIMIT ?";
+
+    //Every location, left joined with its weather on the summary day, with the number of days
+    //stored from that day on.  The two ? are both the summary day.
+    public static final String TODAY_SUMMARY_TABLE = "(SELECT " +
+            LocationTable.TABLE_NAME + "." + COLUMN_ID + " AS " + COLUMN_ID + ", " +
+            LocationTable.COLUMN_LOCATION_SETTING + ", " +
+            LocationTable.COLUMN_CITY_NAME + ", " +
+            LocationTable.COLUMN_COORD_LAT + ", " +
+            LocationTable.COLUMN_COORD_LONG + ", " +
+            WeatherTable.COLUMN_DATE + ", " +
+            WeatherTable.COLUMN_WEATHER_ID + ", " +
+            WeatherTable.COLUMN_SHORT_DESC + ", " +
+            WeatherTable.COLUMN_MAX_TEMP + ", " +
+            WeatherTable.COLUMN_MIN_TEMP + ", " +
+            "(SELECT COUNT(*) FROM " + WeatherTable.TABLE_NAME + " AS f WHERE f." +
+            WeatherTable.COLUMN_LOC_KEY + " = " +
+            LocationTable.TABLE_NAME + "." + COLUMN_ID +
+            " AND f." + WeatherTable.COLUMN_DATE + " >= ?) AS " + COLUMN_FORECAST_DAYS +
+            " FROM " + LocationTable.TABLE_NAME +
+            " LEFT JOIN " + WeatherTable.TABLE_NAME + " ON " +
+            WeatherTable.TABLE_NAME + "." + WeatherTable.COLUMN_LOC_KEY +
+            " = " + LocationTable.TABLE_NAME + "." + COLUMN_ID +
+            " AND " + WeatherTable.TABLE_NAME + "." + WeatherTable.COLUMN_DATE + " = ?)";
+
+    // clusteredWeatherId in SQL, on the columns of the row
+    private static final String CLUSTERED_ID_EXPRESSION =
+            "((" + WeatherTable.COLUMN_LOC_KEY + " << 24) | ((" +
+                    WeatherTable.COLUMN_DATE + " / " + DAY_IN_MILLIS +
+                    ") & " + 0xFFFFFF + "))";
+
+    // Sets the _id of every clustered weather row whose key columns moved since it was derived
+    public static final String REDERIVE_CLUSTERED_IDS =
+            "UPDATE " + WeatherTable.TABLE_NAME + " SET " +
+                    COLUMN_ID + " = " + CLUSTERED_ID_EXPRESSION +
+                    " WHERE " + COLUMN_ID + " != " + CLUSTERED_ID_EXPRESSION;
+
+    private WeatherSchema() {
+    }
+
+    /**
+     * @param clustered whether the weather table has the clustered layout
+     * @return the statements creating an empty database, in order.
+     */
+    public static String[] getCreateStatements(boolean clustered) {
+        if (clustered) {
+            // The primary key is the location index already
+            return new String[]{CREATE_LOCATION_TABLE, CREATE_CLUSTERED_WEATHER_TABLE,
+                    CREATE_ROLLUP_TABLE, CREATE_ISSUED_TABLE};
+        }
+        return new String[]{CREATE_LOCATION_TABLE, CREATE_WEATHER_TABLE,
+                CREATE_WEATHER_LOCATION_INDEX, CREATE_ROLLUP_TABLE, CREATE_ISSUED_TABLE};
+    }
+
+    /**
+     * @return the tables of the database, in the order they are dropped.
+     */
+    public static String[] getTableNames() {
+        return new String[]{LocationTable.TABLE_NAME, WeatherTable.TABLE_NAME,
+                RollupTable.TABLE_NAME, IssuedTable.TABLE_NAME};
+    }
+
+    /**
+     * The _id of a clustered weather row: location id in the high bits, day since the epoch in
+     * the low 24.
+     */
+    public static long clusteredWeatherId(long locationId, long date) {
+        return (locationId << 24) | ((date / DAY_IN_MILLIS) & 0xFFFFFF);
+    }
+
+    //location.location_setting IN (?, ...) AND date >= ? AND date <= ?
+    public static String buildBatchSelection(int locationCount) {
+        StringBuilder selection = new StringBuilder(LocationTable.TABLE_NAME)
+                .append('.').append(LocationTable.COLUMN_LOCATION_SETTING)
+                .append(" IN (");
+        for (int i = 0; i < locationCount; i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        return selection.append(") AND ")
+                .append(WeatherTable.COLUMN_DATE).append(" >= ? AND ")
+                .append(WeatherTable.COLUMN_DATE).append(" <= ?").toString();
+    }
+
+    /**
+     * The selection of a location row whose columns differ from the given values, so a sync
+     * of an unchanged location writes nothing:
+     * <pre>_id = ? AND (column IS NOT ? OR ...)</pre>
+     * Its arguments are the id, then one value per column.
+     */
+    public static String buildLocationChangedSelection(String[] columns) {
+        StringBuilder selection = new StringBuilder(COLUMN_ID).append(" = ? AND (");
+        for (int i = 0; i < columns.length; i++) {
+            selection.append(i == 0 ? "" : " OR ").append(columns[i]).append(" IS NOT ?");
+        }
+        return selection.append(')').toString();
+    }
+}
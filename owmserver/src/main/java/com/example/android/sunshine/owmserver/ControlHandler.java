@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.owmserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Changes the faults of a running server and reports what it has served, so a test run can
+ * switch scenarios without restarting it:
+ * <pre>
+ *   GET /control                               the settings and counters
+ *   GET /control?latency=500&amp;error-rate=0.1  changes settings, as named in OwmServer
+ *   GET /control?reset                         a well-behaved server again, counters at 0
+ * </pre>
+ */
+final class ControlHandler implements HttpHandler {
+
+    static final String PATH = "/control";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Faults mFaults;
+    private final ForecastHandler mForecasts;
+
+    ControlHandler(Faults faults, ForecastHandler forecasts) {
+        mFaults = faults;
+        mForecasts = forecasts;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            int status = 200;
+            String message = "";
+            Map<String, String> params =
+                    ForecastHandler.parseQuery(exchange.getRequestURI().getRawQuery());
+            try {
+                if (params.containsKey("reset")) {
+                    params.remove("reset");
+                    mFaults.reset();
+                    resetCounters();
+                }
+                for (Map.Entry<String, String> param : params.entrySet()) {
+                    mFaults.set(param.getKey(), param.getValue());
+                }
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                message = e.getMessage() + "\n";
+            }
+
+            byte[] body = (message + mFaults + getCounters()).getBytes(UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String getCounters() {
+        return "requests=" + mForecasts.mRequests.get()
+                + "\nnot-modified=" + mForecasts.mNotModified.get()
+                + "\nnot-found=" + mForecasts.mNotFound.get()
+                + "\nerrors=" + mForecasts.mErrors.get()
+                + "\ntruncated=" + mForecasts.mTruncated.get()
+                + "\nbytes-sent=" + mForecasts.mBytesSent.get() + "\n";
+    }
+
+    private void resetCounters() {
+        mForecasts.mRequests.set(0);
+        mForecasts.mNotModified.set(0);
+        mForecasts.mNotFound.set(0);
+        mForecasts.mErrors.set(0);
+        mForecasts.mTruncated.set(0);
+        mForecasts.mBytesSent.set(0);
+    }
+}
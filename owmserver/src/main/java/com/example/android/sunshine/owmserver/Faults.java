@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.owmserver;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * How the server misbehaves.  Set from the command line when it starts and changed while it
+ * runs through the control endpoint, under the same names, so one server can go through
+ * several scenarios of a test run.
+ */
+final class Faults {
+
+    // Added to every response before the headers are sent
+    private long mLatencyMs;
+    // Up to this much more, picked at random for every response
+    private long mJitterMs;
+    // Body bytes per second, 0 for as fast as possible
+    private int mBandwidth;
+    // Share of responses answered with mErrorStatus instead
+    private double mErrorRate;
+    private int mErrorStatus = 503;
+    // Share of responses whose body is cut off halfway
+    private double mTruncateRate;
+    private boolean mGzip = true;
+    private boolean mEtag = true;
+
+    private final Random mRandom;
+
+    Faults(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Changes one setting.
+     *
+     * @throws IllegalArgumentException if there is no such setting or the value doesn't fit it.
+     */
+    synchronized void set(String name, String value) {
+        try {
+            switch (name) {
+                case "latency":
+                    mLatencyMs = checkNotNegative(name, Long.parseLong(value));
+                    break;
+                case "jitter":
+                    mJitterMs = checkNotNegative(name, Long.parseLong(value));
+                    break;
+                case "bandwidth":
+                    mBandwidth = (int) checkNotNegative(name, Integer.parseInt(value));
+                    break;
+                case "error-rate":
+                    mErrorRate = checkRate(name, Double.parseDouble(value));
+                    break;
+                case "error-status":
+                    int status = Integer.parseInt(value);
+                    if (status < 400 || status > 599) {
+                        throw new IllegalArgumentException("error-status must be 4xx or 5xx");
+                    }
+                    mErrorStatus = status;
+                    break;
+                case "truncate-rate":
+                    mTruncateRate = checkRate(name, Double.parseDouble(value));
+                    break;
+                case "gzip":
+                    mGzip = Boolean.parseBoolean(value);
+                    break;
+                case "etag":
+                    mEtag = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + name + ": " + value);
+        }
+    }
+
+    /**
+     * Puts every setting back to a well-behaved server.
+     */
+    synchronized void reset() {
+        mLatencyMs = 0;
+        mJitterMs = 0;
+        mBandwidth = 0;
+        mErrorRate = 0;
+        mErrorStatus = 503;
+        mTruncateRate = 0;
+        mGzip = true;
+        mEtag = true;
+    }
+
+    synchronized long nextLatencyMs() {
+        return mLatencyMs + (mJitterMs > 0 ? (long) (mRandom.nextDouble() * mJitterMs) : 0);
+    }
+
+    /**
+     * @return the status to fail the next response with, or 0 to answer it.
+     */
+    synchronized int nextErrorStatus() {
+        return mErrorRate > 0 && mRandom.nextDouble() < mErrorRate ? mErrorStatus : 0;
+    }
+
+    synchronized boolean nextTruncated() {
+        return mTruncateRate > 0 && mRandom.nextDouble() < mTruncateRate;
+    }
+
+    synchronized int getBandwidth() {
+        return mBandwidth;
+    }
+
+    synchronized boolean isGzipEnabled() {
+        return mGzip;
+    }
+
+    synchronized boolean isEtagEnabled() {
+        return mEtag;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "latency=%d\njitter=%d\nbandwidth=%d\nerror-rate=%s\n"
+                        + "error-status=%d\ntruncate-rate=%s\ngzip=%b\netag=%b\n",
+                mLatencyMs, mJitterMs, mBandwidth, mErrorRate, mErrorStatus, mTruncateRate,
+                mGzip, mEtag);
+    }
+
+    private static long checkNotNegative(String name, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " can't be negative");
+        }
+        return value;
+    }
+
+    private static double checkRate(String name, double value) {
+        if (!(value >= 0 && value <= 1)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.owmserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The forecasts the server knows, as forecast/daily response bodies.
+ * <p>
+ * Recorded responses are replayed as they are, found by their file name, "london.json" for
+ * q=London, or by the city id in them.  The bundled ones are in resources/fixtures, more can
+ * be added from a directory.  Besides those there are the synthetic cities "city-0" to
+ * "city-(n-1)", also found by id, SYNTHETIC_ID_BASE plus the index.  Their forecasts are made
+ * up but depend only on the city, the date and the seed, so every request for the same day
+ * gets the same body, and the same ETag.
+ */
+final class ForecastCatalog {
+
+    static final String SYNTHETIC_PREFIX = "city-";
+    // Above OpenWeatherMap's own city ids
+    static final long SYNTHETIC_ID_BASE = 90000000L;
+
+    // OpenWeatherMap's defaults; it caps cnt at 16, the server allows a year for load tests
+    static final int DEFAULT_DAYS = 7;
+    static final int MAX_DAYS = 365;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] BUNDLED_FIXTURES = {"london"};
+    // The city comes first in a response, so the first id is the city's
+    private static final Pattern CITY_ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    private static final long DAY_IN_SECONDS = 24 * 60 * 60;
+
+    // weather id, main, description, icon
+    private static final String[][] CONDITIONS = {
+            {"200", "Thunderstorm", "thunderstorm with light rain", "11d"},
+            {"301", "Drizzle", "drizzle", "09d"},
+            {"500", "Rain", "light rain", "10d"},
+            {"502", "Rain", "heavy intensity rain", "10d"},
+            {"601", "Snow", "snow", "13d"},
+            {"741", "Fog", "fog", "50d"},
+            {"800", "Clear", "sky is clear", "01d"},
+            {"801", "Clouds", "few clouds", "02d"},
+            {"803", "Clouds", "broken clouds", "04d"},
+            {"804", "Clouds", "overcast clouds", "04d"}
+    };
+
+    private final int mCityCount;
+    // Days of every synthetic forecast, 0 to go by the request's cnt
+    private final int mDays;
+    private final long mSeed;
+    private final Map<String, byte[]> mFixturesByName = new HashMap<>();
+    private final Map<Long, byte[]> mFixturesById = new HashMap<>();
+
+    ForecastCatalog(int cityCount, int days, long seed) {
+        if (cityCount < 0) {
+            throw new IllegalArgumentException("cities can't be negative");
+        }
+        if (days < 0 || days > MAX_DAYS) {
+            throw new IllegalArgumentException(
+                    "days must be between 0, for cnt, and " + MAX_DAYS);
+        }
+        mCityCount = cityCount;
+        mDays = days;
+        mSeed = seed;
+    }
+
+    void addBundledFixtures() throws IOException {
+        for (String name : BUNDLED_FIXTURES) {
+            InputStream in = ForecastCatalog.class.getResourceAsStream(
+                    "/fixtures/" + name + ".json");
+            if (null == in) {
+                throw new IOException("Missing bundled fixture " + name);
+            }
+            addFixture(name, readFully(in));
+        }
+    }
+
+    /**
+     * Adds every .json file of dir, named after the city it is for.
+     */
+    void addFixtures(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (null == files) {
+            throw new IOException("Not a directory: " + dir);
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && name.endsWith(".json")) {
+                addFixture(name.substring(0, name.length() - ".json".length()),
+                        readFully(new FileInputStream(file)));
+            }
+        }
+    }
+
+    private void addFixture(String name, byte[] body) {
+        mFixturesByName.put(normalize(name), body);
+        Matcher matcher = CITY_ID.matcher(new String(body, UTF_8));
+        if (matcher.find()) {
+            mFixturesById.put(Long.parseLong(matcher.group(1)), body);
+        }
+    }
+
+    int getFixtureCount() {
+        return mFixturesByName.size();
+    }
+
+    /**
+     * Finds the forecast of the city named by query, or by cityId if query is null.
+     *
+     * @param days     the cnt of the request, synthetic forecasts have that many days unless
+     *                 the catalog was given a fixed number.
+     * @param imperial whether synthetic temperatures are in Fahrenheit.
+     * @return the response body, or null for an unknown city.
+     */
+    byte[] getForecast(String query, long cityId, int days, boolean imperial) {
+        int index;
+        if (null != query) {
+            String name = normalize(query);
+            byte[] fixture = mFixturesByName.get(name);
+            if (null != fixture) {
+                return fixture;
+            }
+            index = parseSyntheticIndex(name);
+        } else {
+            byte[] fixture = mFixturesById.get(cityId);
+            if (null != fixture) {
+                return fixture;
+            }
+            index = cityId >= SYNTHETIC_ID_BASE && cityId - SYNTHETIC_ID_BASE < mCityCount
+                    ? (int) (cityId - SYNTHETIC_ID_BASE) : -1;
+        }
+        if (index < 0) {
+            return null;
+        }
+        int count = mDays > 0 ? mDays : Math.max(1, Math.min(days, MAX_DAYS));
+        long today = System.currentTimeMillis() / 1000 / DAY_IN_SECONDS;
+        return buildForecast(index, today, count, imperial).getBytes(UTF_8);
+    }
+
+    private int parseSyntheticIndex(String name) {
+        if (!name.startsWith(SYNTHETIC_PREFIX)) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(name.substring(SYNTHETIC_PREFIX.length()));
+            return index >= 0 && index < mCityCount ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /*
+        The forecast of synthetic city index for count days from firstDay, in days since the
+        epoch, laid out like OpenWeatherMap's.
+     */
+    private String buildForecast(int index, long firstDay, int count, boolean imperial) {
+        // Spread the cities over the globe, away from the poles
+        double latitude = -60 + (index * 37 % 120) + (index % 7) / 7.0;
+        double longitude = -180 + (index * 73 % 360) + (index % 11) / 11.0;
+        // Colder away from the equator
+        double baseTemperature = 28 - Math.abs(latitude) * 0.45;
+
+        StringBuilder json = new StringBuilder(256 + count * 300);
+        json.append("{\"city\":{\"id\":").append(SYNTHETIC_ID_BASE + index)
+                .append(",\"name\":\"").append(SYNTHETIC_PREFIX).append(index)
+                .append("\",\"coord\":{\"lon\":").append(format(longitude))
+                .append(",\"lat\":").append(format(latitude))
+                .append("},\"country\":\"ZZ\",\"population\":0},\"cod\":\"200\",\"message\":0,")
+                .append("\"cnt\":").append(count).append(",\"list\":[");
+        for (int i = 0; i < count; i++) {
+            long day = firstDay + i;
+            Random random = new Random(mSeed * 31 + index * 1000003L + day);
+            double min = baseTemperature - 4 + random.nextDouble() * 6;
+            double max = min + 3 + random.nextDouble() * 9;
+            String[] condition = CONDITIONS[random.nextInt(CONDITIONS.length)];
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(day * DAY_IN_SECONDS + DAY_IN_SECONDS / 2)
+                    .append(",\"temp\":{\"day\":").append(temperature((min + max) / 2, imperial))
+                    .append(",\"min\":").append(temperature(min, imperial))
+                    .append(",\"max\":").append(temperature(max, imperial))
+                    .append(",\"night\":").append(temperature(min + 0.5, imperial))
+                    .append(",\"eve\":").append(temperature(max - 1, imperial))
+                    .append(",\"morn\":").append(temperature(min + 1, imperial))
+                    .append("},\"pressure\":").append(format(990 + random.nextDouble() * 40))
+                    .append(",\"humidity\":").append(30 + random.nextInt(70))
+                    .append(",\"weather\":[{\"id\":").append(condition[0])
+                    .append(",\"main\":\"").append(condition[1])
+                    .append("\",\"description\":\"").append(condition[2])
+                    .append("\",\"icon\":\"").append(condition[3])
+                    .append("\"}],\"speed\":").append(format(random.nextDouble() * 12))
+                    .append(",\"deg\":").append(random.nextInt(360))
+                    .append(",\"clouds\":").append(random.nextInt(101))
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String temperature(double celsius, boolean imperial) {
+        return format(imperial ? celsius * 1.8 + 32 : celsius);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    /*
+        "London,GB" and "london" are the same city.
+     */
+    private static String normalize(String name) {
+        int comma = name.indexOf(',');
+        return (comma >= 0 ? name.substring(0, comma) : name).trim().toLowerCase(Locale.US);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.owmserver;
+
+import com.example.android.sunshine.core.CityForecast;
+import com.example.android.sunshine.core.CompactForecastSource;
+import com.example.android.sunshine.core.ForecastBatch;
+import com.example.android.sunshine.core.ForecastParseException;
+import com.example.android.sunshine.core.OwmForecastSource;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Answers forecast/daily requests from the {@link ForecastCatalog}, misbehaving as
+ * {@link Faults} says.
+ * <p>
+ * Like OpenWeatherMap, an unknown city gets a 404 with {"cod":"404"} in the body.  The body
+ * is gzipped for clients that accept it, and every answer carries a strong ETag of the bytes
+ * actually sent, so the gzipped and the plain body of a forecast have different ones.  A
+ * matching If-None-Match gets a 304.  With mode=compact the forecast is sent in the
+ * format of our edge cache, see {@link CompactForecastSource}.
+ */
+final class ForecastHandler implements HttpHandler {
+
+    static final String PATH = "/data/2.5/forecast/daily";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] NOT_FOUND_BODY =
+            "{\"cod\":\"404\",\"message\":\"city not found\"}".getBytes(UTF_8);
+    private static final byte[] COMPACT_NOT_FOUND_BODY = CompactForecastSource.encode(
+            ForecastBatch.error(CityForecast.STATUS_NOT_FOUND));
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final String COMPACT_TYPE = "application/octet-stream";
+    // Throttled bodies are written in slices of this many milliseconds
+    private static final int THROTTLE_SLICE_MS = 50;
+
+    private final ForecastCatalog mCatalog;
+    private final Faults mFaults;
+
+    final AtomicLong mRequests = new AtomicLong();
+    final AtomicLong mNotModified = new AtomicLong();
+    final AtomicLong mNotFound = new AtomicLong();
+    final AtomicLong mErrors = new AtomicLong();
+    final AtomicLong mTruncated = new AtomicLong();
+    final AtomicLong mBytesSent = new AtomicLong();
+
+    ForecastHandler(ForecastCatalog catalog, Faults faults) {
+        mCatalog = catalog;
+        mFaults = faults;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            mRequests.incrementAndGet();
+            if (!PATH.equals(exchange.getRequestURI().getPath())) {
+                sendBody(exchange, 404, NOT_FOUND_BODY, false);
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            long latency = mFaults.nextLatencyMs();
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+
+            int errorStatus = mFaults.nextErrorStatus();
+            if (errorStatus != 0) {
+                mErrors.incrementAndGet();
+                sendBody(exchange, errorStatus, ("{\"cod\":\"" + errorStatus
+                        + "\",\"message\":\"injected error\"}").getBytes(UTF_8), false);
+                return;
+            }
+
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            boolean compact = "compact".equals(params.get("mode"));
+            byte[] body;
+            try {
+                body = mCatalog.getForecast(params.get("q"), parseLong(params.get("id"), -1),
+                        (int) parseLong(params.get("cnt"), ForecastCatalog.DEFAULT_DAYS),
+                        "imperial".equals(params.get("units")));
+            } catch (IllegalArgumentException e) {
+                sendBody(exchange, 400, ("{\"cod\":\"400\",\"message\":\"" + e.getMessage()
+                        + "\"}").getBytes(UTF_8), false);
+                return;
+            }
+            if (null == body) {
+                mNotFound.incrementAndGet();
+                if (compact) {
+                    sendBody(exchange, 404, COMPACT_NOT_FOUND_BODY, false, COMPACT_TYPE);
+                } else {
+                    sendBody(exchange, 404, NOT_FOUND_BODY, false);
+                }
+                return;
+            }
+            if (compact) {
+                body = toCompact(body);
+            }
+
+            boolean gzip = acceptsGzip(exchange);
+            if (gzip) {
+                body = gzip(body);
+            }
+            if (mFaults.isEtagEnabled()) {
+                String etag = computeEtag(body);
+                Headers headers = exchange.getResponseHeaders();
+                headers.set("ETag", etag);
+                headers.set("Vary", "Accept-Encoding");
+                if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                    mNotModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+            sendEncodedBody(exchange, 200, body, gzip, mFaults.nextTruncated(),
+                    compact ? COMPACT_TYPE : JSON_TYPE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+        Sends body, gzipped if the client accepts it and throttled to the configured
+        bandwidth.  A truncated body stops halfway, short of its Content-Length, and the
+        connection is dropped.
+     */
+    private void sendBody(HttpExchange exchange, int status, byte[] body, boolean truncate)
+            throws IOException, InterruptedException {
+        sendBody(exchange, status, body, truncate, JSON_TYPE);
+    }
+
+    private void sendBody(HttpExchange exchange, int status, byte[] body, boolean truncate,
+                          String contentType) throws IOException, InterruptedException {
+        boolean gzip = acceptsGzip(exchange);
+        sendEncodedBody(exchange, status, gzip ? gzip(body) : body, gzip, truncate, contentType);
+    }
+
+    /*
+        Sends a body that is already gzipped if gzipped is set.
+     */
+    private void sendEncodedBody(HttpExchange exchange, int status, byte[] body,
+                                 boolean gzipped, boolean truncate, String contentType)
+            throws IOException, InterruptedException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", contentType);
+        headers.set("Vary", "Accept-Encoding");
+        if (gzipped) {
+            headers.set("Content-Encoding", "gzip");
+        }
+        int length = body.length;
+        if (truncate) {
+            // The connection is closed after the half that is sent, short of Content-Length
+            headers.set("Connection", "close");
+            length /= 2;
+            mTruncated.incrementAndGet();
+        }
+        exchange.sendResponseHeaders(status, body.length);
+
+        OutputStream out = exchange.getResponseBody();
+        int bandwidth = mFaults.getBandwidth();
+        if (bandwidth <= 0) {
+            out.write(body, 0, length);
+        } else {
+            int slice = Math.max(1, bandwidth * THROTTLE_SLICE_MS / 1000);
+            long start = System.nanoTime();
+            for (int offset = 0; offset < length; offset += slice) {
+                out.write(body, offset, Math.min(slice, length - offset));
+                out.flush();
+                long due = (long) (offset + slice) * 1000 / bandwidth;
+                long elapsed = (System.nanoTime() - start) / 1000000;
+                if (due > elapsed) {
+                    Thread.sleep(due - elapsed);
+                }
+            }
+        }
+        mBytesSent.addAndGet(length);
+    }
+
+    private boolean acceptsGzip(HttpExchange exchange) {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return mFaults.isGzipEnabled() && null != acceptEncoding && acceptEncoding.contains("gzip");
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(body);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String computeEtag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+            StringBuilder etag = new StringBuilder(2 + 2 * 8).append('"');
+            // 64 bits are plenty to tell bodies apart
+            for (int i = 0; i < 8; i++) {
+                etag.append(Character.forDigit((digest[i] >> 4) & 0xf, 16))
+                        .append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /*
+        The same forecast in the compact format.  Its days aren't dated, so the start day
+        doesn't matter.
+     */
+    private static byte[] toCompact(byte[] json) {
+        try {
+            return CompactForecastSource.encode(new OwmForecastSource(null).decode(json, 0));
+        } catch (ForecastParseException e) {
+            throw new IllegalStateException("The catalog made a forecast it can't read", e);
+        }
+    }
+
+    /*
+        Whether an If-None-Match header, a list of ETags or *, contains etag.
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (null == ifNoneMatch) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        HashMap<String, String> params = new HashMap<>();
+        if (null == rawQuery) {
+            return params;
+        }
+        try {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                } else if (!pair.isEmpty()) {
+                    params.put(URLDecoder.decode(pair, "UTF-8"), "");
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        return params;
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (null == value) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+}
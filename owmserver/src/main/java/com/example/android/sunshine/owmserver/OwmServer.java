@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.owmserver;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local stand-in for OpenWeatherMap's forecast/daily API, on the JDK's own HTTP server so
+ * it needs nothing but a JVM.
+ * <p>
+ * Options, as --name=value:
+ * <pre>
+ *   port           to listen on, 8080
+ *   cities         number of synthetic cities, city-0 and so on, 100
+ *   days           days of every synthetic forecast, by default the request's cnt
+ *   fixtures       a directory of recorded responses to replay besides the bundled ones
+ *   seed           of the synthetic forecasts and the injected faults, 0
+ *   latency        milliseconds before each response, 0
+ *   jitter         up to this many milliseconds more, picked at random, 0
+ *   bandwidth      body bytes per second, 0 for unthrottled
+ *   error-rate     share of requests failed with error-status, 0
+ *   error-status   503
+ *   truncate-rate  share of bodies cut off halfway, 0
+ *   gzip           whether to gzip for clients that accept it, true
+ *   etag           whether to send ETags and answer If-None-Match, true
+ * </pre>
+ * The faults can be changed while it runs, see {@link ControlHandler}.
+ */
+public final class OwmServer {
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+
+    private OwmServer(HttpServer server, ExecutorService executor) {
+        mServer = server;
+        mExecutor = executor;
+    }
+
+    /**
+     * Starts a server with the given options, the same ones as on the command line.
+     *
+     * @throws IllegalArgumentException if an option is unknown or has a bad value.
+     */
+    public static OwmServer start(String... args) throws IOException {
+        int port = 8080;
+        int cities = 100;
+        int days = 0;
+        long seed = 0;
+        File fixtures = null;
+        Faults faults = null;
+        // The seed has to be known before the faults are set, so parse the options in two passes
+        for (int pass = 0; pass < 2; pass++) {
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --name=value: " + arg);
+                }
+                String name = arg.substring(2, equals);
+                String value = arg.substring(equals + 1);
+                try {
+                    switch (name) {
+                        case "port":
+                            port = Integer.parseInt(value);
+                            break;
+                        case "cities":
+                            cities = Integer.parseInt(value);
+                            break;
+                        case "days":
+                            days = Integer.parseInt(value);
+                            break;
+                        case "seed":
+                            seed = Long.parseLong(value);
+                            break;
+                        case "fixtures":
+                            fixtures = new File(value);
+                            break;
+                        default:
+                            if (null != faults) {
+                                faults.set(name, value);
+                            }
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number for " + name + ": " + value);
+                }
+            }
+            if (null == faults) {
+                faults = new Faults(seed);
+            }
+        }
+
+        ForecastCatalog catalog = new ForecastCatalog(cities, days, seed);
+        catalog.addBundledFixtures();
+        if (null != fixtures) {
+            catalog.addFixtures(fixtures);
+        }
+
+        ForecastHandler forecasts = new ForecastHandler(catalog, faults);
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", forecasts);
+        server.createContext(ControlHandler.PATH, new ControlHandler(faults, forecasts));
+        // A thread per request, so injected latency doesn't hold up the others
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Serving " + cities + " synthetic cities and "
+                + catalog.getFixtureCount() + " fixtures on http://localhost:"
+                + server.getAddress().getPort() + ForecastHandler.PATH);
+        return new OwmServer(server, executor);
+    }
+
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        try {
+            start(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("See OwmServer for the options");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.owmserver;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+public class TestOwmServer extends TestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String FORECAST = ForecastHandler.PATH + "?q=city-1&cnt=14";
+
+    private OwmServer mServer;
+
+    /*
+        What came back for a request.  For a body cut off before its Content-Length, bytes is
+        the part that arrived.
+     */
+    private static final class Response {
+        int status;
+        String etag;
+        String contentEncoding;
+        int contentLength;
+        byte[] bytes;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = OwmServer.start("--port=0", "--cities=10", "--seed=1");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.stop();
+        super.tearDown();
+    }
+
+    private Response get(String path, String acceptEncoding, String ifNoneMatch)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + mServer.getPort() + path).openConnection();
+        try {
+            if (null != acceptEncoding) {
+                connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+            }
+            if (null != ifNoneMatch) {
+                connection.setRequestProperty("If-None-Match", ifNoneMatch);
+            }
+            Response response = new Response();
+            response.status = connection.getResponseCode();
+            response.etag = connection.getHeaderField("ETag");
+            response.contentEncoding = connection.getHeaderField("Content-Encoding");
+            response.contentLength = connection.getContentLength();
+            InputStream in = response.status >= 400
+                    ? connection.getErrorStream() : connection.getInputStream();
+            response.bytes = null != in ? readFully(in) : new byte[0];
+            return response;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private Response get(String path) throws IOException {
+        return get(path, null, null);
+    }
+
+    /*
+        Reads until the end of the stream, or until the connection drops.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try {
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // A truncated body, what arrived is in bytes
+        } finally {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        return readFully(new GZIPInputStream(new ByteArrayInputStream(body)));
+    }
+
+    private String control(String query) throws IOException {
+        return new String(get(ControlHandler.PATH + query).bytes, UTF_8);
+    }
+
+    public void testEtag() throws IOException {
+        Response first = get(FORECAST);
+        assertEquals(200, first.status);
+        assertNotNull("Error: no ETag", first.etag);
+
+        Response cached = get(FORECAST, null, first.etag);
+        assertEquals(304, cached.status);
+        assertEquals(0, cached.bytes.length);
+        assertEquals(first.etag, get(FORECAST, null, "W/" + first.etag).etag);
+
+        // Another body, another tag
+        Response other = get(ForecastHandler.PATH + "?q=city-2&cnt=14", null, first.etag);
+        assertEquals(200, other.status);
+        assertFalse(first.etag.equals(other.etag));
+
+        control("?etag=false");
+        Response untagged = get(FORECAST, null, first.etag);
+        assertEquals("Error: answered If-None-Match with ETags off", 200, untagged.status);
+        assertNull(untagged.etag);
+    }
+
+    public void testGzip() throws IOException {
+        Response plain = get(FORECAST);
+        Response gzipped = get(FORECAST, "gzip", null);
+        assertNull(plain.contentEncoding);
+        assertEquals("gzip", gzipped.contentEncoding);
+        assertTrue(gzipped.bytes.length < plain.bytes.length);
+        assertTrue(Arrays.equals(plain.bytes, gunzip(gzipped.bytes)));
+
+        // The tag is of the bytes sent, so one encoding's tag doesn't validate the other's
+        assertFalse("Error: the same strong ETag for both encodings",
+                plain.etag.equals(gzipped.etag));
+        assertEquals(304, get(FORECAST, "gzip", gzipped.etag).status);
+        assertEquals(200, get(FORECAST, "gzip", plain.etag).status);
+        assertEquals(200, get(FORECAST, null, gzipped.etag).status);
+
+        control("?gzip=false");
+        Response refused = get(FORECAST, "gzip", null);
+        assertNull(refused.contentEncoding);
+        assertTrue(Arrays.equals(plain.bytes, refused.bytes));
+        assertEquals(plain.etag, refused.etag);
+    }
+
+    public void testTruncation() throws IOException {
+        int length = get(FORECAST).bytes.length;
+        control("?truncate-rate=1");
+        Response truncated = get(FORECAST);
+        assertEquals(200, truncated.status);
+        assertEquals("Error: the Content-Length isn't the whole body",
+                length, truncated.contentLength);
+        assertEquals(length / 2, truncated.bytes.length);
+        assertTrue(control("").contains("truncated=1\n"));
+    }
+
+    public void testThrottling() throws IOException {
+        int length = get(FORECAST).bytes.length;
+        // Two bytes a second per byte of the body, so it takes half a second
+        control("?bandwidth=" + (2 * length));
+        long start = System.nanoTime();
+        Response throttled = get(FORECAST);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertEquals(length, throttled.bytes.length);
+        assertTrue("Error: the body came in " + elapsedMs + " ms", elapsedMs >= 400);
+
+        control("?bandwidth=0&latency=300");
+        start = System.nanoTime();
+        get(FORECAST);
+        elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertTrue("Error: the response came in " + elapsedMs + " ms", elapsedMs >= 300);
+    }
+
+    public void testErrors() throws IOException {
+        assertEquals(404, get(ForecastHandler.PATH + "?q=nowhere").status);
+
+        control("?error-rate=1&error-status=500");
+        Response failed = get(FORECAST);
+        assertEquals(500, failed.status);
+        assertTrue(new String(failed.bytes, UTF_8).contains("\"cod\":\"500\""));
+    }
+
+    public void testControl() throws IOException {
+        Response rejected = get(ControlHandler.PATH + "?latency=-1");
+        assertEquals(400, rejected.status);
+        assertEquals(400, get(ControlHandler.PATH + "?no-such-setting=1").status);
+        assertEquals(400, get(ControlHandler.PATH + "?error-status=200").status);
+
+        String settings = control("?latency=5&error-rate=0.5&gzip=false");
+        assertTrue(settings, settings.contains("latency=5\n"));
+        assertTrue(settings, settings.contains("error-rate=0.5\n"));
+        assertTrue(settings, settings.contains("gzip=false\n"));
+
+        get(FORECAST);
+        get(ForecastHandler.PATH + "?q=nowhere");
+        String counters = control("");
+        assertTrue(counters, counters.contains("requests=2\n"));
+
+        String reset = control("?reset");
+        assertTrue(reset, reset.contains("latency=0\n"));
+        assertTrue(reset, reset.contains("error-rate=0.0\n"));
+        assertTrue(reset, reset.contains("gzip=true\n"));
+        assertTrue(reset, reset.contains("requests=0\n"));
+        assertTrue(reset, reset.contains("bytes-sent=0\n"));
+    }
+}